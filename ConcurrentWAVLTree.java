@@ -0,0 +1,257 @@
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ *
+ * ConcurrentWAVLTree
+ *
+ * A thread-safe WAVLTree for read-mostly workloads. Writers (insert, delete) take the
+ * write lock of a StampedLock, so the rebalancing (upperRotation/rotate) of the wrapped
+ * tree is serialized. Readers (search, select, min, max, size) do not lock: they traverse
+ * the tree under an optimistic stamp and validate it afterwards, retrying when a writer
+ * ran meanwhile, and fall back to the read lock after a few failed attempts.
+ *
+ * A reader which races a rotation might see a half-updated tree, so every optimistic
+ * traversal is bounded (a WAVL tree of n nodes has height <= 2log(n)) and checks for
+ * null links, and its result is only used after the stamp is validated. This relies on
+ * the shared externalNode never being written, see WAVLTree.edgeUpdate.
+ *
+ */
+
+public class ConcurrentWAVLTree {
+
+	private static final int OPTIMISTIC_ATTEMPTS = 3;
+	private static final int MAX_HOPS = 64; // 2log(Integer.MAX_VALUE) + 2
+
+	/**
+	 * Returned by an optimistic traversal which met an inconsistent tree
+	 */
+	private static final WAVLTree.WAVLNode INCONSISTENT = new WAVLTree.WAVLNode(0, null);
+
+	private final WAVLTree tree;
+	private final StampedLock lock = new StampedLock();
+
+	/**
+	 * Empty Constractor. Initializing an empty tree
+	 */
+	public ConcurrentWAVLTree() {
+		this(new WAVLTree());
+	}
+
+	/**
+	 * Constractor. Initializing a concurrent tree with the items of tree
+	 * @param tree - the tree to wrap, which must not be used directly afterwards
+	 */
+	public ConcurrentWAVLTree(WAVLTree tree) {
+		this.tree = tree;
+	}
+
+	/**
+	 * Inserts an item with key k and info i, see WAVLTree.insert
+	 * @return the number of rebalancing operations, or -1 if an item with key k already exists
+	 */
+	public int insert(int k, String i) {
+		long stamp = lock.writeLock();
+		try {
+			return tree.insert(k, i);
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * Deletes the item with key k, see WAVLTree.delete
+	 * @return the number of rebalancing operations, or -1 if there is no item with key k
+	 */
+	public int delete(int k) {
+		long stamp = lock.writeLock();
+		try {
+			return tree.delete(k);
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * Searches for an item with key k
+	 * @param k - key
+	 * @return the info of the item with key k if it exists in the tree, otherwise null
+	 */
+	public String search(int k) {
+		for (int attempt = 0; attempt < OPTIMISTIC_ATTEMPTS; attempt++) {
+			long stamp = lock.tryOptimisticRead();
+			if (stamp == 0)
+				break; // a writer holds the lock
+			WAVLTree.WAVLNode x = locate(k);
+			String info = x == null || x == INCONSISTENT ? null : x.getValue();
+			if (x != INCONSISTENT && lock.validate(stamp))
+				return info;
+		}
+		long stamp = lock.readLock();
+		try {
+			return tree.search(k);
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Returns the info of the i'th smallest key (null if i is out of range)
+	 * @param i - 1 based index
+	 */
+	public String select(int i) {
+		for (int attempt = 0; attempt < OPTIMISTIC_ATTEMPTS; attempt++) {
+			long stamp = lock.tryOptimisticRead();
+			if (stamp == 0)
+				break;
+			WAVLTree.WAVLNode x = locateByIndex(i);
+			String info = x == null || x == INCONSISTENT ? null : x.getValue();
+			if (x != INCONSISTENT && lock.validate(stamp))
+				return info;
+		}
+		long stamp = lock.readLock();
+		try {
+			return tree.select(i);
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Returns the info of the item with the smallest key, or null if the tree is empty
+	 */
+	public String min() {
+		long stamp = lock.tryOptimisticRead();
+		if (stamp != 0) {
+			String info = tree.min();
+			if (lock.validate(stamp))
+				return info;
+		}
+		stamp = lock.readLock();
+		try {
+			return tree.min();
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Returns the info of the item with the largest key, or null if the tree is empty
+	 */
+	public String max() {
+		long stamp = lock.tryOptimisticRead();
+		if (stamp != 0) {
+			String info = tree.max();
+			if (lock.validate(stamp))
+				return info;
+		}
+		stamp = lock.readLock();
+		try {
+			return tree.max();
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Returns the number of items in the tree
+	 */
+	public int size() {
+		long stamp = lock.tryOptimisticRead();
+		if (stamp != 0) {
+			int size = tree.size();
+			if (lock.validate(stamp))
+				return size;
+		}
+		stamp = lock.readLock();
+		try {
+			return tree.size();
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Checks whether the tree is empty or not
+	 * @return true if and only if the tree is empty
+	 */
+	public boolean empty() {
+		return size() == 0;
+	}
+
+	/**
+	 * Returns a sorted array which contains all keys in the tree, under the read lock
+	 */
+	public int[] keysToArray() {
+		long stamp = lock.readLock();
+		try {
+			return tree.keysToArray();
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Returns an array which contains all infos in the tree, sorted by their respective
+	 * keys, under the read lock
+	 */
+	public String[] infoToArray() {
+		long stamp = lock.readLock();
+		try {
+			return tree.infoToArray();
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Finds the node with key k without locking
+	 * @return the node with key k, null if there is no such node, or INCONSISTENT if the
+	 * traversal met a tree which is being changed
+	 */
+	private WAVLTree.WAVLNode locate(int k) {
+		WAVLTree.WAVLNode x = tree.getRoot();
+		for (int hops = 0; hops < MAX_HOPS; hops++) {
+			if (x == null)
+				return INCONSISTENT;
+			if (x.isExternalNode())
+				return null;
+			int key = x.getKey();
+			if (key == k)
+				return x;
+			x = k < key ? x.getLeft() : x.getRight();
+		}
+		return INCONSISTENT;
+	}
+
+	/**
+	 * Finds the node of the i'th smallest key without locking
+	 * @param i - 1 based index
+	 * @return the node, null if i is out of range, or INCONSISTENT if the traversal met a
+	 * tree which is being changed
+	 */
+	private WAVLTree.WAVLNode locateByIndex(int i) {
+		WAVLTree.WAVLNode x = tree.getRoot();
+		if (x == null)
+			return INCONSISTENT;
+		if (i < 1 || i > x.getSubtreeSize())
+			return null;
+		i--;
+		for (int hops = 0; hops < MAX_HOPS; hops++) {
+			if (x == null || x.isExternalNode())
+				return INCONSISTENT;
+			WAVLTree.WAVLNode left = x.getLeft();
+			if (left == null)
+				return INCONSISTENT;
+			int leftSize = left.getSubtreeSize();
+			if (i == leftSize)
+				return x;
+			if (i < leftSize) {
+				x = left;
+			} else {
+				i -= leftSize + 1;
+				x = x.getRight();
+			}
+		}
+		return INCONSISTENT;
+	}
+}
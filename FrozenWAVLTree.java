@@ -0,0 +1,160 @@
+/**
+ *
+ * FrozenWAVLTree
+ *
+ * A read-only copy of a WAVLTree, made by WAVLTree.freeze, for trees which are only read
+ * after they are loaded. The keys are kept in a primitive array in Eytzinger order: the
+ * implicit complete binary search tree in which the children of index i are 2i and 2i+1
+ * (index 0 is unused). A search is a loop without pointers and without a data dependent
+ * branch, and the indexes it will visit next are close to each other: the 16
+ * descendants of i four levels down are 16i..16i+15, which is one cache line, and the
+ * top levels of every search share the first few lines, which stay in the cache.
+ *
+ * The keys and infos are also kept in sorted order, with the sorted position of every
+ * Eytzinger index, so select, min and max take O(1) and thaw rebuilds a WAVLTree in
+ * linear time.
+ *
+ */
+
+public final class FrozenWAVLTree {
+
+	private final int n;
+	private final int[] eytzinger; // eytzinger[1..n], the keys in Eytzinger order
+	private final int[] position; // position[i] - the sorted index of eytzinger[i]
+	private final int[] keys; // sorted
+	private final String[] infos; // by the order of keys
+
+	/**
+	 * Constractor. Initializing a frozen tree with the given items
+	 * @pre keys is sorted in ascending order and has no duplicates
+	 * @param keys - the keys of the items, sorted, which the tree keeps
+	 * @param infos - the infos of the items, by the order of keys, which the tree keeps
+	 */
+	FrozenWAVLTree(int[] keys, String[] infos) {
+		this.n = keys.length;
+		this.keys = keys;
+		this.infos = infos;
+		this.eytzinger = new int[n + 1];
+		this.position = new int[n + 1];
+		// an in-order walk of the implicit tree visits its indexes in sorted order
+		int sorted = 0;
+		int i = 1;
+		while (true) {
+			while (i <= n)
+				i = 2 * i;
+			// climb out of the right children to the next index in order
+			i >>= Integer.numberOfTrailingZeros(~i) + 1;
+			if (i == 0)
+				break;
+			this.eytzinger[i] = keys[sorted];
+			this.position[i] = sorted;
+			sorted++;
+			i = 2 * i + 1;
+		}
+	}
+
+	/**
+	 * Returns the Eytzinger index of the smallest key >= k, or 0 if every key is smaller.
+	 * The descent adds the sign bit of e[i] - k (computed in long, so it cannot overflow)
+	 * to the index instead of branching on the comparison, and the
+	 * trailing ones of the final index are the right turns made after the answer.
+	 */
+	private int lowerBound(int k) {
+		int[] e = this.eytzinger;
+		int i = 1;
+		while (i <= this.n)
+			i = 2 * i + (int) (((long) e[i] - k) >>> 63);
+		return i >> (Integer.numberOfTrailingZeros(~i) + 1);
+	}
+
+	/**
+	 * Checks whether the tree is empty or not
+	 * @return true if and only if the tree is empty
+	 */
+	public boolean empty() {
+		return this.n == 0;
+	}
+
+	/**
+	 * Returns the number of items in the tree
+	 */
+	public int size() {
+		return this.n;
+	}
+
+	/**
+	 * Searches for an item with key k
+	 * @param k - key
+	 * @return the info of the item with key k if it exists in the tree, otherwise null
+	 */
+	public String search(int k) {
+		int i = lowerBound(k);
+		return i != 0 && this.eytzinger[i] == k ? this.infos[this.position[i]] : null;
+	}
+
+	/**
+	 * Checks whether the tree contains key k
+	 */
+	public boolean contains(int k) {
+		int i = lowerBound(k);
+		return i != 0 && this.eytzinger[i] == k;
+	}
+
+	/**
+	 * Returns the info of the i'th smallest key (null if i is out of range)
+	 * @param i - 1 based index
+	 */
+	public String select(int i) {
+		return i < 1 || i > this.n ? null : this.infos[i - 1];
+	}
+
+	/**
+	 * Returns the number of keys in the tree which are smaller than or equal to key, like
+	 * WAVLTree.rank
+	 * @param key - any key
+	 * @return the number of keys <= key
+	 */
+	public int rank(int key) {
+		int i = lowerBound(key);
+		if (i == 0)
+			return this.n;
+		int smaller = this.position[i];
+		return this.eytzinger[i] == key ? smaller + 1 : smaller;
+	}
+
+	/**
+	 * Returns the info of the item with the smallest key, or null if the tree is empty
+	 */
+	public String min() {
+		return this.n == 0 ? null : this.infos[0];
+	}
+
+	/**
+	 * Returns the info of the item with the largest key, or null if the tree is empty
+	 */
+	public String max() {
+		return this.n == 0 ? null : this.infos[this.n - 1];
+	}
+
+	/**
+	 * Returns a sorted array which contains all keys in the tree
+	 */
+	public int[] keysToArray() {
+		return this.keys.clone();
+	}
+
+	/**
+	 * Returns an array which contains all infos in the tree, sorted by their respective keys
+	 */
+	public String[] infoToArray() {
+		return this.infos.clone();
+	}
+
+	/**
+	 * Returns a new mutable tree with the items of this tree, in linear time (see
+	 * WAVLTree.fromSorted). This tree stays as it is.
+	 */
+	public WAVLTree thaw() {
+		return WAVLTree.fromSorted(this.keys, this.infos);
+	}
+}
@@ -0,0 +1,540 @@
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ *
+ * PartitionedWAVLTree
+ *
+ * A thread-safe tree which partitions the keys by range among independent WAVLTrees
+ * (shards), each with its own lock, so writers to different ranges run in parallel.
+ * Shard j holds the keys k with splitters[j - 1] <= k < splitters[j] (the first and last
+ * shards are unbounded below and above).
+ *
+ * An operation on a key finds its shard by a binary search of the splitters, locks the
+ * shard, and checks that the key still belongs to it: the range of a shard changes only
+ * while its lock is held, so a key routed by an older version of the splitters is routed
+ * again. When a shard grows to more than twice a neighbour (plus MIN_REBALANCE_SIZE), the
+ * two are rebalanced: joined into one tree and split at their median key (see
+ * WAVLTree.join and WAVLTree.split), in O(log n) under both locks. rebalance evens all
+ * the shards at once. Every rebalance moves the items and replaces the splitters while
+ * holding the write lock of moves, so rebalances never undo each other's splitters.
+ *
+ * select and rank find their shard by the prefix sums of the shard sizes, and min and
+ * max visit the shards one at a time from their end, locking only the shard they read.
+ * They read optimistically (see StampedLock.tryOptimisticRead): a rebalance which moves
+ * items meanwhile makes them try again, and after OPTIMISTIC_ATTEMPTS tries they lock
+ * all the shards (in order, like every operation which takes more than one lock, so
+ * there are no deadlocks). The sizes of the other shards are read without locking, so
+ * with concurrent writers select and rank are as approximate as size. The array exports
+ * lock all the shards. keyIterator iterates without locking more than one shard at a
+ * time.
+ *
+ */
+
+public class PartitionedWAVLTree {
+
+	public static final int MIN_REBALANCE_SIZE = 1024;
+	private static final int OPTIMISTIC_ATTEMPTS = 8;
+
+	private final WAVLTree[] trees;
+	private final ReentrantLock[] locks;
+	private final AtomicIntegerArray sizes; // the size of every shard, written under its lock
+	private volatile int[] splitters; // splitters[j] - the smallest key of shard j + 1, replaced on every change
+	private final StampedLock moves = new StampedLock(); // write locked while a rebalance moves items
+
+	/**
+	 * Constractor. Initializing an empty tree with shards which divide the int range evenly
+	 * @param shards - the number of shards
+	 */
+	public PartitionedWAVLTree(int shards) {
+		this(evenSplitters(shards));
+	}
+
+	/**
+	 * Constractor. Initializing an empty tree with splitters.length + 1 shards
+	 * @param splitters - the smallest key of every shard but the first, in ascending order
+	 */
+	public PartitionedWAVLTree(int[] splitters) {
+		for (int j = 1; j < splitters.length; j++) {
+			if (splitters[j - 1] >= splitters[j])
+				throw new IllegalArgumentException("splitters must be sorted in ascending order without duplicates");
+		}
+		int shards = splitters.length + 1;
+		this.trees = new WAVLTree[shards];
+		this.locks = new ReentrantLock[shards];
+		for (int j = 0; j < shards; j++) {
+			this.trees[j] = new WAVLTree();
+			this.locks[j] = new ReentrantLock();
+		}
+		this.sizes = new AtomicIntegerArray(shards);
+		this.splitters = splitters.clone();
+	}
+
+	private static int[] evenSplitters(int shards) {
+		if (shards < 1)
+			throw new IllegalArgumentException("shards must be positive");
+		int[] splitters = new int[shards - 1];
+		for (int j = 1; j < shards; j++)
+			splitters[j - 1] = (int) (Integer.MIN_VALUE + (1L << 32) * j / shards);
+		return splitters;
+	}
+
+	/**
+	 * Returns the number of splitters <= k, which is the shard of k
+	 */
+	private static int shardOf(int[] splitters, int k) {
+		int lo = 0, hi = splitters.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (splitters[mid] <= k)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
+	/**
+	 * Locks the shard of key k
+	 * @return the shard, whose lock the caller has to release
+	 */
+	private int lockShardOf(int k) {
+		while (true) {
+			int j = shardOf(this.splitters, k);
+			this.locks[j].lock();
+			if (shardOf(this.splitters, k) == j)
+				return j;
+			// the shard was rebalanced meanwhile
+			this.locks[j].unlock();
+		}
+	}
+
+	private void lockAll() {
+		for (ReentrantLock lock : this.locks)
+			lock.lock();
+	}
+
+	private void unlockAll() {
+		for (int j = this.locks.length - 1; j >= 0; j--)
+			this.locks[j].unlock();
+	}
+
+	/**
+	 * Returns the number of shards
+	 */
+	public int shards() {
+		return this.trees.length;
+	}
+
+	/**
+	 * Returns a copy of the current splitters, see PartitionedWAVLTree(int[])
+	 */
+	public int[] splitters() {
+		return this.splitters.clone();
+	}
+
+	/**
+	 * Returns the current size of every shard
+	 */
+	public int[] shardSizes() {
+		int[] res = new int[this.trees.length];
+		for (int j = 0; j < res.length; j++)
+			res[j] = this.sizes.get(j);
+		return res;
+	}
+
+	/**
+	 * Inserts an item with key k and info i, see WAVLTree.insert
+	 * @return the number of rebalancing operations, or -1 if an item with key k already exists
+	 */
+	public int insert(int k, String i) {
+		int j = lockShardOf(k);
+		int res;
+		try {
+			res = this.trees[j].insert(k, i);
+			this.sizes.set(j, this.trees[j].size());
+		} finally {
+			this.locks[j].unlock();
+		}
+		if (res >= 0)
+			rebalanceIfNeeded(j);
+		return res;
+	}
+
+	/**
+	 * Deletes the item with key k, see WAVLTree.delete
+	 * @return the number of rebalancing operations, or -1 if there is no item with key k
+	 */
+	public int delete(int k) {
+		int j = lockShardOf(k);
+		int res;
+		try {
+			res = this.trees[j].delete(k);
+			this.sizes.set(j, this.trees[j].size());
+		} finally {
+			this.locks[j].unlock();
+		}
+		if (res >= 0)
+			rebalanceIfNeeded(j);
+		return res;
+	}
+
+	/**
+	 * Searches for an item with key k
+	 * @param k - key
+	 * @return the info of the item with key k if it exists in the tree, otherwise null
+	 */
+	public String search(int k) {
+		int j = lockShardOf(k);
+		try {
+			return this.trees[j].search(k);
+		} finally {
+			this.locks[j].unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of items in the tree. The shard sizes are added without locking,
+	 * so with concurrent writers the result is only approximate.
+	 */
+	public int size() {
+		int size = 0;
+		for (int j = 0; j < this.trees.length; j++)
+			size += this.sizes.get(j);
+		return size;
+	}
+
+	/**
+	 * Checks whether the tree is empty or not, see size
+	 */
+	public boolean empty() {
+		return size() == 0;
+	}
+
+	/**
+	 * Returns the info of the i'th smallest key (null if i is out of range)
+	 * @param i - 1 based index
+	 */
+	public String select(int i) {
+		if (i < 1)
+			return null;
+		for (int attempt = 0; attempt < OPTIMISTIC_ATTEMPTS; attempt++) {
+			long stamp = this.moves.tryOptimisticRead();
+			if (stamp == 0)
+				continue;
+			int j = 0, before = 0, size = 0;
+			for (; j < this.trees.length; j++) {
+				size = this.sizes.get(j);
+				if (i - before <= size)
+					break;
+				before += size;
+			}
+			if (j == this.trees.length)
+				return null;
+			this.locks[j].lock();
+			try {
+				if (this.moves.validate(stamp) && this.sizes.get(j) == size)
+					return this.trees[j].select(i - before);
+			} finally {
+				this.locks[j].unlock();
+			}
+		}
+		lockAll();
+		try {
+			for (WAVLTree tree : this.trees) {
+				int size = tree.size();
+				if (i <= size)
+					return tree.select(i);
+				i -= size;
+			}
+			return null;
+		} finally {
+			unlockAll();
+		}
+	}
+
+	/**
+	 * Returns the number of keys in the tree which are smaller than or equal to key, like
+	 * WAVLTree.rank
+	 */
+	public int rank(int key) {
+		for (int attempt = 0; attempt < OPTIMISTIC_ATTEMPTS; attempt++) {
+			long stamp = this.moves.tryOptimisticRead();
+			if (stamp == 0)
+				continue;
+			int j = shardOf(this.splitters, key);
+			int before = 0;
+			for (int s = 0; s < j; s++)
+				before += this.sizes.get(s);
+			this.locks[j].lock();
+			try {
+				if (this.moves.validate(stamp))
+					return before + this.trees[j].rank(key);
+			} finally {
+				this.locks[j].unlock();
+			}
+		}
+		lockAll();
+		try {
+			int j = shardOf(this.splitters, key);
+			int count = 0;
+			for (int s = 0; s < j; s++)
+				count += this.trees[s].size();
+			return count + this.trees[j].rank(key);
+		} finally {
+			unlockAll();
+		}
+	}
+
+	/**
+	 * Returns the info of the item with the smallest key, or null if the tree is empty
+	 */
+	public String min() {
+		return extreme(true);
+	}
+
+	/**
+	 * Returns the info of the item with the largest key, or null if the tree is empty
+	 */
+	public String max() {
+		return extreme(false);
+	}
+
+	/**
+	 * Returns the info of the smallest (or largest) item, visiting the shards from the
+	 * matching end and stopping at the first which is not empty
+	 * @param min - true for the smallest item, false for the largest
+	 */
+	private String extreme(boolean min) {
+		int shards = this.trees.length;
+		attempts: for (int attempt = 0; attempt < OPTIMISTIC_ATTEMPTS; attempt++) {
+			long stamp = this.moves.tryOptimisticRead();
+			if (stamp == 0)
+				continue;
+			for (int s = 0; s < shards; s++) {
+				int j = min ? s : shards - 1 - s;
+				this.locks[j].lock();
+				try {
+					// items moved between the shards since the walk started might have been missed
+					if (!this.moves.validate(stamp))
+						continue attempts;
+					WAVLTree tree = this.trees[j];
+					if (!tree.empty())
+						return min ? tree.min() : tree.max();
+				} finally {
+					this.locks[j].unlock();
+				}
+			}
+			return null;
+		}
+		lockAll();
+		try {
+			for (int s = 0; s < shards; s++) {
+				WAVLTree tree = this.trees[min ? s : shards - 1 - s];
+				if (!tree.empty())
+					return min ? tree.min() : tree.max();
+			}
+			return null;
+		} finally {
+			unlockAll();
+		}
+	}
+
+	/**
+	 * Returns a sorted array which contains all keys in the tree
+	 */
+	public int[] keysToArray() {
+		lockAll();
+		try {
+			int size = 0;
+			for (WAVLTree tree : this.trees)
+				size += tree.size();
+			int[] arr = new int[size];
+			int i = 0;
+			for (WAVLTree tree : this.trees) {
+				int[] keys = tree.keysToArray();
+				System.arraycopy(keys, 0, arr, i, keys.length);
+				i += keys.length;
+			}
+			return arr;
+		} finally {
+			unlockAll();
+		}
+	}
+
+	/**
+	 * Returns an array which contains all infos in the tree, sorted by their respective keys
+	 */
+	public String[] infoToArray() {
+		lockAll();
+		try {
+			int size = 0;
+			for (WAVLTree tree : this.trees)
+				size += tree.size();
+			String[] arr = new String[size];
+			int i = 0;
+			for (WAVLTree tree : this.trees) {
+				String[] infos = tree.infoToArray();
+				System.arraycopy(infos, 0, arr, i, infos.length);
+				i += infos.length;
+			}
+			return arr;
+		} finally {
+			unlockAll();
+		}
+	}
+
+	/**
+	 * Returns an iterator over the keys of the tree, in ascending order. It copies the
+	 * keys of one shard at a time under the lock of the shard, and continues after the
+	 * last key it returned, so it never returns a key twice or out of order even if shards
+	 * are rebalanced meanwhile, and it sees the changes made to the shards it did not
+	 * reach yet (weakly consistent).
+	 */
+	public PrimitiveIterator.OfInt keyIterator() {
+		return new PrimitiveIterator.OfInt() {
+			private int[] chunk = new int[0];
+			private int index = 0;
+			private long from = Integer.MIN_VALUE; // the next key to look for, beyond the int range at the end
+
+			public boolean hasNext() {
+				while (this.index == this.chunk.length) {
+					if (this.from > Integer.MAX_VALUE)
+						return false;
+					fill();
+				}
+				return true;
+			}
+
+			/**
+			 * Copies the keys >= from of the shard of from, or moves from to the next shard
+			 */
+			private void fill() {
+				int k = (int) this.from;
+				int j = lockShardOf(k);
+				try {
+					int[] splitters = PartitionedWAVLTree.this.splitters;
+					long end = j < splitters.length ? splitters[j] : (long) Integer.MAX_VALUE + 1;
+					WAVLTree tree = PartitionedWAVLTree.this.trees[j];
+					int[] keys = new int[tree.countRange(k, Integer.MAX_VALUE)];
+					int n = 0;
+					WAVLTree.Cursor cursor = tree.cursor();
+					for (boolean valid = cursor.seek(k); valid; valid = cursor.next())
+						keys[n++] = cursor.key();
+					this.chunk = keys;
+					this.index = 0;
+					this.from = end;
+				} finally {
+					PartitionedWAVLTree.this.locks[j].unlock();
+				}
+			}
+
+			public int nextInt() {
+				if (!hasNext())
+					throw new NoSuchElementException();
+				return this.chunk[this.index++];
+			}
+		};
+	}
+
+	/**
+	 * Rebalances shard j with a neighbour if one of them has more than twice the items of
+	 * the other, plus MIN_REBALANCE_SIZE
+	 */
+	private void rebalanceIfNeeded(int j) {
+		int size = this.sizes.get(j);
+		for (int neighbour = j - 1; neighbour <= j + 1; neighbour += 2) {
+			if (neighbour < 0 || neighbour >= this.trees.length)
+				continue;
+			if (unbalanced(size, this.sizes.get(neighbour))) {
+				int first = Math.min(j, neighbour);
+				this.locks[first].lock();
+				this.locks[first + 1].lock();
+				try {
+					// check again under the locks
+					if (unbalanced(this.sizes.get(first), this.sizes.get(first + 1)))
+						redistribute(first, first + 1);
+				} finally {
+					this.locks[first + 1].unlock();
+					this.locks[first].unlock();
+				}
+				return;
+			}
+		}
+	}
+
+	private static boolean unbalanced(int a, int b) {
+		return Math.max(a, b) > 2 * Math.min(a, b) + MIN_REBALANCE_SIZE;
+	}
+
+	/**
+	 * Divides the items evenly among all the shards, and moves the splitters accordingly
+	 */
+	public void rebalance() {
+		lockAll();
+		try {
+			redistribute(0, this.trees.length - 1);
+		} finally {
+			unlockAll();
+		}
+	}
+
+	/**
+	 * Joins the shards first..last into one tree, and splits it into equal parts at the
+	 * keys which become the new splitters between them, in O((last - first + 1) log n).
+	 * Holds the write lock of moves meanwhile, so concurrent rebalances replace the
+	 * splitters one at a time, and the optimistic readers see the items move.
+	 * @pre the locks of the shards first..last are held
+	 */
+	private void redistribute(int first, int last) {
+		long stamp = this.moves.writeLock();
+		try {
+			int parts = last - first + 1;
+			WAVLTree tree = this.trees[first];
+			for (int j = first + 1; j <= last; j++) {
+				WAVLTree next = this.trees[j];
+				if (next.empty())
+					continue;
+				if (tree.empty()) {
+					tree = next;
+					continue;
+				}
+				// the smallest item of next is the middle item of the join
+				WAVLTree.WAVLNode middle = next.selectNode(0);
+				int key = middle.getKey();
+				String info = middle.getValue();
+				next.delete(key);
+				tree = WAVLTree.join(tree, key, info, next);
+			}
+			int total = tree.size();
+			if (total < parts) {
+				// too few items to give every shard one, keep the splitters
+				if (tree != this.trees[first]) {
+					// put the items back in the shards of their keys
+					int[] keys = tree.keysToArray();
+					String[] infos = tree.infoToArray();
+					for (int j = first; j <= last; j++)
+						this.trees[j] = new WAVLTree();
+					for (int i = 0; i < keys.length; i++)
+						this.trees[shardOf(this.splitters, keys[i])].insert(keys[i], infos[i]);
+				}
+			} else {
+				int[] splitters = this.splitters.clone();
+				for (int p = parts - 1; p >= 1; p--) {
+					int key = tree.selectNode((int) ((long) total * p / parts)).getKey();
+					this.trees[first + p] = tree.split(key);
+					splitters[first + p - 1] = key;
+				}
+				this.trees[first] = tree;
+				this.splitters = splitters;
+			}
+			for (int j = first; j <= last; j++)
+				this.sizes.set(j, this.trees[j].size());
+		} finally {
+			this.moves.unlockWrite(stamp);
+		}
+	}
+}
@@ -0,0 +1,401 @@
+/**
+ *
+ * PersistentWAVLTree
+ *
+ * An immutable WAVL tree. insert and delete do not change the tree, they return a new
+ * version which copies only the O(log n) nodes on the search path and shares every
+ * other subtree with the previous version. Any version can be read while newer ones are
+ * built, from any thread, without locking or copying.
+ *
+ * The nodes have no parent pointers (a shared node has a different parent in every
+ * version), so the rebalancing is done on the way back up the recursion, with the same
+ * rank rules as WAVLTree: promotions and rotations after an insertion, demotions and
+ * rotations after a deletion. The subtree sizes are kept for select.
+ *
+ * PersistentWAVLTree.Mutable is a mutable tree on top of the versions, which hands out
+ * O(1) snapshots.
+ *
+ */
+
+public final class PersistentWAVLTree {
+
+	private static final PersistentWAVLTree EMPTY = new PersistentWAVLTree(null);
+
+	/**
+	 * An immutable node. null is the external node, with rank -1 and size 0.
+	 */
+	static final class Node {
+		final int key;
+		final String info;
+		final Node left;
+		final Node right;
+		final int rank;
+		final int size;
+
+		Node(int key, String info, Node left, Node right, int rank) {
+			this.key = key;
+			this.info = info;
+			this.left = left;
+			this.right = right;
+			this.rank = rank;
+			this.size = size(left) + size(right) + 1;
+		}
+
+		/**
+		 * Returns a copy of the node with other children and rank
+		 */
+		Node with(Node left, Node right, int rank) {
+			return new Node(key, info, left, right, rank);
+		}
+	}
+
+	private final Node root;
+
+	private PersistentWAVLTree(Node root) {
+		this.root = root;
+	}
+
+	/**
+	 * Returns the empty tree
+	 */
+	public static PersistentWAVLTree emptyTree() {
+		return EMPTY;
+	}
+
+	private static int rank(Node x) {
+		return x == null ? -1 : x.rank;
+	}
+
+	private static int size(Node x) {
+		return x == null ? 0 : x.size;
+	}
+
+	/**
+	 * Checks whether the tree is empty or not
+	 * @return true if and only if the tree is empty
+	 */
+	public boolean empty() {
+		return root == null;
+	}
+
+	/**
+	 * Returns the number of items in the tree
+	 */
+	public int size() {
+		return size(root);
+	}
+
+	/**
+	 * Searches for an item with key k
+	 * @param k - key
+	 * @return the info of the item with key k if it exists in the tree, otherwise null
+	 */
+	public String search(int k) {
+		Node x = root;
+		while (x != null) {
+			if (k == x.key)
+				return x.info;
+			x = k < x.key ? x.left : x.right;
+		}
+		return null;
+	}
+
+	/**
+	 * Checks whether the tree contains key k
+	 */
+	public boolean contains(int k) {
+		Node x = root;
+		while (x != null) {
+			if (k == x.key)
+				return true;
+			x = k < x.key ? x.left : x.right;
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the info of the i'th smallest key (null if i is out of range)
+	 * @param i - 1 based index
+	 */
+	public String select(int i) {
+		if (i < 1 || i > size())
+			return null;
+		i--;
+		Node x = root;
+		while (true) {
+			int leftSize = size(x.left);
+			if (i == leftSize)
+				return x.info;
+			if (i < leftSize) {
+				x = x.left;
+			} else {
+				i -= leftSize + 1;
+				x = x.right;
+			}
+		}
+	}
+
+	/**
+	 * Returns the info of the item with the smallest key, or null if the tree is empty
+	 */
+	public String min() {
+		if (root == null)
+			return null;
+		Node x = root;
+		while (x.left != null)
+			x = x.left;
+		return x.info;
+	}
+
+	/**
+	 * Returns the info of the item with the largest key, or null if the tree is empty
+	 */
+	public String max() {
+		if (root == null)
+			return null;
+		Node x = root;
+		while (x.right != null)
+			x = x.right;
+		return x.info;
+	}
+
+	/**
+	 * Returns a sorted array which contains all keys in the tree
+	 */
+	public int[] keysToArray() {
+		int[] arr = new int[size()];
+		fillKeys(root, arr, 0);
+		return arr;
+	}
+
+	private static int fillKeys(Node x, int[] arr, int i) {
+		if (x == null)
+			return i;
+		i = fillKeys(x.left, arr, i);
+		arr[i++] = x.key;
+		return fillKeys(x.right, arr, i);
+	}
+
+	/**
+	 * Returns an array which contains all infos in the tree, sorted by their respective keys
+	 */
+	public String[] infoToArray() {
+		String[] arr = new String[size()];
+		fillInfos(root, arr, 0);
+		return arr;
+	}
+
+	private static int fillInfos(Node x, String[] arr, int i) {
+		if (x == null)
+			return i;
+		i = fillInfos(x.left, arr, i);
+		arr[i++] = x.info;
+		return fillInfos(x.right, arr, i);
+	}
+
+	/**
+	 * Returns a version of the tree with the item (k, i) inserted
+	 * @param k - key
+	 * @param i - info
+	 * @return the new version, or this tree if an item with key k already exists
+	 */
+	public PersistentWAVLTree insert(int k, String i) {
+		Node newRoot = insert(root, k, i);
+		return newRoot == root ? this : new PersistentWAVLTree(newRoot);
+	}
+
+	/**
+	 * Returns a version of the tree without the item with key k
+	 * @param k - key
+	 * @return the new version, or this tree if there is no item with key k
+	 */
+	public PersistentWAVLTree delete(int k) {
+		Node newRoot = delete(root, k);
+		if (newRoot == root)
+			return this;
+		return newRoot == null ? EMPTY : new PersistentWAVLTree(newRoot);
+	}
+
+	/**
+	 * Inserts into the subtree of x, copying the search path
+	 * @return the new root of the subtree (with rank difference 0 from the parent of x
+	 * if the insertion promoted it), or x if k already exists
+	 */
+	private static Node insert(Node x, int k, String i) {
+		if (x == null)
+			return new Node(k, i, null, null, 0);
+		if (k == x.key)
+			return x;
+		if (k < x.key) {
+			Node left = insert(x.left, k, i);
+			return left == x.left ? x : insertionBalance(x, left, x.right, true);
+		} else {
+			Node right = insert(x.right, k, i);
+			return right == x.right ? x : insertionBalance(x, x.left, right, false);
+		}
+	}
+
+	/**
+	 * Rebuilds x with a changed child, fixing a rank difference 0 between x and the child
+	 * (slides 23-26): a promotion if x is 0,1, otherwise a single or double rotation
+	 * @param fromLeft - true if the left child is the changed one
+	 */
+	private static Node insertionBalance(Node x, Node left, Node right, boolean fromLeft) {
+		Node child = fromLeft ? left : right;
+		Node sibling = fromLeft ? right : left;
+		if (x.rank != child.rank)
+			return x.with(left, right, x.rank);
+		if (x.rank - rank(sibling) == 1)
+			return x.with(left, right, x.rank + 1); // 0,1 - promote, the parent checks next
+		// 0,2 - rotate
+		Node outer = fromLeft ? child.left : child.right;
+		Node inner = fromLeft ? child.right : child.left;
+		if (child.rank - rank(outer) == 1) {
+			// single rotation, x is demoted
+			if (fromLeft)
+				return child.with(outer, x.with(inner, right, x.rank - 1), child.rank);
+			return child.with(x.with(left, inner, x.rank - 1), outer, child.rank);
+		}
+		// double rotation, inner goes up and is promoted, child and x are demoted
+		if (fromLeft)
+			return inner.with(child.with(outer, inner.left, child.rank - 1),
+					x.with(inner.right, right, x.rank - 1), inner.rank + 1);
+		return inner.with(x.with(left, inner.left, x.rank - 1),
+				child.with(inner.right, outer, child.rank - 1), inner.rank + 1);
+	}
+
+	/**
+	 * Deletes from the subtree of x, copying the search path
+	 * @return the new root of the subtree, or x if k does not exist
+	 */
+	private static Node delete(Node x, int k) {
+		if (x == null)
+			return null;
+		if (k < x.key) {
+			Node left = delete(x.left, k);
+			return left == x.left ? x : deletionBalance(x, left, x.right, true);
+		}
+		if (k > x.key) {
+			Node right = delete(x.right, k);
+			return right == x.right ? x : deletionBalance(x, x.left, right, false);
+		}
+		if (x.left == null)
+			return x.right;
+		if (x.right == null)
+			return x.left;
+		// binary node - replace by its successor, which is removed from the right subtree
+		Node successor = x.right;
+		while (successor.left != null)
+			successor = successor.left;
+		Node right = deleteMin(x.right);
+		return deletionBalance(successor, x.left, right, false, x.rank);
+	}
+
+	/**
+	 * Deletes the smallest key from the subtree of x
+	 * @pre x != null
+	 */
+	private static Node deleteMin(Node x) {
+		if (x.left == null)
+			return x.right;
+		return deletionBalance(x, deleteMin(x.left), x.right, true);
+	}
+
+	private static Node deletionBalance(Node x, Node left, Node right, boolean fromLeft) {
+		return deletionBalance(x, left, right, fromLeft, x.rank);
+	}
+
+	/**
+	 * Rebuilds x (with rank r) with a changed child, fixing a 2,2 leaf or a rank
+	 * difference 3 between x and the child (slides 52-58)
+	 * @param fromLeft - true if the left child is the changed one
+	 */
+	private static Node deletionBalance(Node x, Node left, Node right, boolean fromLeft, int r) {
+		if (left == null && right == null)
+			return x.with(null, null, 0); // a 2,2 leaf is demoted
+		Node child = fromLeft ? left : right;
+		Node sibling = fromLeft ? right : left;
+		if (r - rank(child) != 3)
+			return x.with(left, right, r);
+		if (r - rank(sibling) == 2)
+			return x.with(left, right, r - 1); // 3,2 - demote, the parent checks next
+		// 3,1
+		Node outer = fromLeft ? sibling.right : sibling.left;
+		Node inner = fromLeft ? sibling.left : sibling.right;
+		int outerDifference = sibling.rank - rank(outer);
+		int innerDifference = sibling.rank - rank(inner);
+		if (outerDifference == 2 && innerDifference == 2) {
+			// double demotion
+			Node demotedSibling = sibling.with(sibling.left, sibling.right, sibling.rank - 1);
+			return fromLeft ? x.with(left, demotedSibling, r - 1) : x.with(demotedSibling, right, r - 1);
+		}
+		if (outerDifference == 1) {
+			// single rotation, sibling goes up and is promoted, x is demoted (twice if it becomes a 2,2 leaf)
+			int xRank = child == null && inner == null ? 0 : r - 1;
+			if (fromLeft)
+				return sibling.with(x.with(left, inner, xRank), outer, sibling.rank + 1);
+			return sibling.with(outer, x.with(inner, right, xRank), sibling.rank + 1);
+		}
+		// double rotation, inner goes up with rank r, x is demoted twice and sibling once
+		if (fromLeft)
+			return inner.with(x.with(left, inner.left, r - 2), sibling.with(inner.right, outer, sibling.rank - 1), r);
+		return inner.with(sibling.with(outer, inner.left, sibling.rank - 1), x.with(inner.right, right, r - 2), r);
+	}
+
+	/**
+	 * public static class Mutable
+	 *
+	 * A mutable tree which keeps the current version. A snapshot is the current version
+	 * itself, so it takes O(1) and stays consistent while the tree keeps changing.
+	 * Updates are serialized, and snapshots can be taken from any thread.
+	 */
+	public static class Mutable {
+		private volatile PersistentWAVLTree current = EMPTY;
+
+		/**
+		 * Inserts an item with key k and info i
+		 * @return true if the item was inserted, false if an item with key k already exists
+		 */
+		public synchronized boolean insert(int k, String i) {
+			PersistentWAVLTree next = current.insert(k, i);
+			if (next == current)
+				return false;
+			current = next;
+			return true;
+		}
+
+		/**
+		 * Deletes the item with key k
+		 * @return true if the item was deleted, false if there is no item with key k
+		 */
+		public synchronized boolean delete(int k) {
+			PersistentWAVLTree next = current.delete(k);
+			if (next == current)
+				return false;
+			current = next;
+			return true;
+		}
+
+		/**
+		 * Searches for an item with key k in the current version
+		 * @return the info of the item with key k if it exists, otherwise null
+		 */
+		public String search(int k) {
+			return current.search(k);
+		}
+
+		/**
+		 * Returns the number of items in the current version
+		 */
+		public int size() {
+			return current.size();
+		}
+
+		/**
+		 * Returns an immutable snapshot of the tree, in O(1)
+		 */
+		public PersistentWAVLTree snapshot() {
+			return current;
+		}
+	}
+}
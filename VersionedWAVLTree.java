@@ -0,0 +1,542 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ObjIntConsumer;
+
+/**
+ *
+ * VersionedWAVLTree
+ *
+ * A WAVL tree with multi-version concurrency control: insert and delete copy the nodes on
+ * their search path, like PersistentWAVLTree, and publish a new version, while readers
+ * pin a version (see snapshot) and read it without locking, as long as they need. So
+ * long scans and select-heavy reports do not block the writers, and the writers do not
+ * disturb them.
+ *
+ * Writers are serialized. The nodes which a write copies or removes are retired with the
+ * version they were last reachable in, and once no reader pins that version or an older
+ * one they go to a free list, from which the next writes take their nodes (epoch based
+ * reclamation, with the versions as the epochs). A node which a write created itself is
+ * not copied again by the same write, but changed in place, since no reader can see it
+ * before the version is published.
+ *
+ * A reader pins a version by counting itself in it and checking that it is still the
+ * current version afterwards, otherwise it tries the newer one. A version which is not
+ * current and has no readers is never pinned again, so its retired nodes can be reused.
+ *
+ */
+
+public class VersionedWAVLTree {
+
+	private static final int MAX_POOL_SIZE = 1 << 16;
+
+	/**
+	 * A node. null is the external node, with rank -1 and size 0. The fields of a node
+	 * are only written by the writer, before the version which reaches it is published.
+	 */
+	static final class Node {
+		int key;
+		String info;
+		Node left;
+		Node right;
+		int rank;
+		int size;
+		long born; // the version which created the node
+	}
+
+	/**
+	 * A published version of the tree
+	 */
+	static final class Version {
+		final Node root;
+		final long number;
+		final AtomicInteger readers = new AtomicInteger();
+		Version next = null; // the next version, written by the writer
+		ArrayList<Node> retired = null; // the nodes which are not reachable from the next version
+
+		Version(Node root, long number) {
+			this.root = root;
+			this.number = number;
+		}
+	}
+
+	private volatile Version current = new Version(null, 0);
+	private Version oldest = current; // the oldest version whose retired nodes are not reclaimed
+
+	// the state of the write in progress, guarded by this
+	private long writing;
+	private ArrayList<Node> retiring = new ArrayList<>();
+	private Node[] pool = new Node[16];
+	private int pooled = 0;
+	private long reused = 0;
+
+	private static int rank(Node x) {
+		return x == null ? -1 : x.rank;
+	}
+
+	private static int size(Node x) {
+		return x == null ? 0 : x.size;
+	}
+
+	/**
+	 * Pins the current version for reading, see Snapshot. The snapshot has to be closed
+	 * (try-with-resources), otherwise the nodes retired since its version are not reused.
+	 */
+	public Snapshot snapshot() {
+		while (true) {
+			Version v = this.current;
+			v.readers.incrementAndGet();
+			if (this.current == v)
+				return new Snapshot(v);
+			// a newer version was published meanwhile, and v might be reclaimed already
+			v.readers.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Searches for an item with key k in the current version
+	 * @return the info of the item with key k if it exists, otherwise null
+	 */
+	public String search(int k) {
+		try (Snapshot s = snapshot()) {
+			return s.search(k);
+		}
+	}
+
+	/**
+	 * Returns the number of items in the current version
+	 */
+	public int size() {
+		return size(this.current.root);
+	}
+
+	/**
+	 * Returns the number of the current version, which every successful insert and
+	 * delete increments
+	 */
+	public long version() {
+		return this.current.number;
+	}
+
+	/**
+	 * Returns the number of nodes in the free list
+	 */
+	public synchronized int pooledNodes() {
+		return this.pooled;
+	}
+
+	/**
+	 * Returns the number of nodes taken from the free list so far
+	 */
+	public synchronized long reusedNodes() {
+		return this.reused;
+	}
+
+	/**
+	 * Inserts an item with key k and info i, and publishes the new version
+	 * @return true if the item was inserted, false if an item with key k already exists
+	 */
+	public synchronized boolean insert(int k, String i) {
+		Version v = this.current;
+		this.writing = v.number + 1;
+		Node newRoot = insert(v.root, k, i);
+		if (newRoot == v.root)
+			return false;
+		publish(v, newRoot);
+		return true;
+	}
+
+	/**
+	 * Deletes the item with key k, and publishes the new version
+	 * @return true if the item was deleted, false if there is no item with key k
+	 */
+	public synchronized boolean delete(int k) {
+		Version v = this.current;
+		this.writing = v.number + 1;
+		Node newRoot = delete(v.root, k);
+		if (newRoot == v.root)
+			return false;
+		publish(v, newRoot);
+		return true;
+	}
+
+	/**
+	 * Publishes a version with newRoot after v, and reclaims the nodes of the versions
+	 * which no reader pins anymore
+	 */
+	private void publish(Version v, Node newRoot) {
+		Version next = new Version(newRoot, this.writing);
+		v.retired = this.retiring;
+		this.retiring = new ArrayList<>();
+		v.next = next;
+		this.current = next;
+		// the nodes retired by the version after oldest were last reachable in oldest
+		while (this.oldest != next && this.oldest.readers.get() == 0) {
+			for (Node x : this.oldest.retired)
+				release(x);
+			this.oldest.retired = null;
+			this.oldest = this.oldest.next;
+		}
+	}
+
+	private void release(Node x) {
+		x.info = null;
+		x.left = null;
+		x.right = null;
+		if (this.pooled == MAX_POOL_SIZE)
+			return; // the free list is full, leave the node to the garbage collector
+		if (this.pooled == this.pool.length)
+			this.pool = Arrays.copyOf(this.pool, this.pool.length * 2);
+		this.pool[this.pooled++] = x;
+	}
+
+	/**
+	 * Returns a node of the version being written, from the free list if possible
+	 */
+	private Node newNode(int key, String info, Node left, Node right, int rank) {
+		Node x;
+		if (this.pooled > 0) {
+			x = this.pool[--this.pooled];
+			this.pool[this.pooled] = null;
+			this.reused++;
+		} else {
+			x = new Node();
+		}
+		x.key = key;
+		x.info = info;
+		x.left = left;
+		x.right = right;
+		x.rank = rank;
+		x.size = size(left) + size(right) + 1;
+		x.born = this.writing;
+		return x;
+	}
+
+	/**
+	 * Returns x with other children and rank: x itself if the current write created it,
+	 * otherwise a copy, and x is retired
+	 */
+	private Node with(Node x, Node left, Node right, int rank) {
+		if (x.born == this.writing) {
+			x.left = left;
+			x.right = right;
+			x.rank = rank;
+			x.size = size(left) + size(right) + 1;
+			return x;
+		}
+		this.retiring.add(x);
+		return newNode(x.key, x.info, left, right, rank);
+	}
+
+	/**
+	 * Inserts into the subtree of x, copying the search path, like PersistentWAVLTree
+	 * @return the new root of the subtree, or x if k already exists
+	 */
+	private Node insert(Node x, int k, String i) {
+		if (x == null)
+			return newNode(k, i, null, null, 0);
+		if (k == x.key)
+			return x;
+		if (k < x.key) {
+			Node left = insert(x.left, k, i);
+			return left == x.left ? x : insertionBalance(x, left, x.right, true);
+		} else {
+			Node right = insert(x.right, k, i);
+			return right == x.right ? x : insertionBalance(x, x.left, right, false);
+		}
+	}
+
+	/**
+	 * Rebuilds x with a changed child, fixing a rank difference 0 between x and the child,
+	 * like PersistentWAVLTree
+	 * @param fromLeft - true if the left child is the changed one
+	 */
+	private Node insertionBalance(Node x, Node left, Node right, boolean fromLeft) {
+		Node child = fromLeft ? left : right;
+		Node sibling = fromLeft ? right : left;
+		if (x.rank != child.rank)
+			return with(x, left, right, x.rank);
+		if (x.rank - rank(sibling) == 1)
+			return with(x, left, right, x.rank + 1); // 0,1 - promote, the parent checks next
+		// 0,2 - rotate
+		Node outer = fromLeft ? child.left : child.right;
+		Node inner = fromLeft ? child.right : child.left;
+		int xRank = x.rank, childRank = child.rank;
+		if (childRank - rank(outer) == 1) {
+			// single rotation, x is demoted
+			if (fromLeft)
+				return with(child, outer, with(x, inner, right, xRank - 1), childRank);
+			return with(child, with(x, left, inner, xRank - 1), outer, childRank);
+		}
+		// double rotation, inner goes up and is promoted, child and x are demoted
+		Node innerLeft = inner.left, innerRight = inner.right;
+		int innerRank = inner.rank;
+		if (fromLeft)
+			return with(inner, with(child, outer, innerLeft, childRank - 1),
+					with(x, innerRight, right, xRank - 1), innerRank + 1);
+		return with(inner, with(x, left, innerLeft, xRank - 1),
+				with(child, innerRight, outer, childRank - 1), innerRank + 1);
+	}
+
+	/**
+	 * Deletes from the subtree of x, copying the search path
+	 * @return the new root of the subtree, or x if k does not exist
+	 */
+	private Node delete(Node x, int k) {
+		if (x == null)
+			return null;
+		if (k < x.key) {
+			Node left = delete(x.left, k);
+			return left == x.left ? x : deletionBalance(x, left, x.right, true, x.rank);
+		}
+		if (k > x.key) {
+			Node right = delete(x.right, k);
+			return right == x.right ? x : deletionBalance(x, x.left, right, false, x.rank);
+		}
+		this.retiring.add(x);
+		if (x.left == null)
+			return x.right;
+		if (x.right == null)
+			return x.left;
+		// binary node - replace by a new node with the item of its successor, which is removed from the right subtree
+		Node successor = x.right;
+		while (successor.left != null)
+			successor = successor.left;
+		Node right = deleteMin(x.right);
+		Node y = newNode(successor.key, successor.info, x.left, right, x.rank);
+		return deletionBalance(y, x.left, right, false, x.rank);
+	}
+
+	/**
+	 * Deletes the smallest key from the subtree of x
+	 * @pre x != null
+	 */
+	private Node deleteMin(Node x) {
+		if (x.left == null) {
+			this.retiring.add(x);
+			return x.right;
+		}
+		return deletionBalance(x, deleteMin(x.left), x.right, true, x.rank);
+	}
+
+	/**
+	 * Rebuilds x (with rank r) with a changed child, fixing a 2,2 leaf or a rank
+	 * difference 3 between x and the child, like PersistentWAVLTree
+	 * @param fromLeft - true if the left child is the changed one
+	 */
+	private Node deletionBalance(Node x, Node left, Node right, boolean fromLeft, int r) {
+		if (left == null && right == null)
+			return with(x, null, null, 0); // a 2,2 leaf is demoted
+		Node child = fromLeft ? left : right;
+		Node sibling = fromLeft ? right : left;
+		if (r - rank(child) != 3)
+			return with(x, left, right, r);
+		if (r - rank(sibling) == 2)
+			return with(x, left, right, r - 1); // 3,2 - demote, the parent checks next
+		// 3,1
+		Node outer = fromLeft ? sibling.right : sibling.left;
+		Node inner = fromLeft ? sibling.left : sibling.right;
+		int siblingRank = sibling.rank;
+		int outerDifference = siblingRank - rank(outer);
+		int innerDifference = siblingRank - rank(inner);
+		if (outerDifference == 2 && innerDifference == 2) {
+			// double demotion
+			Node demotedSibling = with(sibling, sibling.left, sibling.right, siblingRank - 1);
+			return fromLeft ? with(x, left, demotedSibling, r - 1) : with(x, demotedSibling, right, r - 1);
+		}
+		if (outerDifference == 1) {
+			// single rotation, sibling goes up and is promoted, x is demoted (twice if it becomes a 2,2 leaf)
+			int xRank = child == null && inner == null ? 0 : r - 1;
+			if (fromLeft)
+				return with(sibling, with(x, left, inner, xRank), outer, siblingRank + 1);
+			return with(sibling, outer, with(x, inner, right, xRank), siblingRank + 1);
+		}
+		// double rotation, inner goes up with rank r, x is demoted twice and sibling once
+		Node innerLeft = inner.left, innerRight = inner.right;
+		if (fromLeft)
+			return with(inner, with(x, left, innerLeft, r - 2), with(sibling, innerRight, outer, siblingRank - 1), r);
+		return with(inner, with(sibling, outer, innerLeft, siblingRank - 1), with(x, innerRight, right, r - 2), r);
+	}
+
+	/**
+	 * public class Snapshot
+	 *
+	 * A pinned version of the tree. It reads the version without locking, and does not
+	 * change while the tree does. close unpins the version, and the snapshot must not be
+	 * used afterwards.
+	 */
+	public class Snapshot implements AutoCloseable {
+		private final Version version;
+		private boolean closed = false;
+
+		private Snapshot(Version version) {
+			this.version = version;
+		}
+
+		private Node root() {
+			if (this.closed)
+				throw new IllegalStateException("the snapshot is closed");
+			return this.version.root;
+		}
+
+		/**
+		 * Returns the number of the pinned version
+		 */
+		public long version() {
+			return this.version.number;
+		}
+
+		/**
+		 * Searches for an item with key k
+		 * @return the info of the item with key k if it exists, otherwise null
+		 */
+		public String search(int k) {
+			Node x = root();
+			while (x != null) {
+				if (k == x.key)
+					return x.info;
+				x = k < x.key ? x.left : x.right;
+			}
+			return null;
+		}
+
+		/**
+		 * Checks whether the version contains key k
+		 */
+		public boolean contains(int k) {
+			Node x = root();
+			while (x != null) {
+				if (k == x.key)
+					return true;
+				x = k < x.key ? x.left : x.right;
+			}
+			return false;
+		}
+
+		/**
+		 * Returns the number of items in the version
+		 */
+		public int size() {
+			return VersionedWAVLTree.size(root());
+		}
+
+		/**
+		 * Returns the info of the i'th smallest key (null if i is out of range)
+		 * @param i - 1 based index
+		 */
+		public String select(int i) {
+			Node x = root();
+			if (i < 1 || i > VersionedWAVLTree.size(x))
+				return null;
+			i--;
+			while (true) {
+				int leftSize = VersionedWAVLTree.size(x.left);
+				if (i == leftSize)
+					return x.info;
+				if (i < leftSize) {
+					x = x.left;
+				} else {
+					i -= leftSize + 1;
+					x = x.right;
+				}
+			}
+		}
+
+		/**
+		 * Returns the number of keys in the version which are smaller than or equal to key,
+		 * like WAVLTree.rank
+		 */
+		public int rank(int key) {
+			int count = 0;
+			Node x = root();
+			while (x != null) {
+				if (x.key <= key) {
+					count += VersionedWAVLTree.size(x.left) + 1;
+					x = x.right;
+				} else {
+					x = x.left;
+				}
+			}
+			return count;
+		}
+
+		/**
+		 * Returns the info of the item with the smallest key, or null if the version is empty
+		 */
+		public String min() {
+			Node x = root();
+			if (x == null)
+				return null;
+			while (x.left != null)
+				x = x.left;
+			return x.info;
+		}
+
+		/**
+		 * Returns the info of the item with the largest key, or null if the version is empty
+		 */
+		public String max() {
+			Node x = root();
+			if (x == null)
+				return null;
+			while (x.right != null)
+				x = x.right;
+			return x.info;
+		}
+
+		/**
+		 * Calls action with the info and the key of every item with key in [lo,hi], in key
+		 * order
+		 * @param lo - the lower bound (inclusive)
+		 * @param hi - the upper bound (inclusive)
+		 */
+		public void forEachInRange(int lo, int hi, ObjIntConsumer<String> action) {
+			forEachInRange(root(), lo, hi, action);
+		}
+
+		private void forEachInRange(Node x, int lo, int hi, ObjIntConsumer<String> action) {
+			while (x != null) {
+				if (x.key < lo) {
+					x = x.right;
+				} else if (x.key > hi) {
+					x = x.left;
+				} else {
+					forEachInRange(x.left, lo, hi, action);
+					action.accept(x.info, x.key);
+					x = x.right; // the rest of the range, without recursing
+				}
+			}
+		}
+
+		/**
+		 * Returns a sorted array which contains all keys in the version
+		 */
+		public int[] keysToArray() {
+			int[] arr = new int[size()];
+			int[] i = {0};
+			forEachInRange(Integer.MIN_VALUE, Integer.MAX_VALUE, (info, key) -> arr[i[0]++] = key);
+			return arr;
+		}
+
+		/**
+		 * Returns an array which contains all infos in the version, sorted by their
+		 * respective keys
+		 */
+		public String[] infoToArray() {
+			String[] arr = new String[size()];
+			int[] i = {0};
+			forEachInRange(Integer.MIN_VALUE, Integer.MAX_VALUE, (info, key) -> arr[i[0]++] = info);
+			return arr;
+		}
+
+		/**
+		 * Unpins the version
+		 */
+		public void close() {
+			if (!this.closed) {
+				this.closed = true;
+				this.version.readers.decrementAndGet();
+			}
+		}
+	}
+}
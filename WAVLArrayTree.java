@@ -0,0 +1,107 @@
+import java.util.Arrays;
+
+/**
+ *
+ * WAVLArrayTree
+ *
+ * A WAVL tree with the same API and the same rebalancing (and rebalancing counts) as
+ * WAVLTree, which keeps its nodes in parallel primitive arrays instead of WAVLNode
+ * objects. A node is an int id indexing left/right/parent/rank/size/key, see
+ * WAVLIndexedTree for the node management.
+ *
+ * Each node costs 28 bytes of array slots (with its info reference), without any
+ * object header or pointers, and nodes inserted together are usually adjacent in memory.
+ *
+ */
+
+public class WAVLArrayTree extends WAVLIndexedTree {
+
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private int[] left;
+	private int[] right;
+	private int[] parent;
+	private int[] rank;
+	private int[] size;
+	private int[] key;
+
+	/**
+	 * Empty Constractor. Initializing an empty tree
+	 */
+	public WAVLArrayTree() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Constractor. Initializing an empty tree with room for capacity nodes
+	 * @param capacity - the number of nodes to allocate room for
+	 */
+	public WAVLArrayTree(int capacity) {
+		super(Math.max(capacity, 1) + 1);
+		int slots = Math.max(capacity, 1) + 1;
+		left = new int[slots];
+		right = new int[slots];
+		parent = new int[slots];
+		rank = new int[slots];
+		size = new int[slots];
+		key = new int[slots];
+		rank[EXTERNAL] = -1;
+	}
+
+	void growStorage(int slots) {
+		left = Arrays.copyOf(left, slots);
+		right = Arrays.copyOf(right, slots);
+		parent = Arrays.copyOf(parent, slots);
+		rank = Arrays.copyOf(rank, slots);
+		size = Arrays.copyOf(size, slots);
+		key = Arrays.copyOf(key, slots);
+	}
+
+	int getLeft(int x) {
+		return left[x];
+	}
+
+	void setLeft(int x, int l) {
+		left[x] = l;
+	}
+
+	int getRight(int x) {
+		return right[x];
+	}
+
+	void setRight(int x, int r) {
+		right[x] = r;
+	}
+
+	int getParent(int x) {
+		return parent[x];
+	}
+
+	void setParent(int x, int p) {
+		parent[x] = p;
+	}
+
+	int getRank(int x) {
+		return rank[x];
+	}
+
+	void setRank(int x, int r) {
+		rank[x] = r;
+	}
+
+	int getSize(int x) {
+		return size[x];
+	}
+
+	void setSize(int x, int s) {
+		size[x] = s;
+	}
+
+	int getKey(int x) {
+		return key[x];
+	}
+
+	void setKey(int x, int k) {
+		key[x] = k;
+	}
+}
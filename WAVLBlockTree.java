@@ -0,0 +1,609 @@
+import java.util.Arrays;
+
+/**
+ *
+ * WAVLBlockTree
+ *
+ * A WAVL tree of blocks: every node holds a sorted block of up to blockSize (16-64)
+ * items in primitive arrays, and the WAVL rank rules balance the nodes. The keys of a
+ * node's left subtree are smaller than its block and the keys of its right subtree are
+ * larger, so a search descends like in WAVLTree and scans one block at the end.
+ *
+ * A tree of n items has about n/blockSize nodes, so a search makes log(blockSize) less
+ * dependent hops (5 for blocks of 32), and a node keeps the smallest and largest keys of
+ * its block in its own fields, so the descent reads only the nodes and just the last
+ * block's arrays. The block is scanned by a branchless linear count of the keys smaller
+ * than k, which reads the key array sequentially.
+ *
+ * An insertion into a full block splits it into two blocks, or adds a new block next to
+ * it when the key is beyond its ends (so sequential insertions fill the blocks). A
+ * deletion which leaves a block less than a quarter full merges it with a neighbour if
+ * they fit in three quarters of a block, and an empty block is deleted. Only adding or
+ * deleting a block rebalances, the counts are as in WAVLTree. Every node keeps the number
+ * of items in its subtree, for select.
+ *
+ */
+
+public class WAVLBlockTree {
+
+	public static final int MIN_BLOCK_SIZE = 16;
+	public static final int MAX_BLOCK_SIZE = 64;
+	public static final int DEFAULT_BLOCK_SIZE = 32;
+
+	private final int blockSize;
+	private Block root = null;
+
+	/**
+	 * A node of the tree and its block. null is the external node, with rank -1 and size 0.
+	 */
+	static final class Block {
+		int low, high; // keys[0] and keys[count - 1], so the descent does not read the arrays
+		int count;
+		int[] keys;
+		String[] infos;
+		Block left, right, parent;
+		int rank = 0;
+		int size = 0; // the number of items in the subtree
+
+		Block(int blockSize) {
+			this.keys = new int[blockSize];
+			this.infos = new String[blockSize];
+		}
+	}
+
+	/**
+	 * Empty Constractor. Initializing an empty tree with blocks of DEFAULT_BLOCK_SIZE items
+	 */
+	public WAVLBlockTree() {
+		this(DEFAULT_BLOCK_SIZE);
+	}
+
+	/**
+	 * Constractor. Initializing an empty tree
+	 * @param blockSize - the number of items a block holds, between MIN_BLOCK_SIZE and MAX_BLOCK_SIZE
+	 */
+	public WAVLBlockTree(int blockSize) {
+		if (blockSize < MIN_BLOCK_SIZE || blockSize > MAX_BLOCK_SIZE)
+			throw new IllegalArgumentException("blockSize must be between " + MIN_BLOCK_SIZE + " and " + MAX_BLOCK_SIZE);
+		this.blockSize = blockSize;
+	}
+
+	private static int rank(Block x) {
+		return x == null ? -1 : x.rank;
+	}
+
+	private static int size(Block x) {
+		return x == null ? 0 : x.size;
+	}
+
+	/**
+	 * Returns the number of items a block holds
+	 */
+	public int getBlockSize() {
+		return this.blockSize;
+	}
+
+	/**
+	 * Checks whether the tree is empty or not
+	 * @return true if and only if the tree is empty
+	 */
+	public boolean empty() {
+		return this.root == null;
+	}
+
+	/**
+	 * Returns the number of items in the tree
+	 */
+	public int size() {
+		return size(this.root);
+	}
+
+	/**
+	 * Returns the number of blocks (nodes) in the tree
+	 */
+	public int blockCount() {
+		int count = 0;
+		for (Block x = first(); x != null; x = successor(x))
+			count++;
+		return count;
+	}
+
+	/**
+	 * Returns the number of blocks on the longest path from the root, 0 for an empty tree
+	 */
+	public int height() {
+		return height(this.root);
+	}
+
+	private static int height(Block x) {
+		return x == null ? 0 : 1 + Math.max(height(x.left), height(x.right));
+	}
+
+	/**
+	 * Returns the number of keys in the block of x which are smaller than k. The count
+	 * adds the sign bit of keys[j] - k (computed in long, so it cannot overflow) instead
+	 * of branching on each comparison.
+	 */
+	private static int lowerBound(Block x, int k) {
+		int[] keys = x.keys;
+		int n = x.count;
+		int i = 0;
+		for (int j = 0; j < n; j++)
+			i += (int) (((long) keys[j] - k) >>> 63);
+		return i;
+	}
+
+	/**
+	 * Searches for an item with key k
+	 * @param k - key
+	 * @return the info of the item with key k if it exists in the tree, otherwise null
+	 */
+	public String search(int k) {
+		Block x = this.root;
+		while (x != null) {
+			if (k < x.low) {
+				x = x.left;
+			} else if (k > x.high) {
+				x = x.right;
+			} else {
+				int i = lowerBound(x, k);
+				return x.keys[i] == k ? x.infos[i] : null;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Inserts an item with key k and info i to the tree
+	 * @return the number of rebalancing operations, or -1 if an item with key k already exists
+	 */
+	public int insert(int k, String i) {
+		if (this.root == null) {
+			this.root = new Block(this.blockSize);
+			insertAt(this.root, 0, k, i);
+			this.root.size = 1;
+			return 0;
+		}
+		// find the block whose range contains k, or the last block on the search path
+		Block x = this.root;
+		while (true) {
+			if (k < x.low) {
+				if (x.left == null)
+					break;
+				x = x.left;
+			} else if (k > x.high) {
+				if (x.right == null)
+					break;
+				x = x.right;
+			} else {
+				break;
+			}
+		}
+		int pos = lowerBound(x, k);
+		if (pos < x.count && x.keys[pos] == k)
+			return -1;
+		if (x.count < this.blockSize) {
+			insertAt(x, pos, k, i);
+			addToSizes(x, 1);
+			return 0;
+		}
+		if (pos == 0 || pos == x.count) {
+			// k is beyond an end of the full block - use the neighbouring block on that side,
+			// which k is also beyond, or add a new one between them
+			boolean after = pos == x.count;
+			Block neighbour = after ? successor(x) : predecessor(x);
+			if (neighbour != null && neighbour.count < this.blockSize) {
+				insertAt(neighbour, after ? 0 : neighbour.count, k, i);
+				addToSizes(neighbour, 1);
+				return 0;
+			}
+			Block y = new Block(this.blockSize);
+			insertAt(y, 0, k, i);
+			y.size = 1;
+			link(x, y, after);
+			addToSizes(y.parent, 1);
+			return insertionBalance(y);
+		}
+		// split the full block, its upper half moves to a new block after it
+		Block y = new Block(this.blockSize);
+		int half = this.blockSize / 2;
+		y.count = x.count - half;
+		System.arraycopy(x.keys, half, y.keys, 0, y.count);
+		System.arraycopy(x.infos, half, y.infos, 0, y.count);
+		Arrays.fill(x.infos, half, x.count, null);
+		x.count = half;
+		if (pos <= half)
+			insertAt(x, pos, k, i);
+		else
+			insertAt(y, pos - half, k, i);
+		x.high = x.keys[x.count - 1];
+		y.low = y.keys[0];
+		y.high = y.keys[y.count - 1];
+		y.size = y.count;
+		link(x, y, true);
+		// y is in the subtree of x, which got one more item
+		for (Block z = y.parent; z != x; z = z.parent)
+			z.size += y.count;
+		addToSizes(x, 1);
+		return insertionBalance(y);
+	}
+
+	/**
+	 * Inserts (k, i) at index pos of the block of x, which is not full
+	 */
+	private static void insertAt(Block x, int pos, int k, String i) {
+		System.arraycopy(x.keys, pos, x.keys, pos + 1, x.count - pos);
+		System.arraycopy(x.infos, pos, x.infos, pos + 1, x.count - pos);
+		x.keys[pos] = k;
+		x.infos[pos] = i;
+		x.count++;
+		x.low = x.keys[0];
+		x.high = x.keys[x.count - 1];
+	}
+
+	/**
+	 * Adds delta to the subtree sizes of x and its ancestors
+	 */
+	private static void addToSizes(Block x, int delta) {
+		for (; x != null; x = x.parent)
+			x.size += delta;
+	}
+
+	/**
+	 * Links the new leaf y as the successor (or predecessor) of x
+	 */
+	private static void link(Block x, Block y, boolean after) {
+		if (after) {
+			if (x.right == null) {
+				x.right = y;
+			} else {
+				x = x.right;
+				while (x.left != null)
+					x = x.left;
+				x.left = y;
+			}
+		} else {
+			if (x.left == null) {
+				x.left = y;
+			} else {
+				x = x.left;
+				while (x.right != null)
+					x = x.right;
+				x.right = y;
+			}
+		}
+		y.parent = x;
+	}
+
+	/**
+	 * Rebalances the tree bottom up after the new leaf x was added, like WAVLMap
+	 * @return the number of rebalancing operations
+	 */
+	private int insertionBalance(Block x) {
+		int count = 0;
+		Block p = x.parent;
+		while (p != null && p.rank == x.rank) {
+			boolean xIsLeftChild = x == p.left;
+			Block sibling = xIsLeftChild ? p.right : p.left;
+			if (p.rank - rank(sibling) == 1) {
+				// parent is 0,1 node - promote and continue up
+				p.rank++;
+				count++;
+				x = p;
+				p = x.parent;
+				continue;
+			}
+			// parent is 0,2 node
+			Block outer = xIsLeftChild ? x.left : x.right;
+			if (x.rank - rank(outer) == 1) {
+				// single rotation
+				rotateUp(x);
+				p.rank--;
+				count += 2;
+			} else {
+				// double rotation
+				Block inner = xIsLeftChild ? x.right : x.left;
+				rotateUp(inner);
+				rotateUp(inner);
+				inner.rank++;
+				x.rank--;
+				p.rank--;
+				count += 5;
+			}
+			break;
+		}
+		return count;
+	}
+
+	/**
+	 * Deletes the item with key k from the tree
+	 * @return the number of rebalancing operations, or -1 if there is no item with key k
+	 */
+	public int delete(int k) {
+		Block x = this.root;
+		while (x != null) {
+			if (k < x.low)
+				x = x.left;
+			else if (k > x.high)
+				x = x.right;
+			else
+				break;
+		}
+		if (x == null)
+			return -1;
+		int pos = lowerBound(x, k);
+		if (x.keys[pos] != k)
+			return -1;
+		System.arraycopy(x.keys, pos + 1, x.keys, pos, x.count - pos - 1);
+		System.arraycopy(x.infos, pos + 1, x.infos, pos, x.count - pos - 1);
+		x.count--;
+		x.infos[x.count] = null;
+		addToSizes(x, -1);
+		if (x.count == 0)
+			return deleteBlock(x);
+		x.low = x.keys[0];
+		x.high = x.keys[x.count - 1];
+		if (x.count < this.blockSize / 4) {
+			Block next = successor(x);
+			if (next != null && x.count + next.count <= this.blockSize * 3 / 4)
+				return merge(x, next);
+			Block previous = predecessor(x);
+			if (previous != null && previous.count + x.count <= this.blockSize * 3 / 4)
+				return merge(previous, x);
+		}
+		return 0;
+	}
+
+	/**
+	 * Moves the items of b to the end of the block of a, and deletes b
+	 * @pre b is the successor of a, and their items fit in one block
+	 * @return the number of rebalancing operations
+	 */
+	private int merge(Block a, Block b) {
+		System.arraycopy(b.keys, 0, a.keys, a.count, b.count);
+		System.arraycopy(b.infos, 0, a.infos, a.count, b.count);
+		a.count += b.count;
+		a.high = a.keys[a.count - 1];
+		addToSizes(b, -b.count);
+		addToSizes(a, b.count);
+		b.count = 0;
+		Arrays.fill(b.infos, null);
+		return deleteBlock(b);
+	}
+
+	/**
+	 * Removes an empty block from the tree and rebalances it. A binary node gets the block
+	 * of its successor, whose node is removed instead.
+	 * @pre z.count == 0
+	 * @return the number of rebalancing operations
+	 */
+	private int deleteBlock(Block z) {
+		if (z.left != null && z.right != null) {
+			Block s = z.right;
+			while (s.left != null)
+				s = s.left;
+			// swap the blocks, the items of s move up to z
+			int[] keys = z.keys;
+			String[] infos = z.infos;
+			z.keys = s.keys;
+			z.infos = s.infos;
+			z.count = s.count;
+			z.low = s.low;
+			z.high = s.high;
+			s.keys = keys;
+			s.infos = infos;
+			for (Block y = s; y != z; y = y.parent)
+				y.size -= z.count;
+			s.count = 0;
+			z = s;
+		}
+		Block child = z.left != null ? z.left : z.right;
+		Block p = z.parent;
+		if (child != null)
+			child.parent = p;
+		if (p == null) {
+			this.root = child;
+			return 0;
+		}
+		if (p.left == z)
+			p.left = child;
+		else
+			p.right = child;
+		return deletionBalance(p, child);
+	}
+
+	/**
+	 * Rebalances the tree bottom up after a node was removed from the children of p,
+	 * like WAVLMap
+	 * @param p - the parent of the removed node
+	 * @param x - the node which took the place of the removed node (might be external)
+	 * @return the number of rebalancing operations
+	 */
+	private int deletionBalance(Block p, Block x) {
+		int count = 0;
+		if (p.left == null && p.right == null && p.rank == 1) {
+			// leaf with 2,2
+			p.rank = 0;
+			count++;
+			x = p;
+			p = p.parent;
+		}
+		while (p != null && p.rank - rank(x) == 3) {
+			boolean xIsLeftChild = x == p.left;
+			Block y = xIsLeftChild ? p.right : p.left;
+			if (p.rank - rank(y) == 2) {
+				// 3,2 node - demote and continue up
+				p.rank--;
+				count++;
+				x = p;
+				p = p.parent;
+				continue;
+			}
+			Block outer = xIsLeftChild ? y.right : y.left;
+			Block inner = xIsLeftChild ? y.left : y.right;
+			if (y.rank - rank(outer) == 2 && y.rank - rank(inner) == 2) {
+				// 3,1 node with 2,2 child - double demotion and continue up
+				p.rank--;
+				y.rank--;
+				count += 2;
+				x = p;
+				p = p.parent;
+				continue;
+			}
+			if (y.rank - rank(outer) == 1) {
+				// single rotation
+				rotateUp(y);
+				y.rank++;
+				p.rank--;
+				if (p.left == null && p.right == null)
+					p.rank--;
+				count += 3;
+			} else {
+				// double rotation
+				rotateUp(inner);
+				rotateUp(inner);
+				inner.rank += 2;
+				y.rank--;
+				p.rank -= 2;
+				count += 5;
+			}
+			break;
+		}
+		return count;
+	}
+
+	/**
+	 * Rotates x above its parent, keeping the subtree sizes valid
+	 * @pre x.parent != null
+	 */
+	private void rotateUp(Block x) {
+		Block z = x.parent;
+		Block grandparent = z.parent;
+		if (x == z.left) {
+			Block b = x.right;
+			z.left = b;
+			if (b != null)
+				b.parent = z;
+			x.right = z;
+		} else {
+			Block b = x.left;
+			z.right = b;
+			if (b != null)
+				b.parent = z;
+			x.left = z;
+		}
+		z.parent = x;
+		x.parent = grandparent;
+		if (grandparent == null)
+			this.root = x;
+		else if (grandparent.left == z)
+			grandparent.left = x;
+		else
+			grandparent.right = x;
+		x.size = z.size;
+		z.size = size(z.left) + size(z.right) + z.count;
+	}
+
+	private Block first() {
+		Block x = this.root;
+		if (x != null)
+			while (x.left != null)
+				x = x.left;
+		return x;
+	}
+
+	private Block last() {
+		Block x = this.root;
+		if (x != null)
+			while (x.right != null)
+				x = x.right;
+		return x;
+	}
+
+	private static Block successor(Block x) {
+		if (x.right != null) {
+			x = x.right;
+			while (x.left != null)
+				x = x.left;
+			return x;
+		}
+		while (x.parent != null && x == x.parent.right)
+			x = x.parent;
+		return x.parent;
+	}
+
+	private static Block predecessor(Block x) {
+		if (x.left != null) {
+			x = x.left;
+			while (x.right != null)
+				x = x.right;
+			return x;
+		}
+		while (x.parent != null && x == x.parent.left)
+			x = x.parent;
+		return x.parent;
+	}
+
+	/**
+	 * Returns the info of the i'th smallest key (null if i is out of range)
+	 * @param i - 1 based index
+	 */
+	public String select(int i) {
+		if (i < 1 || i > size())
+			return null;
+		Block x = this.root;
+		while (true) {
+			int leftSize = size(x.left);
+			if (i <= leftSize) {
+				x = x.left;
+			} else if (i <= leftSize + x.count) {
+				return x.infos[i - leftSize - 1];
+			} else {
+				i -= leftSize + x.count;
+				x = x.right;
+			}
+		}
+	}
+
+	/**
+	 * Returns the info of the item with the smallest key, or null if the tree is empty
+	 */
+	public String min() {
+		Block x = first();
+		return x == null ? null : x.infos[0];
+	}
+
+	/**
+	 * Returns the info of the item with the largest key, or null if the tree is empty
+	 */
+	public String max() {
+		Block x = last();
+		return x == null ? null : x.infos[x.count - 1];
+	}
+
+	/**
+	 * Returns a sorted array which contains all keys in the tree
+	 */
+	public int[] keysToArray() {
+		int[] arr = new int[size()];
+		int i = 0;
+		for (Block x = first(); x != null; x = successor(x)) {
+			System.arraycopy(x.keys, 0, arr, i, x.count);
+			i += x.count;
+		}
+		return arr;
+	}
+
+	/**
+	 * Returns an array which contains all infos in the tree, sorted by their respective keys
+	 */
+	public String[] infoToArray() {
+		String[] arr = new String[size()];
+		int i = 0;
+		for (Block x = first(); x != null; x = successor(x)) {
+			System.arraycopy(x.infos, 0, arr, i, x.count);
+			i += x.count;
+		}
+		return arr;
+	}
+}
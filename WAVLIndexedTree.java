@@ -0,0 +1,487 @@
+import java.util.Arrays;
+
+/**
+ *
+ * WAVLIndexedTree
+ *
+ * A WAVL tree with the same API and the same rebalancing (and rebalancing counts) as
+ * WAVLTree, whose nodes are int ids instead of WAVLNode objects. The int fields of a
+ * node (left/right/parent/rank/size/key) are kept by the subclass storage (arrays in
+ * WAVLArrayTree, an off-heap buffer in WAVLOffHeapTree), and the info of a node is
+ * kept in an on-heap String array indexed by the node id.
+ *
+ * Node id 0 is the external node (rank -1, size 0) and is never written. The slots
+ * of deleted nodes are kept in a free list and reused by following insertions.
+ *
+ */
+
+abstract class WAVLIndexedTree {
+
+	static final int EXTERNAL = 0;
+
+	private String[] info;
+
+	private int root = EXTERNAL;
+	private int min = EXTERNAL, max = EXTERNAL;
+	private int nextUnused = 1; // the first slot which was never allocated
+	private int freeList = EXTERNAL; // deleted slots, linked through the left field
+
+	/**
+	 * Constractor. Initializing an empty tree
+	 * @param slots - the number of node slots (including the external node) of the storage
+	 */
+	WAVLIndexedTree(int slots) {
+		info = new String[slots];
+	}
+
+	abstract int getLeft(int x);
+
+	abstract void setLeft(int x, int left);
+
+	abstract int getRight(int x);
+
+	abstract void setRight(int x, int right);
+
+	abstract int getParent(int x);
+
+	abstract void setParent(int x, int parent);
+
+	abstract int getRank(int x);
+
+	abstract void setRank(int x, int rank);
+
+	abstract int getSize(int x);
+
+	abstract void setSize(int x, int size);
+
+	abstract int getKey(int x);
+
+	abstract void setKey(int x, int key);
+
+	/**
+	 * Grows the storage to the given number of node slots, keeping the existing nodes
+	 * @param slots - the new number of slots
+	 */
+	abstract void growStorage(int slots);
+
+	/**
+	 * Returns the largest number of node slots the storage can hold (including the external
+	 * node), the growth of the storage stops there
+	 */
+	int maxSlots() {
+		return Integer.MAX_VALUE - 8; // the largest array length which the VMs allow
+	}
+
+	/**
+	 * Returns a free node id with key k and info i, rank 0 and external children
+	 */
+	private int allocate(int k, String i) {
+		int x;
+		if (freeList != EXTERNAL) {
+			x = freeList;
+			freeList = getLeft(x);
+		} else {
+			if (nextUnused == info.length) {
+				int maxSlots = maxSlots();
+				if (info.length >= maxSlots)
+					throw new IllegalStateException("The tree is limited to " + (maxSlots - 1) + " nodes");
+				int slots = (int) Math.min((long) info.length + (info.length >> 1) + 1, maxSlots);
+				growStorage(slots);
+				info = Arrays.copyOf(info, slots);
+			}
+			x = nextUnused++;
+		}
+		setLeft(x, EXTERNAL);
+		setRight(x, EXTERNAL);
+		setParent(x, EXTERNAL);
+		setRank(x, 0);
+		setSize(x, 1);
+		setKey(x, k);
+		info[x] = i;
+		return x;
+	}
+
+	/**
+	 * Returns the slot of node x to the free list
+	 */
+	private void release(int x) {
+		info[x] = null;
+		setLeft(x, freeList);
+		freeList = x;
+	}
+
+	/**
+	 * Checks whether the tree is empty or not
+	 * @return returns true if and only if the tree is empty
+	 */
+	public boolean empty() {
+		return root == EXTERNAL;
+	}
+
+	/**
+	 * Returns the number of nodes in the tree.
+	 */
+	public int size() {
+		return getSize(root);
+	}
+
+	/**
+	 * Searches for node with key k
+	 * @param k - key
+	 * @return returns the info of an item with key k if it exists in the tree otherwise,
+	 * returns null
+	 */
+	public String search(int k) {
+		if (empty() || k < getKey(min) || k > getKey(max))
+			return null;
+		int x = searchForInsert(k);
+		return getKey(x) == k ? info[x] : null;
+	}
+
+	/**
+	 * Returns the node with key k if exists, otherwise, returns the node which k should be its child
+	 * @pre !empty()
+	 * @param k - key
+	 */
+	private int searchForInsert(int k) {
+		int x = root;
+		while (true) {
+			int kx = getKey(x);
+			if (kx == k)
+				return x;
+			int next = kx < k ? getRight(x) : getLeft(x);
+			if (next == EXTERNAL)
+				return x;
+			x = next;
+		}
+	}
+
+	/**
+	 * inserts an item with key k and info i to the WAVL tree. the tree must remain
+	 * valid (keep its invariants). returns the number of rebalancing operations, or
+	 * 0 if no rebalancing operations were necessary. returns -1 if an item with key
+	 * k already exists in the tree.
+	 */
+	public int insert(int k, String i) {
+		if (empty()) {
+			root = allocate(k, i);
+			min = root;
+			max = root;
+			return 0;
+		}
+		int p = searchForInsert(k);
+		if (getKey(p) == k)
+			return -1;
+		int x = allocate(k, i);
+		setChild(p, k < getKey(p), x);
+		if (k < getKey(min))
+			min = x;
+		if (k > getKey(max))
+			max = x;
+		for (int y = p; y != EXTERNAL; y = getParent(y))
+			setSize(y, getSize(y) + 1);
+
+		if (getRank(p) != 0)
+			return 0; // p was unary and is now a 1,1 node (case B)
+		// p was a leaf and is now a 0,1 node (case A)
+		setRank(p, 1);
+		return 1 + balanceAfterInsert(p);
+	}
+
+	/**
+	 * Rebalances the tree after pnode was promoted, in the cases of
+	 * WAVLTree.balanceTheTreeAfterInsert
+	 * @param pnode - the node whose upper edge might have rank difference 0
+	 * @return the number of balancing operations
+	 */
+	private int balanceAfterInsert(int pnode) {
+		int count = 0;
+		while (pnode != root) {
+			int p = getParent(pnode);
+			int pRank = getRank(p);
+			int leftDiff = pRank - getRank(getLeft(p));
+			int rightDiff = pRank - getRank(getRight(p));
+			int delta = Math.abs(leftDiff - rightDiff);
+			if (delta == 1 && Math.max(leftDiff, rightDiff) == 1) {
+				// parent is 0,1 node - promote and continue up
+				setRank(p, pRank + 1);
+				count++;
+				pnode = p;
+				continue;
+			}
+			if (delta == 2) {
+				// parent is 0,2 node
+				boolean pnodeIsLeftChild = pnode == getLeft(p);
+				int inner = pnodeIsLeftChild ? getRight(pnode) : getLeft(pnode);
+				int sibling = pnodeIsLeftChild ? getRight(p) : getLeft(p);
+				if (getRank(inner) == getRank(sibling)) {
+					// single rotation
+					rotateUp(pnode);
+					setRank(p, pRank - 1);
+					count += 2;
+				} else {
+					// double rotation
+					int b = getRank(getLeft(pnode)) > getRank(getRight(pnode)) ? getLeft(pnode) : getRight(pnode);
+					rotateUp(b);
+					setRank(pnode, getRank(pnode) - 1);
+					setRank(b, getRank(b) + 1);
+					rotateUp(b);
+					setRank(p, pRank - 1);
+					count += 5;
+				}
+			}
+			return count;
+		}
+		return count;
+	}
+
+	/**
+	 * deletes an item with key k from the binary tree, if it is there; the tree
+	 * must remain valid (keep its invariants). returns the number of rebalancing
+	 * operations, or 0 if no rebalancing operations were needed. returns -1 if an
+	 * item with key k was not found in the tree.
+	 */
+	public int delete(int k) {
+		if (empty() || k < getKey(min) || k > getKey(max))
+			return -1;
+		int z = searchForInsert(k);
+		if (getKey(z) != k)
+			return -1;
+
+		if (z == min)
+			min = successor(z);
+		if (z == max)
+			max = predecessor(z);
+
+		int start;
+		if (getLeft(z) != EXTERNAL && getRight(z) != EXTERNAL) {
+			// Switch with successor and delete
+			int s = getRight(z);
+			while (getLeft(s) != EXTERNAL)
+				s = getLeft(s);
+			int sParent = getParent(s);
+			if (sParent != z) {
+				setChild(sParent, true, getRight(s));
+				setChild(s, false, getRight(z));
+				start = sParent;
+			} else {
+				start = s;
+			}
+			setChild(s, true, getLeft(z));
+			replace(z, s);
+			setRank(s, getRank(z));
+			setSize(s, getSize(z));
+		} else {
+			// Deleting a leaf or an unary node
+			int child = getLeft(z) != EXTERNAL ? getLeft(z) : getRight(z);
+			int p = getParent(z);
+			replace(z, child);
+			if (p == EXTERNAL) {
+				release(z);
+				return 0;
+			}
+			start = p;
+		}
+		release(z);
+		for (int y = start; y != EXTERNAL; y = getParent(y))
+			setSize(y, getSize(y) - 1);
+		return deletionBalance(start);
+	}
+
+	/**
+	 * Rebalances the tree bottom up after a deletion, in the cases of
+	 * WAVLTree.WAVLNode.deletionBalance
+	 * @param x - the parent of the removed node
+	 * @return the number of balancing operations
+	 */
+	private int deletionBalance(int x) {
+		int count = 0;
+		while (true) {
+			int xRank = getRank(x);
+			int leftDiff = xRank - getRank(getLeft(x));
+			int rightDiff = xRank - getRank(getRight(x));
+			boolean leaf = getLeft(x) == EXTERNAL && getRight(x) == EXTERNAL;
+			if ((leftDiff == 2 && rightDiff == 1) || (leftDiff == 2 && rightDiff == 2 && !leaf)
+					|| (leftDiff == 1 && rightDiff == 2) || (leftDiff == 1 && rightDiff == 1)) {
+				return count;
+			}
+			if ((leftDiff == 2 && rightDiff == 2) || (leftDiff == 2 && rightDiff == 3) || (leftDiff == 3 && rightDiff == 2)) {
+				// leaf with 2,2 or 3,2 node - demote and continue up
+				setRank(x, xRank - 1);
+				count++;
+				if (x == root)
+					return count;
+				x = getParent(x);
+				continue;
+			}
+			boolean childIsRight = rightDiff == 1;
+			int y = childIsRight ? getRight(x) : getLeft(x);
+			int yRank = getRank(y);
+			int innerDiff = yRank - getRank(childIsRight ? getLeft(y) : getRight(y));
+			int outerDiff = yRank - getRank(childIsRight ? getRight(y) : getLeft(y));
+			if (innerDiff == 2 && outerDiff == 2) {
+				// double demotion
+				setRank(x, xRank - 1);
+				setRank(y, yRank - 1);
+				count += 2;
+				if (x == root)
+					return count;
+				x = getParent(x);
+				continue;
+			}
+			if (outerDiff == 1) {
+				// single rotation
+				rotateUp(y);
+				setRank(y, yRank + 1);
+				setRank(x, xRank - 1);
+				if (getLeft(x) == EXTERNAL && getRight(x) == EXTERNAL && xRank - 1 == 1)
+					setRank(x, 0);
+				return count + 3;
+			}
+			// double rotation
+			int v = childIsRight ? getLeft(y) : getRight(y);
+			setRank(x, xRank - 2);
+			setRank(y, yRank - 1);
+			setRank(v, getRank(v) + 2);
+			rotateUp(v);
+			rotateUp(v);
+			return count + 5;
+		}
+	}
+
+	/**
+	 * Puts newChild in the place of node old under old's parent (or as the root)
+	 */
+	private void replace(int old, int newChild) {
+		int p = getParent(old);
+		if (p == EXTERNAL)
+			root = newChild;
+		else if (getLeft(p) == old)
+			setLeft(p, newChild);
+		else
+			setRight(p, newChild);
+		if (newChild != EXTERNAL)
+			setParent(newChild, p);
+	}
+
+	/**
+	 * Sets the left/right child of node p, the external node is never written
+	 */
+	private void setChild(int p, boolean isLeft, int child) {
+		if (isLeft)
+			setLeft(p, child);
+		else
+			setRight(p, child);
+		if (child != EXTERNAL)
+			setParent(child, p);
+	}
+
+	/**
+	 * Rotates x above its parent, keeping the subtree sizes valid
+	 */
+	private void rotateUp(int x) {
+		int z = getParent(x);
+		replace(z, x);
+		if (x == getLeft(z)) {
+			setChild(z, true, getRight(x));
+			setChild(x, false, z);
+		} else {
+			setChild(z, false, getLeft(x));
+			setChild(x, true, z);
+		}
+		setSize(x, getSize(z));
+		setSize(z, getSize(getLeft(z)) + getSize(getRight(z)) + 1);
+	}
+
+	private int successor(int x) {
+		if (getRight(x) != EXTERNAL) {
+			x = getRight(x);
+			while (getLeft(x) != EXTERNAL)
+				x = getLeft(x);
+			return x;
+		}
+		int p = getParent(x);
+		while (p != EXTERNAL && x == getRight(p)) {
+			x = p;
+			p = getParent(p);
+		}
+		return p;
+	}
+
+	private int predecessor(int x) {
+		if (getLeft(x) != EXTERNAL) {
+			x = getLeft(x);
+			while (getRight(x) != EXTERNAL)
+				x = getRight(x);
+			return x;
+		}
+		int p = getParent(x);
+		while (p != EXTERNAL && x == getLeft(p)) {
+			x = p;
+			p = getParent(p);
+		}
+		return p;
+	}
+
+	/**
+	 * Returns the info of the item with the smallest key in the tree, or null if
+	 * the tree is empty
+	 */
+	public String min() {
+		return empty() ? null : info[min];
+	}
+
+	/**
+	 * Returns the info of the item with the largest key in the tree, or null if
+	 * the tree is empty
+	 */
+	public String max() {
+		return empty() ? null : info[max];
+	}
+
+	/**
+	 * Returns the value of the i'th smallest key (return null if i is out of range)
+	 * @param i - 1 based index
+	 */
+	public String select(int i) {
+		if (i < 1 || i > size())
+			return null;
+		i--;
+		int x = root;
+		while (true) {
+			int leftSize = getSize(getLeft(x));
+			if (i == leftSize)
+				return info[x];
+			if (i < leftSize) {
+				x = getLeft(x);
+			} else {
+				i -= leftSize + 1;
+				x = getRight(x);
+			}
+		}
+	}
+
+	/**
+	 * Returns a sorted array which contains all keys in the tree, or an empty array
+	 * if the tree is empty.
+	 */
+	public int[] keysToArray() {
+		int[] arr = new int[size()];
+		int i = 0;
+		for (int x = min; i < arr.length; x = successor(x))
+			arr[i++] = getKey(x);
+		return arr;
+	}
+
+	/**
+	 * Returns an array which contains all info in the tree, sorted by their
+	 * respective keys, or an empty array if the tree is empty.
+	 */
+	public String[] infoToArray() {
+		String[] arr = new String[size()];
+		int i = 0;
+		for (int x = min; i < arr.length; x = successor(x))
+			arr[i++] = info[x];
+		return arr;
+	}
+}
@@ -0,0 +1,169 @@
+import java.util.NoSuchElementException;
+
+/**
+ *
+ * WAVLIntIntMap
+ *
+ * A WAVL tree map from primitive int keys to primitive int values. Methods which
+ * have no value to return (a missing key) return the map's noEntryValue.
+ *
+ */
+
+public class WAVLIntIntMap extends WAVLLongKeyedTree {
+
+	private static final class Entry extends Node {
+		private int value;
+
+		private Entry(int key, int value) {
+			super(key);
+			this.value = value;
+		}
+	}
+
+	private final int noEntryValue;
+
+	/**
+	 * Empty Constractor. Initializing an empty map with 0 as the noEntryValue
+	 */
+	public WAVLIntIntMap() {
+		this(0);
+	}
+
+	/**
+	 * Constractor. Initializing an empty map
+	 * @param noEntryValue - the value returned for missing keys
+	 */
+	public WAVLIntIntMap(int noEntryValue) {
+		this.noEntryValue = noEntryValue;
+	}
+
+	void copyValue(Node from, Node to) {
+		((Entry) to).value = ((Entry) from).value;
+	}
+
+	/**
+	 * Returns the value returned for missing keys
+	 */
+	public int getNoEntryValue() {
+		return noEntryValue;
+	}
+
+	/**
+	 * Returns the value of the item with key k, or the noEntryValue if it does not exist in the map
+	 * @param k - key
+	 */
+	public int get(int k) {
+		Node x = findNode(k);
+		return x == null ? noEntryValue : ((Entry) x).value;
+	}
+
+	/**
+	 * Checks whether an item with key k exists in the map
+	 * @param k - key
+	 */
+	public boolean containsKey(int k) {
+		return findNode(k) != null;
+	}
+
+	/**
+	 * Maps key k to value v, replacing the former value of k if exists
+	 * @param k - key
+	 * @param v - value
+	 * @return the former value of k, or the noEntryValue if k did not exist
+	 */
+	public int put(int k, int v) {
+		Node parent = searchForInsert(k);
+		if (parent != null && parent.key == k) {
+			Entry e = (Entry) parent;
+			int old = e.value;
+			e.value = v;
+			return old;
+		}
+		attach(parent, new Entry(k, v));
+		return noEntryValue;
+	}
+
+	/**
+	 * Adds delta to the value of key k, an absent key is treated as mapped to 0
+	 * @param k - key
+	 * @param delta - the value to add
+	 * @return the new value of k
+	 */
+	public int addTo(int k, int delta) {
+		Node parent = searchForInsert(k);
+		if (parent != null && parent.key == k) {
+			Entry e = (Entry) parent;
+			e.value += delta;
+			return e.value;
+		}
+		attach(parent, new Entry(k, delta));
+		return delta;
+	}
+
+	/**
+	 * Deletes the item with key k, if it is there
+	 * @param k - key
+	 * @return the value of the deleted item, or the noEntryValue if k did not exist
+	 */
+	public int remove(int k) {
+		Node x = findNode(k);
+		if (x == null)
+			return noEntryValue;
+		int old = ((Entry) x).value;
+		removeNode(x);
+		return old;
+	}
+
+	/**
+	 * Returns the smallest key in the map
+	 * @throws NoSuchElementException if the map is empty
+	 */
+	public int firstKey() {
+		if (isEmpty())
+			throw new NoSuchElementException();
+		return (int) firstNode().key;
+	}
+
+	/**
+	 * Returns the largest key in the map
+	 * @throws NoSuchElementException if the map is empty
+	 */
+	public int lastKey() {
+		if (isEmpty())
+			throw new NoSuchElementException();
+		return (int) lastNode().key;
+	}
+
+	/**
+	 * Returns the value of the i'th smallest key (return the noEntryValue if i is out of range)
+	 * @param i - 1 based index
+	 */
+	public int select(int i) {
+		if (i < 1 || i > size())
+			return noEntryValue;
+		return ((Entry) nodeAt(i - 1)).value;
+	}
+
+	/**
+	 * Returns a sorted array which contains all keys in the map, or an empty array if the map is empty.
+	 */
+	public int[] keysToArray() {
+		int[] arr = new int[size()];
+		int i = 0;
+		for (Node x = firstNode(); x != null; x = successor(x))
+			arr[i++] = (int) x.key;
+		return arr;
+	}
+
+	/**
+	 * Returns an array which contains all values in the map, sorted by their
+	 * respective keys, or an empty array if the map is empty.
+	 */
+	public int[] valuesToArray() {
+		int[] arr = new int[size()];
+		int i = 0;
+		for (Node x = firstNode(); x != null; x = successor(x))
+			arr[i++] = ((Entry) x).value;
+		return arr;
+	}
+}
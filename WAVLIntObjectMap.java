@@ -0,0 +1,168 @@
+import java.util.NoSuchElementException;
+
+/**
+ *
+ * WAVLIntObjectMap
+ *
+ * A WAVL tree map from primitive int keys to values of any type. Unlike WAVLTree,
+ * the values are stored as is, so callers do not need to encode them into Strings,
+ * and no key is ever boxed.
+ *
+ */
+
+public class WAVLIntObjectMap<V> extends WAVLLongKeyedTree {
+
+	private static final class Entry<V> extends Node {
+		private V value;
+
+		private Entry(int key, V value) {
+			super(key);
+			this.value = value;
+		}
+	}
+
+	/**
+	 * Empty Constractor. Initializing an empty map
+	 */
+	public WAVLIntObjectMap() {
+	}
+
+	@SuppressWarnings("unchecked")
+	void copyValue(Node from, Node to) {
+		((Entry<V>) to).value = ((Entry<V>) from).value;
+	}
+
+	/**
+	 * Returns the value of the item with key k, or null if it does not exist in the map
+	 * @param k - key
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(int k) {
+		Node x = findNode(k);
+		return x == null ? null : ((Entry<V>) x).value;
+	}
+
+	/**
+	 * Returns the value of the item with key k, or defaultValue if it does not exist in the map
+	 * @param k - key
+	 * @param defaultValue - the value to return if k does not exist
+	 */
+	@SuppressWarnings("unchecked")
+	public V getOrDefault(int k, V defaultValue) {
+		Node x = findNode(k);
+		return x == null ? defaultValue : ((Entry<V>) x).value;
+	}
+
+	/**
+	 * Checks whether an item with key k exists in the map
+	 * @param k - key
+	 */
+	public boolean containsKey(int k) {
+		return findNode(k) != null;
+	}
+
+	/**
+	 * Maps key k to value v, replacing the former value of k if exists
+	 * @param k - key
+	 * @param v - value
+	 * @return the former value of k, or null if k did not exist
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(int k, V v) {
+		Node parent = searchForInsert(k);
+		if (parent != null && parent.key == k) {
+			Entry<V> e = (Entry<V>) parent;
+			V old = e.value;
+			e.value = v;
+			return old;
+		}
+		attach(parent, new Entry<>(k, v));
+		return null;
+	}
+
+	/**
+	 * Maps key k to value v, only if k does not exist in the map
+	 * @param k - key
+	 * @param v - value
+	 * @return the current value of k, or null if k did not exist
+	 */
+	@SuppressWarnings("unchecked")
+	public V putIfAbsent(int k, V v) {
+		Node parent = searchForInsert(k);
+		if (parent != null && parent.key == k)
+			return ((Entry<V>) parent).value;
+		attach(parent, new Entry<>(k, v));
+		return null;
+	}
+
+	/**
+	 * Deletes the item with key k, if it is there
+	 * @param k - key
+	 * @return the value of the deleted item, or null if k did not exist
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove(int k) {
+		Node x = findNode(k);
+		if (x == null)
+			return null;
+		V old = ((Entry<V>) x).value;
+		removeNode(x);
+		return old;
+	}
+
+	/**
+	 * Returns the smallest key in the map
+	 * @throws NoSuchElementException if the map is empty
+	 */
+	public int firstKey() {
+		if (isEmpty())
+			throw new NoSuchElementException();
+		return (int) firstNode().key;
+	}
+
+	/**
+	 * Returns the largest key in the map
+	 * @throws NoSuchElementException if the map is empty
+	 */
+	public int lastKey() {
+		if (isEmpty())
+			throw new NoSuchElementException();
+		return (int) lastNode().key;
+	}
+
+	/**
+	 * Returns the value of the i'th smallest key (return null if i is out of range)
+	 * Example: select(1) returns the value of the minimal key
+	 * @param i - 1 based index
+	 */
+	@SuppressWarnings("unchecked")
+	public V select(int i) {
+		if (i < 1 || i > size())
+			return null;
+		return ((Entry<V>) nodeAt(i - 1)).value;
+	}
+
+	/**
+	 * Returns a sorted array which contains all keys in the map, or an empty array if the map is empty.
+	 */
+	public int[] keysToArray() {
+		int[] arr = new int[size()];
+		int i = 0;
+		for (Node x = firstNode(); x != null; x = successor(x))
+			arr[i++] = (int) x.key;
+		return arr;
+	}
+
+	/**
+	 * Returns an array which contains all values in the map, sorted by their
+	 * respective keys, or an empty array if the map is empty.
+	 */
+	@SuppressWarnings("unchecked")
+	public Object[] valuesToArray() {
+		Object[] arr = new Object[size()];
+		int i = 0;
+		for (Node x = firstNode(); x != null; x = successor(x))
+			arr[i++] = ((Entry<V>) x).value;
+		return arr;
+	}
+}
@@ -0,0 +1,347 @@
+/**
+ *
+ * WAVLLongKeyedTree
+ *
+ * The WAVL engine shared by the primitive keyed maps (WAVLIntObjectMap, WAVLIntIntMap
+ * and WAVLLongLongMap). Keys are kept as long, so the int keyed maps use it without
+ * boxing, and the values live in node subclasses of the maps. External nodes are
+ * represented by null, which have rank -1 and size 0.
+ *
+ * All the operations are iterative, so no operation allocates besides the new node of
+ * an insertion.
+ *
+ */
+
+abstract class WAVLLongKeyedTree {
+
+	/**
+	 * A tree node, the maps extend it with a value field
+	 */
+	static class Node {
+		long key;
+		Node left;
+		Node parent;
+		Node right;
+		int rank;
+		int size;
+
+		Node(long key) {
+			this.key = key;
+			this.rank = 0;
+			this.size = 1;
+		}
+	}
+
+	Node root;
+
+	/**
+	 * Returns the rank of a node, -1 for external nodes
+	 */
+	static int rank(Node node) {
+		return node == null ? -1 : node.rank;
+	}
+
+	/**
+	 * Returns the subtree size of a node, 0 for external nodes
+	 */
+	static int size(Node node) {
+		return node == null ? 0 : node.size;
+	}
+
+	/**
+	 * Returns the number of items in the map
+	 * @return the number of items in the map
+	 */
+	public int size() {
+		return size(root);
+	}
+
+	/**
+	 * Checks whether the map is empty or not
+	 * @return true if and only if the map is empty
+	 */
+	public boolean isEmpty() {
+		return root == null;
+	}
+
+	/**
+	 * Removes all the items of the map
+	 */
+	public void clear() {
+		root = null;
+	}
+
+	/**
+	 * Copies the value of node "from" to node "to", used when deleting a binary node
+	 * by moving its successor item into it
+	 */
+	abstract void copyValue(Node from, Node to);
+
+	/**
+	 * Returns the node with key k, or null if there is no such node
+	 * @param k - key
+	 */
+	final Node findNode(long k) {
+		Node x = root;
+		while (x != null) {
+			if (k < x.key)
+				x = x.left;
+			else if (k > x.key)
+				x = x.right;
+			else
+				return x;
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the node with key k if exists, otherwise, returns the node which k should be its child.
+	 * Returns null if the tree is empty.
+	 * @param k - key
+	 */
+	final Node searchForInsert(long k) {
+		Node x = root;
+		Node last = null;
+		while (x != null) {
+			last = x;
+			if (k < x.key)
+				x = x.left;
+			else if (k > x.key)
+				x = x.right;
+			else
+				return x;
+		}
+		return last;
+	}
+
+	/**
+	 * Links a new node as a child of parent and rebalances the tree
+	 * @pre parent == searchForInsert(node.key) && (parent == null || parent.key != node.key)
+	 * @param parent - the node returned by searchForInsert
+	 * @param node - the new node
+	 */
+	final void attach(Node parent, Node node) {
+		node.parent = parent;
+		if (parent == null) {
+			root = node;
+			return;
+		}
+		if (node.key < parent.key)
+			parent.left = node;
+		else
+			parent.right = node;
+		for (Node x = parent; x != null; x = x.parent)
+			x.size++;
+		insertionBalance(node);
+	}
+
+	/**
+	 * Rebalances the tree bottom up after x got a rank difference of 0 from its parent
+	 * @param x - the problematic node
+	 */
+	private void insertionBalance(Node x) {
+		Node p = x.parent;
+		while (p != null && p.rank == x.rank) {
+			boolean xIsLeftChild = x == p.left;
+			Node sibling = xIsLeftChild ? p.right : p.left;
+			if (p.rank - rank(sibling) == 1) {
+				// parent is 0,1 node - promote and continue up
+				p.rank++;
+				x = p;
+				p = x.parent;
+				continue;
+			}
+			// parent is 0,2 node
+			Node outer = xIsLeftChild ? x.left : x.right;
+			if (x.rank - rank(outer) == 1) {
+				// single rotation
+				rotateUp(x);
+				p.rank--;
+			} else {
+				// double rotation
+				Node inner = xIsLeftChild ? x.right : x.left;
+				rotateUp(inner);
+				rotateUp(inner);
+				inner.rank++;
+				x.rank--;
+				p.rank--;
+			}
+			return;
+		}
+	}
+
+	/**
+	 * Deletes a node from the tree and rebalances it
+	 * @param z - a node of the tree
+	 */
+	final void removeNode(Node z) {
+		if (z.left != null && z.right != null) {
+			// move the successor item into z and delete the successor node instead
+			Node successor = z.right;
+			while (successor.left != null)
+				successor = successor.left;
+			z.key = successor.key;
+			copyValue(successor, z);
+			z = successor;
+		}
+		Node child = z.left != null ? z.left : z.right;
+		Node p = z.parent;
+		if (child != null)
+			child.parent = p;
+		if (p == null) {
+			root = child;
+			return;
+		}
+		if (p.left == z)
+			p.left = child;
+		else
+			p.right = child;
+		for (Node x = p; x != null; x = x.parent)
+			x.size--;
+		deletionBalance(p, child);
+	}
+
+	/**
+	 * Rebalances the tree bottom up after a node was removed from the children of p
+	 * @param p - the parent of the removed node
+	 * @param x - the node which took the place of the removed node (might be external)
+	 */
+	private void deletionBalance(Node p, Node x) {
+		if (p.left == null && p.right == null && p.rank == 1) {
+			// leaf with 2,2
+			p.rank = 0;
+			x = p;
+			p = p.parent;
+		}
+		while (p != null && p.rank - rank(x) == 3) {
+			boolean xIsLeftChild = x == p.left;
+			Node y = xIsLeftChild ? p.right : p.left;
+			if (p.rank - rank(y) == 2) {
+				// 3,2 node - demote and continue up
+				p.rank--;
+				x = p;
+				p = p.parent;
+				continue;
+			}
+			Node outer = xIsLeftChild ? y.right : y.left;
+			Node inner = xIsLeftChild ? y.left : y.right;
+			if (y.rank - rank(outer) == 2 && y.rank - rank(inner) == 2) {
+				// 3,1 node with 2,2 child - double demotion and continue up
+				p.rank--;
+				y.rank--;
+				x = p;
+				p = p.parent;
+				continue;
+			}
+			if (y.rank - rank(outer) == 1) {
+				// single rotation
+				rotateUp(y);
+				y.rank++;
+				p.rank--;
+				if (p.left == null && p.right == null)
+					p.rank--;
+			} else {
+				// double rotation
+				rotateUp(inner);
+				rotateUp(inner);
+				inner.rank += 2;
+				y.rank--;
+				p.rank -= 2;
+			}
+			return;
+		}
+	}
+
+	/**
+	 * Rotates x above its parent, keeping the subtree sizes valid
+	 * @pre x.parent != null
+	 * @param x - the node to rotate up
+	 */
+	private void rotateUp(Node x) {
+		Node z = x.parent;
+		Node grandparent = z.parent;
+		if (x == z.left) {
+			Node b = x.right;
+			z.left = b;
+			if (b != null)
+				b.parent = z;
+			x.right = z;
+		} else {
+			Node b = x.left;
+			z.right = b;
+			if (b != null)
+				b.parent = z;
+			x.left = z;
+		}
+		z.parent = x;
+		x.parent = grandparent;
+		if (grandparent == null)
+			root = x;
+		else if (grandparent.left == z)
+			grandparent.left = x;
+		else
+			grandparent.right = x;
+		x.size = z.size;
+		z.size = size(z.left) + size(z.right) + 1;
+	}
+
+	/**
+	 * Returns the node with the smallest key, or null if the tree is empty
+	 */
+	final Node firstNode() {
+		Node x = root;
+		if (x != null)
+			while (x.left != null)
+				x = x.left;
+		return x;
+	}
+
+	/**
+	 * Returns the node with the largest key, or null if the tree is empty
+	 */
+	final Node lastNode() {
+		Node x = root;
+		if (x != null)
+			while (x.right != null)
+				x = x.right;
+		return x;
+	}
+
+	/**
+	 * Returns the node following x according to the sorted order of keys, or null if x is the last
+	 */
+	static Node successor(Node x) {
+		if (x.right != null) {
+			x = x.right;
+			while (x.left != null)
+				x = x.left;
+			return x;
+		}
+		Node p = x.parent;
+		while (p != null && x == p.right) {
+			x = p;
+			p = p.parent;
+		}
+		return p;
+	}
+
+	/**
+	 * Returns the node with the i'th smallest key
+	 * @pre 0 <= i < size()
+	 * @param i - 0 based index
+	 */
+	final Node nodeAt(int i) {
+		Node x = root;
+		while (true) {
+			int leftSize = size(x.left);
+			if (i == leftSize)
+				return x;
+			if (i < leftSize) {
+				x = x.left;
+			} else {
+				i -= leftSize + 1;
+				x = x.right;
+			}
+		}
+	}
+}
@@ -0,0 +1,169 @@
+import java.util.NoSuchElementException;
+
+/**
+ *
+ * WAVLLongLongMap
+ *
+ * A WAVL tree map from primitive long keys to primitive long values. Methods which
+ * have no value to return (a missing key) return the map's noEntryValue.
+ *
+ */
+
+public class WAVLLongLongMap extends WAVLLongKeyedTree {
+
+	private static final class Entry extends Node {
+		private long value;
+
+		private Entry(long key, long value) {
+			super(key);
+			this.value = value;
+		}
+	}
+
+	private final long noEntryValue;
+
+	/**
+	 * Empty Constractor. Initializing an empty map with 0 as the noEntryValue
+	 */
+	public WAVLLongLongMap() {
+		this(0);
+	}
+
+	/**
+	 * Constractor. Initializing an empty map
+	 * @param noEntryValue - the value returned for missing keys
+	 */
+	public WAVLLongLongMap(long noEntryValue) {
+		this.noEntryValue = noEntryValue;
+	}
+
+	void copyValue(Node from, Node to) {
+		((Entry) to).value = ((Entry) from).value;
+	}
+
+	/**
+	 * Returns the value returned for missing keys
+	 */
+	public long getNoEntryValue() {
+		return noEntryValue;
+	}
+
+	/**
+	 * Returns the value of the item with key k, or the noEntryValue if it does not exist in the map
+	 * @param k - key
+	 */
+	public long get(long k) {
+		Node x = findNode(k);
+		return x == null ? noEntryValue : ((Entry) x).value;
+	}
+
+	/**
+	 * Checks whether an item with key k exists in the map
+	 * @param k - key
+	 */
+	public boolean containsKey(long k) {
+		return findNode(k) != null;
+	}
+
+	/**
+	 * Maps key k to value v, replacing the former value of k if exists
+	 * @param k - key
+	 * @param v - value
+	 * @return the former value of k, or the noEntryValue if k did not exist
+	 */
+	public long put(long k, long v) {
+		Node parent = searchForInsert(k);
+		if (parent != null && parent.key == k) {
+			Entry e = (Entry) parent;
+			long old = e.value;
+			e.value = v;
+			return old;
+		}
+		attach(parent, new Entry(k, v));
+		return noEntryValue;
+	}
+
+	/**
+	 * Adds delta to the value of key k, an absent key is treated as mapped to 0
+	 * @param k - key
+	 * @param delta - the value to add
+	 * @return the new value of k
+	 */
+	public long addTo(long k, long delta) {
+		Node parent = searchForInsert(k);
+		if (parent != null && parent.key == k) {
+			Entry e = (Entry) parent;
+			e.value += delta;
+			return e.value;
+		}
+		attach(parent, new Entry(k, delta));
+		return delta;
+	}
+
+	/**
+	 * Deletes the item with key k, if it is there
+	 * @param k - key
+	 * @return the value of the deleted item, or the noEntryValue if k did not exist
+	 */
+	public long remove(long k) {
+		Node x = findNode(k);
+		if (x == null)
+			return noEntryValue;
+		long old = ((Entry) x).value;
+		removeNode(x);
+		return old;
+	}
+
+	/**
+	 * Returns the smallest key in the map
+	 * @throws NoSuchElementException if the map is empty
+	 */
+	public long firstKey() {
+		if (isEmpty())
+			throw new NoSuchElementException();
+		return firstNode().key;
+	}
+
+	/**
+	 * Returns the largest key in the map
+	 * @throws NoSuchElementException if the map is empty
+	 */
+	public long lastKey() {
+		if (isEmpty())
+			throw new NoSuchElementException();
+		return lastNode().key;
+	}
+
+	/**
+	 * Returns the value of the i'th smallest key (return the noEntryValue if i is out of range)
+	 * @param i - 1 based index
+	 */
+	public long select(int i) {
+		if (i < 1 || i > size())
+			return noEntryValue;
+		return ((Entry) nodeAt(i - 1)).value;
+	}
+
+	/**
+	 * Returns a sorted array which contains all keys in the map, or an empty array if the map is empty.
+	 */
+	public long[] keysToArray() {
+		long[] arr = new long[size()];
+		int i = 0;
+		for (Node x = firstNode(); x != null; x = successor(x))
+			arr[i++] = x.key;
+		return arr;
+	}
+
+	/**
+	 * Returns an array which contains all values in the map, sorted by their
+	 * respective keys, or an empty array if the map is empty.
+	 */
+	public long[] valuesToArray() {
+		long[] arr = new long[size()];
+		int i = 0;
+		for (Node x = firstNode(); x != null; x = successor(x))
+			arr[i++] = ((Entry) x).value;
+		return arr;
+	}
+}
@@ -0,0 +1,1286 @@
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+
+/**
+ *
+ * WAVLMap
+ *
+ * A NavigableMap on a WAVL tree, with keys ordered by a Comparator or by their natural
+ * ordering, to be used in place of java.util.TreeMap. It has the same rebalancing as
+ * WAVLTree (at most 2 rotations per deletion, where a red-black tree might need 3), and
+ * the subtree sizes of the nodes give select and rank in O(log n), and the size of a
+ * subMap/headMap/tailMap view in O(log n) (TreeMap counts it in O(n)).
+ *
+ * Keys with natural ordering are compared by Comparable.compareTo directly, without a
+ * comparator. Like TreeMap, the map is not synchronized, its iterators are fail-fast,
+ * and the entries returned by the navigation methods (firstEntry, ceilingEntry, ...) are
+ * snapshots which do not support setValue. External nodes are represented by null,
+ * with rank -1 and size 0.
+ *
+ */
+
+public class WAVLMap<K, V> extends AbstractMap<K, V> implements NavigableMap<K, V> {
+
+	/**
+	 * The fence key of an iteration which runs to the end of the map
+	 */
+	private static final Object UNBOUNDED = new Object();
+
+	private final Comparator<? super K> comparator;
+	private Node<K, V> root;
+	private int modCount = 0; // changes of the structure, for the fail-fast iterators
+
+	private EntrySet entrySet;
+	private KeySet<K> navigableKeySet;
+	private NavigableMap<K, V> descendingMap;
+
+	/**
+	 * A tree node, which is also the entry of its item
+	 */
+	static final class Node<K, V> implements Map.Entry<K, V> {
+		K key;
+		V value;
+		Node<K, V> left;
+		Node<K, V> parent;
+		Node<K, V> right;
+		int rank;
+		int size;
+
+		Node(K key, V value, Node<K, V> parent) {
+			this.key = key;
+			this.value = value;
+			this.parent = parent;
+			this.rank = 0;
+			this.size = 1;
+		}
+
+		public K getKey() {
+			return key;
+		}
+
+		public V getValue() {
+			return value;
+		}
+
+		public V setValue(V value) {
+			V old = this.value;
+			this.value = value;
+			return old;
+		}
+
+		public boolean equals(Object o) {
+			if (!(o instanceof Map.Entry))
+				return false;
+			Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+			return Objects.equals(key, e.getKey()) && Objects.equals(value, e.getValue());
+		}
+
+		public int hashCode() {
+			return Objects.hashCode(key) ^ Objects.hashCode(value);
+		}
+
+		public String toString() {
+			return key + "=" + value;
+		}
+	}
+
+	/**
+	 * Empty Constractor. Initializing an empty map ordered by the natural ordering of the keys
+	 */
+	public WAVLMap() {
+		this.comparator = null;
+	}
+
+	/**
+	 * Constractor. Initializing an empty map ordered by comparator
+	 * @param comparator - the order of the keys, or null for their natural ordering
+	 */
+	public WAVLMap(Comparator<? super K> comparator) {
+		this.comparator = comparator;
+	}
+
+	/**
+	 * Constractor. Initializing a map with the items of m, ordered by the natural
+	 * ordering of the keys
+	 * @param m - the items to put in the map
+	 */
+	public WAVLMap(Map<? extends K, ? extends V> m) {
+		this.comparator = null;
+		putAll(m);
+	}
+
+	/**
+	 * Constractor. Initializing a map with the items and the order of m
+	 * @param m - the items to put in the map, with their order
+	 */
+	public WAVLMap(SortedMap<K, ? extends V> m) {
+		this.comparator = m.comparator();
+		putAll(m);
+	}
+
+	private static int rank(Node<?, ?> node) {
+		return node == null ? -1 : node.rank;
+	}
+
+	private static int size(Node<?, ?> node) {
+		return node == null ? 0 : node.size;
+	}
+
+	@SuppressWarnings("unchecked")
+	final int compare(Object k1, Object k2) {
+		return comparator == null ? ((Comparable<Object>) k1).compareTo(k2) : comparator.compare((K) k1, (K) k2);
+	}
+
+	public Comparator<? super K> comparator() {
+		return comparator;
+	}
+
+	public int size() {
+		return size(root);
+	}
+
+	public boolean isEmpty() {
+		return root == null;
+	}
+
+	public void clear() {
+		modCount++;
+		root = null;
+	}
+
+	public boolean containsKey(Object key) {
+		return getNode(key) != null;
+	}
+
+	public V get(Object key) {
+		Node<K, V> n = getNode(key);
+		return n == null ? null : n.value;
+	}
+
+	/**
+	 * Returns the node with key, or null if there is no such node
+	 */
+	@SuppressWarnings("unchecked")
+	final Node<K, V> getNode(Object key) {
+		Node<K, V> x = root;
+		if (comparator == null) {
+			// fast path for keys with natural ordering
+			Comparable<Object> k = (Comparable<Object>) Objects.requireNonNull(key);
+			while (x != null) {
+				int c = k.compareTo(x.key);
+				if (c < 0)
+					x = x.left;
+				else if (c > 0)
+					x = x.right;
+				else
+					return x;
+			}
+		} else {
+			K k = (K) key;
+			while (x != null) {
+				int c = comparator.compare(k, x.key);
+				if (c < 0)
+					x = x.left;
+				else if (c > 0)
+					x = x.right;
+				else
+					return x;
+			}
+		}
+		return null;
+	}
+
+	@SuppressWarnings("unchecked")
+	public V put(K key, V value) {
+		Node<K, V> x = root;
+		if (x == null) {
+			compare(key, key); // type and null check
+			root = new Node<>(key, value, null);
+			modCount++;
+			return null;
+		}
+		Node<K, V> parent;
+		int c;
+		if (comparator == null) {
+			Comparable<Object> k = (Comparable<Object>) Objects.requireNonNull(key);
+			do {
+				parent = x;
+				c = k.compareTo(x.key);
+				if (c < 0)
+					x = x.left;
+				else if (c > 0)
+					x = x.right;
+				else
+					return x.setValue(value);
+			} while (x != null);
+		} else {
+			do {
+				parent = x;
+				c = comparator.compare(key, x.key);
+				if (c < 0)
+					x = x.left;
+				else if (c > 0)
+					x = x.right;
+				else
+					return x.setValue(value);
+			} while (x != null);
+		}
+		Node<K, V> node = new Node<>(key, value, parent);
+		if (c < 0)
+			parent.left = node;
+		else
+			parent.right = node;
+		for (Node<K, V> y = parent; y != null; y = y.parent)
+			y.size++;
+		modCount++;
+		insertionBalance(node);
+		return null;
+	}
+
+	public V remove(Object key) {
+		Node<K, V> n = getNode(key);
+		if (n == null)
+			return null;
+		V old = n.value;
+		deleteNode(n);
+		return old;
+	}
+
+	/**
+	 * Rebalances the tree bottom up after x got a rank difference of 0 from its parent,
+	 * like WAVLLongKeyedTree
+	 */
+	private void insertionBalance(Node<K, V> x) {
+		Node<K, V> p = x.parent;
+		while (p != null && p.rank == x.rank) {
+			boolean xIsLeftChild = x == p.left;
+			Node<K, V> sibling = xIsLeftChild ? p.right : p.left;
+			if (p.rank - rank(sibling) == 1) {
+				// parent is 0,1 node - promote and continue up
+				p.rank++;
+				x = p;
+				p = x.parent;
+				continue;
+			}
+			// parent is 0,2 node
+			Node<K, V> outer = xIsLeftChild ? x.left : x.right;
+			if (x.rank - rank(outer) == 1) {
+				// single rotation
+				rotateUp(x);
+				p.rank--;
+			} else {
+				// double rotation
+				Node<K, V> inner = xIsLeftChild ? x.right : x.left;
+				rotateUp(inner);
+				rotateUp(inner);
+				inner.rank++;
+				x.rank--;
+				p.rank--;
+			}
+			return;
+		}
+	}
+
+	/**
+	 * Deletes a node from the tree and rebalances it. A binary node gets the item of its
+	 * successor, whose node is deleted instead (as in TreeMap).
+	 * @param z - a node of the tree
+	 */
+	final void deleteNode(Node<K, V> z) {
+		modCount++;
+		if (z.left != null && z.right != null) {
+			Node<K, V> successor = z.right;
+			while (successor.left != null)
+				successor = successor.left;
+			z.key = successor.key;
+			z.value = successor.value;
+			z = successor;
+		}
+		Node<K, V> child = z.left != null ? z.left : z.right;
+		Node<K, V> p = z.parent;
+		if (child != null)
+			child.parent = p;
+		if (p == null) {
+			root = child;
+			return;
+		}
+		if (p.left == z)
+			p.left = child;
+		else
+			p.right = child;
+		for (Node<K, V> y = p; y != null; y = y.parent)
+			y.size--;
+		deletionBalance(p, child);
+	}
+
+	/**
+	 * Rebalances the tree bottom up after a node was removed from the children of p,
+	 * like WAVLLongKeyedTree
+	 * @param p - the parent of the removed node
+	 * @param x - the node which took the place of the removed node (might be external)
+	 */
+	private void deletionBalance(Node<K, V> p, Node<K, V> x) {
+		if (p.left == null && p.right == null && p.rank == 1) {
+			// leaf with 2,2
+			p.rank = 0;
+			x = p;
+			p = p.parent;
+		}
+		while (p != null && p.rank - rank(x) == 3) {
+			boolean xIsLeftChild = x == p.left;
+			Node<K, V> y = xIsLeftChild ? p.right : p.left;
+			if (p.rank - rank(y) == 2) {
+				// 3,2 node - demote and continue up
+				p.rank--;
+				x = p;
+				p = p.parent;
+				continue;
+			}
+			Node<K, V> outer = xIsLeftChild ? y.right : y.left;
+			Node<K, V> inner = xIsLeftChild ? y.left : y.right;
+			if (y.rank - rank(outer) == 2 && y.rank - rank(inner) == 2) {
+				// 3,1 node with 2,2 child - double demotion and continue up
+				p.rank--;
+				y.rank--;
+				x = p;
+				p = p.parent;
+				continue;
+			}
+			if (y.rank - rank(outer) == 1) {
+				// single rotation
+				rotateUp(y);
+				y.rank++;
+				p.rank--;
+				if (p.left == null && p.right == null)
+					p.rank--;
+			} else {
+				// double rotation
+				rotateUp(inner);
+				rotateUp(inner);
+				inner.rank += 2;
+				y.rank--;
+				p.rank -= 2;
+			}
+			return;
+		}
+	}
+
+	/**
+	 * Rotates x above its parent, keeping the subtree sizes valid
+	 * @pre x.parent != null
+	 */
+	private void rotateUp(Node<K, V> x) {
+		Node<K, V> z = x.parent;
+		Node<K, V> grandparent = z.parent;
+		if (x == z.left) {
+			Node<K, V> b = x.right;
+			z.left = b;
+			if (b != null)
+				b.parent = z;
+			x.right = z;
+		} else {
+			Node<K, V> b = x.left;
+			z.right = b;
+			if (b != null)
+				b.parent = z;
+			x.left = z;
+		}
+		z.parent = x;
+		x.parent = grandparent;
+		if (grandparent == null)
+			root = x;
+		else if (grandparent.left == z)
+			grandparent.left = x;
+		else
+			grandparent.right = x;
+		x.size = z.size;
+		z.size = size(z.left) + size(z.right) + 1;
+	}
+
+	final Node<K, V> firstNode() {
+		Node<K, V> x = root;
+		if (x != null)
+			while (x.left != null)
+				x = x.left;
+		return x;
+	}
+
+	final Node<K, V> lastNode() {
+		Node<K, V> x = root;
+		if (x != null)
+			while (x.right != null)
+				x = x.right;
+		return x;
+	}
+
+	static <K, V> Node<K, V> successor(Node<K, V> x) {
+		if (x.right != null) {
+			x = x.right;
+			while (x.left != null)
+				x = x.left;
+			return x;
+		}
+		Node<K, V> p = x.parent;
+		while (p != null && x == p.right) {
+			x = p;
+			p = p.parent;
+		}
+		return p;
+	}
+
+	static <K, V> Node<K, V> predecessor(Node<K, V> x) {
+		if (x.left != null) {
+			x = x.left;
+			while (x.right != null)
+				x = x.right;
+			return x;
+		}
+		Node<K, V> p = x.parent;
+		while (p != null && x == p.left) {
+			x = p;
+			p = p.parent;
+		}
+		return p;
+	}
+
+	/**
+	 * Returns the node with the smallest key >= key, or null if there is no such node
+	 */
+	final Node<K, V> ceilingNode(Object key) {
+		Node<K, V> x = root, best = null;
+		while (x != null) {
+			int c = compare(key, x.key);
+			if (c < 0) {
+				best = x;
+				x = x.left;
+			} else if (c > 0) {
+				x = x.right;
+			} else {
+				return x;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Returns the node with the smallest key > key, or null if there is no such node
+	 */
+	final Node<K, V> higherNode(Object key) {
+		Node<K, V> x = root, best = null;
+		while (x != null) {
+			if (compare(key, x.key) < 0) {
+				best = x;
+				x = x.left;
+			} else {
+				x = x.right;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Returns the node with the largest key <= key, or null if there is no such node
+	 */
+	final Node<K, V> floorNode(Object key) {
+		Node<K, V> x = root, best = null;
+		while (x != null) {
+			int c = compare(key, x.key);
+			if (c > 0) {
+				best = x;
+				x = x.right;
+			} else if (c < 0) {
+				x = x.left;
+			} else {
+				return x;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Returns the node with the largest key < key, or null if there is no such node
+	 */
+	final Node<K, V> lowerNode(Object key) {
+		Node<K, V> x = root, best = null;
+		while (x != null) {
+			if (compare(key, x.key) > 0) {
+				best = x;
+				x = x.right;
+			} else {
+				x = x.left;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Returns the number of keys which are smaller than key (or equal to key if inclusive)
+	 */
+	final int countBelow(Object key, boolean inclusive) {
+		int count = 0;
+		Node<K, V> x = root;
+		while (x != null) {
+			int c = compare(key, x.key);
+			if (c > 0 || (c == 0 && inclusive)) {
+				count += size(x.left) + 1;
+				x = x.right;
+			} else {
+				x = x.left;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the item with the i'th smallest key (return null if i is out of range)
+	 * @param i - 1 based index, as in WAVLTree.select
+	 * @return an immutable snapshot of the item
+	 */
+	public Map.Entry<K, V> select(int i) {
+		if (i < 1 || i > size())
+			return null;
+		i--;
+		Node<K, V> x = root;
+		while (true) {
+			int leftSize = size(x.left);
+			if (i == leftSize)
+				return exportEntry(x);
+			if (i < leftSize) {
+				x = x.left;
+			} else {
+				i -= leftSize + 1;
+				x = x.right;
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of keys in the map which are smaller than or equal to key, so
+	 * select(rank(k)) is the item of k
+	 * @param key - any key
+	 */
+	public int rank(K key) {
+		return countBelow(key, true);
+	}
+
+	static <K, V> Map.Entry<K, V> exportEntry(Node<K, V> n) {
+		return n == null ? null : new AbstractMap.SimpleImmutableEntry<>(n.key, n.value);
+	}
+
+	static <K> K keyOrNull(Node<K, ?> n) {
+		return n == null ? null : n.key;
+	}
+
+	static <K> K key(Node<K, ?> n) {
+		if (n == null)
+			throw new NoSuchElementException();
+		return n.key;
+	}
+
+	public Map.Entry<K, V> firstEntry() {
+		return exportEntry(firstNode());
+	}
+
+	public Map.Entry<K, V> lastEntry() {
+		return exportEntry(lastNode());
+	}
+
+	public Map.Entry<K, V> pollFirstEntry() {
+		Node<K, V> n = firstNode();
+		Map.Entry<K, V> e = exportEntry(n);
+		if (n != null)
+			deleteNode(n);
+		return e;
+	}
+
+	public Map.Entry<K, V> pollLastEntry() {
+		Node<K, V> n = lastNode();
+		Map.Entry<K, V> e = exportEntry(n);
+		if (n != null)
+			deleteNode(n);
+		return e;
+	}
+
+	public K firstKey() {
+		return key(firstNode());
+	}
+
+	public K lastKey() {
+		return key(lastNode());
+	}
+
+	public Map.Entry<K, V> lowerEntry(K key) {
+		return exportEntry(lowerNode(key));
+	}
+
+	public K lowerKey(K key) {
+		return keyOrNull(lowerNode(key));
+	}
+
+	public Map.Entry<K, V> floorEntry(K key) {
+		return exportEntry(floorNode(key));
+	}
+
+	public K floorKey(K key) {
+		return keyOrNull(floorNode(key));
+	}
+
+	public Map.Entry<K, V> ceilingEntry(K key) {
+		return exportEntry(ceilingNode(key));
+	}
+
+	public K ceilingKey(K key) {
+		return keyOrNull(ceilingNode(key));
+	}
+
+	public Map.Entry<K, V> higherEntry(K key) {
+		return exportEntry(higherNode(key));
+	}
+
+	public K higherKey(K key) {
+		return keyOrNull(higherNode(key));
+	}
+
+	public Set<K> keySet() {
+		return navigableKeySet();
+	}
+
+	public NavigableSet<K> navigableKeySet() {
+		if (navigableKeySet == null)
+			navigableKeySet = new KeySet<>(this);
+		return navigableKeySet;
+	}
+
+	public NavigableSet<K> descendingKeySet() {
+		return descendingMap().navigableKeySet();
+	}
+
+	public Set<Map.Entry<K, V>> entrySet() {
+		if (entrySet == null)
+			entrySet = new EntrySet();
+		return entrySet;
+	}
+
+	public NavigableMap<K, V> descendingMap() {
+		if (descendingMap == null)
+			descendingMap = new SubMap(true, null, true, true, null, true, true);
+		return descendingMap;
+	}
+
+	public NavigableMap<K, V> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+		return new SubMap(false, fromKey, fromInclusive, false, toKey, toInclusive, false);
+	}
+
+	public NavigableMap<K, V> headMap(K toKey, boolean inclusive) {
+		return new SubMap(true, null, true, false, toKey, inclusive, false);
+	}
+
+	public NavigableMap<K, V> tailMap(K fromKey, boolean inclusive) {
+		return new SubMap(false, fromKey, inclusive, true, null, true, false);
+	}
+
+	public SortedMap<K, V> subMap(K fromKey, K toKey) {
+		return subMap(fromKey, true, toKey, false);
+	}
+
+	public SortedMap<K, V> headMap(K toKey) {
+		return headMap(toKey, false);
+	}
+
+	public SortedMap<K, V> tailMap(K fromKey) {
+		return tailMap(fromKey, true);
+	}
+
+	/**
+	 * Iterates over the nodes from first, in ascending or descending order, until the
+	 * node with fenceKey. The fence is a key and not a node, since deleting a binary node
+	 * moves the item of its successor into it.
+	 */
+	abstract class NodeIterator<T> implements Iterator<T> {
+		private Node<K, V> next;
+		private Node<K, V> lastReturned = null;
+		private int expectedModCount = modCount;
+		private final Object fenceKey;
+		private final boolean descending;
+
+		NodeIterator(Node<K, V> first, Node<K, V> fence, boolean descending) {
+			this.next = first;
+			this.fenceKey = fence == null ? UNBOUNDED : fence.key;
+			this.descending = descending;
+		}
+
+		public final boolean hasNext() {
+			return next != null && next.key != fenceKey;
+		}
+
+		final Node<K, V> nextNode() {
+			if (!hasNext())
+				throw new NoSuchElementException();
+			if (modCount != expectedModCount)
+				throw new ConcurrentModificationException();
+			Node<K, V> e = next;
+			next = descending ? predecessor(e) : successor(e);
+			lastReturned = e;
+			return e;
+		}
+
+		public final void remove() {
+			if (lastReturned == null)
+				throw new IllegalStateException();
+			if (modCount != expectedModCount)
+				throw new ConcurrentModificationException();
+			// the successor item moves into a deleted binary node, which is then the next one
+			if (!descending && lastReturned.left != null && lastReturned.right != null)
+				next = lastReturned;
+			deleteNode(lastReturned);
+			expectedModCount = modCount;
+			lastReturned = null;
+		}
+	}
+
+	final class EntryIterator extends NodeIterator<Map.Entry<K, V>> {
+		EntryIterator(Node<K, V> first, Node<K, V> fence, boolean descending) {
+			super(first, fence, descending);
+		}
+
+		public Map.Entry<K, V> next() {
+			return nextNode();
+		}
+	}
+
+	/**
+	 * The entries of the whole map
+	 */
+	final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+		public Iterator<Map.Entry<K, V>> iterator() {
+			return new EntryIterator(firstNode(), null, false);
+		}
+
+		public boolean contains(Object o) {
+			if (!(o instanceof Map.Entry))
+				return false;
+			Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+			Node<K, V> n = getNode(e.getKey());
+			return n != null && Objects.equals(n.value, e.getValue());
+		}
+
+		public boolean remove(Object o) {
+			if (!(o instanceof Map.Entry))
+				return false;
+			Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+			Node<K, V> n = getNode(e.getKey());
+			if (n == null || !Objects.equals(n.value, e.getValue()))
+				return false;
+			deleteNode(n);
+			return true;
+		}
+
+		public int size() {
+			return WAVLMap.this.size();
+		}
+
+		public void clear() {
+			WAVLMap.this.clear();
+		}
+	}
+
+	/**
+	 * A view of the items with keys between lo and hi (each bound is inclusive or
+	 * exclusive, or missing), in ascending or descending order. The bounds are always
+	 * kept in the order of the map, and "lowest"/"highest" below are in that order.
+	 */
+	final class SubMap extends AbstractMap<K, V> implements NavigableMap<K, V> {
+		private final boolean fromStart, toEnd;
+		private final K lo, hi;
+		private final boolean loInclusive, hiInclusive;
+		private final boolean descending;
+
+		private EntrySetView entrySetView;
+		private KeySet<K> navigableKeySetView;
+
+		SubMap(boolean fromStart, K lo, boolean loInclusive, boolean toEnd, K hi, boolean hiInclusive,
+				boolean descending) {
+			if (!fromStart && !toEnd) {
+				if (compare(lo, hi) > 0)
+					throw new IllegalArgumentException("fromKey > toKey");
+			} else {
+				if (!fromStart)
+					compare(lo, lo); // type and null check
+				if (!toEnd)
+					compare(hi, hi);
+			}
+			this.fromStart = fromStart;
+			this.lo = lo;
+			this.loInclusive = loInclusive;
+			this.toEnd = toEnd;
+			this.hi = hi;
+			this.hiInclusive = hiInclusive;
+			this.descending = descending;
+		}
+
+		private boolean tooLow(Object key) {
+			if (fromStart)
+				return false;
+			int c = compare(key, lo);
+			return c < 0 || (c == 0 && !loInclusive);
+		}
+
+		private boolean tooHigh(Object key) {
+			if (toEnd)
+				return false;
+			int c = compare(key, hi);
+			return c > 0 || (c == 0 && !hiInclusive);
+		}
+
+		private boolean inRange(Object key) {
+			return !tooLow(key) && !tooHigh(key);
+		}
+
+		/**
+		 * Checks whether key is in the range, or on one of its (exclusive) bounds if not inclusive
+		 */
+		private boolean inRange(Object key, boolean inclusive) {
+			if (inclusive)
+				return inRange(key);
+			return (fromStart || compare(key, lo) >= 0) && (toEnd || compare(hi, key) >= 0);
+		}
+
+		private Node<K, V> absLowest() {
+			Node<K, V> n = fromStart ? firstNode() : (loInclusive ? ceilingNode(lo) : higherNode(lo));
+			return n == null || tooHigh(n.key) ? null : n;
+		}
+
+		private Node<K, V> absHighest() {
+			Node<K, V> n = toEnd ? lastNode() : (hiInclusive ? floorNode(hi) : lowerNode(hi));
+			return n == null || tooLow(n.key) ? null : n;
+		}
+
+		private Node<K, V> absCeiling(Object key) {
+			if (tooLow(key))
+				return absLowest();
+			Node<K, V> n = ceilingNode(key);
+			return n == null || tooHigh(n.key) ? null : n;
+		}
+
+		private Node<K, V> absHigher(Object key) {
+			if (tooLow(key))
+				return absLowest();
+			Node<K, V> n = higherNode(key);
+			return n == null || tooHigh(n.key) ? null : n;
+		}
+
+		private Node<K, V> absFloor(Object key) {
+			if (tooHigh(key))
+				return absHighest();
+			Node<K, V> n = floorNode(key);
+			return n == null || tooLow(n.key) ? null : n;
+		}
+
+		private Node<K, V> absLower(Object key) {
+			if (tooHigh(key))
+				return absHighest();
+			Node<K, V> n = lowerNode(key);
+			return n == null || tooLow(n.key) ? null : n;
+		}
+
+		/**
+		 * Returns the first node after the range, in the order of the map, or null
+		 */
+		private Node<K, V> absHighFence() {
+			return toEnd ? null : (hiInclusive ? higherNode(hi) : ceilingNode(hi));
+		}
+
+		/**
+		 * Returns the last node before the range, in the order of the map, or null
+		 */
+		private Node<K, V> absLowFence() {
+			return fromStart ? null : (loInclusive ? lowerNode(lo) : floorNode(lo));
+		}
+
+		private Node<K, V> first() {
+			return descending ? absHighest() : absLowest();
+		}
+
+		private Node<K, V> last() {
+			return descending ? absLowest() : absHighest();
+		}
+
+		private Node<K, V> ceiling(K key) {
+			return descending ? absFloor(key) : absCeiling(key);
+		}
+
+		private Node<K, V> higher(K key) {
+			return descending ? absLower(key) : absHigher(key);
+		}
+
+		private Node<K, V> floor(K key) {
+			return descending ? absCeiling(key) : absFloor(key);
+		}
+
+		private Node<K, V> lower(K key) {
+			return descending ? absHigher(key) : absLower(key);
+		}
+
+		Iterator<Map.Entry<K, V>> entryIterator() {
+			if (descending)
+				return new EntryIterator(absHighest(), absLowFence(), true);
+			return new EntryIterator(absLowest(), absHighFence(), false);
+		}
+
+		public Comparator<? super K> comparator() {
+			return descending ? Collections.reverseOrder(comparator) : comparator;
+		}
+
+		/**
+		 * Returns the number of items in the view, in O(log n) by the subtree sizes
+		 */
+		public int size() {
+			if (fromStart && toEnd)
+				return WAVLMap.this.size();
+			int below = toEnd ? WAVLMap.this.size() : countBelow(hi, hiInclusive);
+			int above = fromStart ? 0 : countBelow(lo, !loInclusive);
+			return Math.max(below - above, 0);
+		}
+
+		public boolean isEmpty() {
+			return absLowest() == null;
+		}
+
+		public boolean containsKey(Object key) {
+			return inRange(key) && WAVLMap.this.containsKey(key);
+		}
+
+		public V get(Object key) {
+			return inRange(key) ? WAVLMap.this.get(key) : null;
+		}
+
+		public V put(K key, V value) {
+			if (!inRange(key))
+				throw new IllegalArgumentException("key out of range");
+			return WAVLMap.this.put(key, value);
+		}
+
+		public V remove(Object key) {
+			return inRange(key) ? WAVLMap.this.remove(key) : null;
+		}
+
+		public void clear() {
+			if (fromStart && toEnd) {
+				WAVLMap.this.clear();
+				return;
+			}
+			Iterator<Map.Entry<K, V>> it = entryIterator();
+			while (it.hasNext()) {
+				it.next();
+				it.remove();
+			}
+		}
+
+		public Map.Entry<K, V> firstEntry() {
+			return exportEntry(first());
+		}
+
+		public Map.Entry<K, V> lastEntry() {
+			return exportEntry(last());
+		}
+
+		public Map.Entry<K, V> pollFirstEntry() {
+			Node<K, V> n = first();
+			Map.Entry<K, V> e = exportEntry(n);
+			if (n != null)
+				deleteNode(n);
+			return e;
+		}
+
+		public Map.Entry<K, V> pollLastEntry() {
+			Node<K, V> n = last();
+			Map.Entry<K, V> e = exportEntry(n);
+			if (n != null)
+				deleteNode(n);
+			return e;
+		}
+
+		public K firstKey() {
+			return key(first());
+		}
+
+		public K lastKey() {
+			return key(last());
+		}
+
+		public Map.Entry<K, V> lowerEntry(K key) {
+			return exportEntry(lower(key));
+		}
+
+		public K lowerKey(K key) {
+			return keyOrNull(lower(key));
+		}
+
+		public Map.Entry<K, V> floorEntry(K key) {
+			return exportEntry(floor(key));
+		}
+
+		public K floorKey(K key) {
+			return keyOrNull(floor(key));
+		}
+
+		public Map.Entry<K, V> ceilingEntry(K key) {
+			return exportEntry(ceiling(key));
+		}
+
+		public K ceilingKey(K key) {
+			return keyOrNull(ceiling(key));
+		}
+
+		public Map.Entry<K, V> higherEntry(K key) {
+			return exportEntry(higher(key));
+		}
+
+		public K higherKey(K key) {
+			return keyOrNull(higher(key));
+		}
+
+		public Set<K> keySet() {
+			return navigableKeySet();
+		}
+
+		public NavigableSet<K> navigableKeySet() {
+			if (navigableKeySetView == null)
+				navigableKeySetView = new KeySet<>(this);
+			return navigableKeySetView;
+		}
+
+		public NavigableSet<K> descendingKeySet() {
+			return descendingMap().navigableKeySet();
+		}
+
+		public Set<Map.Entry<K, V>> entrySet() {
+			if (entrySetView == null)
+				entrySetView = new EntrySetView();
+			return entrySetView;
+		}
+
+		public NavigableMap<K, V> descendingMap() {
+			return new SubMap(fromStart, lo, loInclusive, toEnd, hi, hiInclusive, !descending);
+		}
+
+		public NavigableMap<K, V> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+			if (!inRange(fromKey, fromInclusive))
+				throw new IllegalArgumentException("fromKey out of range");
+			if (!inRange(toKey, toInclusive))
+				throw new IllegalArgumentException("toKey out of range");
+			if (descending)
+				return new SubMap(false, toKey, toInclusive, false, fromKey, fromInclusive, true);
+			return new SubMap(false, fromKey, fromInclusive, false, toKey, toInclusive, false);
+		}
+
+		public NavigableMap<K, V> headMap(K toKey, boolean inclusive) {
+			if (!inRange(toKey, inclusive))
+				throw new IllegalArgumentException("toKey out of range");
+			if (descending)
+				return new SubMap(false, toKey, inclusive, toEnd, hi, hiInclusive, true);
+			return new SubMap(fromStart, lo, loInclusive, false, toKey, inclusive, false);
+		}
+
+		public NavigableMap<K, V> tailMap(K fromKey, boolean inclusive) {
+			if (!inRange(fromKey, inclusive))
+				throw new IllegalArgumentException("fromKey out of range");
+			if (descending)
+				return new SubMap(fromStart, lo, loInclusive, false, fromKey, inclusive, true);
+			return new SubMap(false, fromKey, inclusive, toEnd, hi, hiInclusive, false);
+		}
+
+		public SortedMap<K, V> subMap(K fromKey, K toKey) {
+			return subMap(fromKey, true, toKey, false);
+		}
+
+		public SortedMap<K, V> headMap(K toKey) {
+			return headMap(toKey, false);
+		}
+
+		public SortedMap<K, V> tailMap(K fromKey) {
+			return tailMap(fromKey, true);
+		}
+
+		/**
+		 * The entries of the view
+		 */
+		final class EntrySetView extends AbstractSet<Map.Entry<K, V>> {
+			public Iterator<Map.Entry<K, V>> iterator() {
+				return entryIterator();
+			}
+
+			public boolean contains(Object o) {
+				if (!(o instanceof Map.Entry))
+					return false;
+				Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+				if (!inRange(e.getKey()))
+					return false;
+				Node<K, V> n = getNode(e.getKey());
+				return n != null && Objects.equals(n.value, e.getValue());
+			}
+
+			public boolean remove(Object o) {
+				if (!(o instanceof Map.Entry))
+					return false;
+				Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+				if (!inRange(e.getKey()))
+					return false;
+				Node<K, V> n = getNode(e.getKey());
+				if (n == null || !Objects.equals(n.value, e.getValue()))
+					return false;
+				deleteNode(n);
+				return true;
+			}
+
+			public int size() {
+				return SubMap.this.size();
+			}
+
+			public boolean isEmpty() {
+				return SubMap.this.isEmpty();
+			}
+
+			public void clear() {
+				SubMap.this.clear();
+			}
+		}
+	}
+
+	/**
+	 * The keys of a map or of a view, as a NavigableSet backed by it
+	 */
+	static final class KeySet<E> extends AbstractSet<E> implements NavigableSet<E> {
+		private final NavigableMap<E, ?> m;
+
+		KeySet(NavigableMap<E, ?> m) {
+			this.m = m;
+		}
+
+		public Iterator<E> iterator() {
+			return keys(m);
+		}
+
+		public Iterator<E> descendingIterator() {
+			return keys(m.descendingMap());
+		}
+
+		private static <E> Iterator<E> keys(NavigableMap<E, ?> m) {
+			Iterator<? extends Map.Entry<E, ?>> entries = m.entrySet().iterator();
+			return new Iterator<E>() {
+				public boolean hasNext() {
+					return entries.hasNext();
+				}
+
+				public E next() {
+					return entries.next().getKey();
+				}
+
+				public void remove() {
+					entries.remove();
+				}
+			};
+		}
+
+		public int size() {
+			return m.size();
+		}
+
+		public boolean isEmpty() {
+			return m.isEmpty();
+		}
+
+		public boolean contains(Object o) {
+			return m.containsKey(o);
+		}
+
+		public void clear() {
+			m.clear();
+		}
+
+		public boolean remove(Object o) {
+			if (!m.containsKey(o))
+				return false;
+			m.remove(o);
+			return true;
+		}
+
+		public E lower(E e) {
+			return m.lowerKey(e);
+		}
+
+		public E floor(E e) {
+			return m.floorKey(e);
+		}
+
+		public E ceiling(E e) {
+			return m.ceilingKey(e);
+		}
+
+		public E higher(E e) {
+			return m.higherKey(e);
+		}
+
+		public E first() {
+			return m.firstKey();
+		}
+
+		public E last() {
+			return m.lastKey();
+		}
+
+		public Comparator<? super E> comparator() {
+			return m.comparator();
+		}
+
+		public E pollFirst() {
+			Map.Entry<E, ?> e = m.pollFirstEntry();
+			return e == null ? null : e.getKey();
+		}
+
+		public E pollLast() {
+			Map.Entry<E, ?> e = m.pollLastEntry();
+			return e == null ? null : e.getKey();
+		}
+
+		public NavigableSet<E> descendingSet() {
+			return new KeySet<>(m.descendingMap());
+		}
+
+		public NavigableSet<E> subSet(E fromElement, boolean fromInclusive, E toElement, boolean toInclusive) {
+			return new KeySet<>(m.subMap(fromElement, fromInclusive, toElement, toInclusive));
+		}
+
+		public NavigableSet<E> headSet(E toElement, boolean inclusive) {
+			return new KeySet<>(m.headMap(toElement, inclusive));
+		}
+
+		public NavigableSet<E> tailSet(E fromElement, boolean inclusive) {
+			return new KeySet<>(m.tailMap(fromElement, inclusive));
+		}
+
+		public SortedSet<E> subSet(E fromElement, E toElement) {
+			return subSet(fromElement, true, toElement, false);
+		}
+
+		public SortedSet<E> headSet(E toElement) {
+			return headSet(toElement, false);
+		}
+
+		public SortedSet<E> tailSet(E fromElement) {
+			return tailSet(fromElement, true);
+		}
+	}
+}
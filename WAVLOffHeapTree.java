@@ -0,0 +1,116 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ *
+ * WAVLOffHeapTree
+ *
+ * A WAVL tree with the same API and the same rebalancing (and rebalancing counts) as
+ * WAVLTree, which keeps its node records in a direct (off-heap) ByteBuffer, so the
+ * garbage collector never traces them. See WAVLIndexedTree for the node management.
+ *
+ * A node record is 24 bytes: key, rank, subtree size and the ids of the left child,
+ * right child and parent. The infos stay on the heap, in a String array indexed by
+ * the node id. A single buffer holds up to Integer.MAX_VALUE / 24 (about 89M) nodes,
+ * and its memory is returned when the tree is garbage collected.
+ *
+ */
+
+public class WAVLOffHeapTree extends WAVLIndexedTree {
+
+	private static final int DEFAULT_CAPACITY = 1024;
+
+	private static final int RECORD_BYTES = 24;
+	private static final int KEY = 0;
+	private static final int RANK = 4;
+	private static final int SIZE = 8;
+	private static final int LEFT = 12;
+	private static final int RIGHT = 16;
+	private static final int PARENT = 20;
+
+	private ByteBuffer records;
+
+	/**
+	 * Empty Constractor. Initializing an empty tree
+	 */
+	public WAVLOffHeapTree() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Constractor. Initializing an empty tree with room for capacity nodes
+	 * @param capacity - the number of nodes to allocate room for
+	 */
+	public WAVLOffHeapTree(int capacity) {
+		super(Math.max(capacity, 1) + 1);
+		records = allocateRecords(Math.max(capacity, 1) + 1);
+		setRank(EXTERNAL, -1);
+	}
+
+	private static ByteBuffer allocateRecords(int slots) {
+		if ((long) slots * RECORD_BYTES > Integer.MAX_VALUE)
+			throw new IllegalStateException("Off-heap tree is limited to " + (Integer.MAX_VALUE / RECORD_BYTES) + " nodes");
+		return ByteBuffer.allocateDirect(slots * RECORD_BYTES).order(ByteOrder.nativeOrder());
+	}
+
+	int maxSlots() {
+		return Integer.MAX_VALUE / RECORD_BYTES;
+	}
+
+	void growStorage(int slots) {
+		ByteBuffer grown = allocateRecords(slots);
+		ByteBuffer old = records.duplicate();
+		old.clear();
+		grown.put(old);
+		grown.clear();
+		records = grown;
+	}
+
+	int getLeft(int x) {
+		return records.getInt(x * RECORD_BYTES + LEFT);
+	}
+
+	void setLeft(int x, int l) {
+		records.putInt(x * RECORD_BYTES + LEFT, l);
+	}
+
+	int getRight(int x) {
+		return records.getInt(x * RECORD_BYTES + RIGHT);
+	}
+
+	void setRight(int x, int r) {
+		records.putInt(x * RECORD_BYTES + RIGHT, r);
+	}
+
+	int getParent(int x) {
+		return records.getInt(x * RECORD_BYTES + PARENT);
+	}
+
+	void setParent(int x, int p) {
+		records.putInt(x * RECORD_BYTES + PARENT, p);
+	}
+
+	int getRank(int x) {
+		return records.getInt(x * RECORD_BYTES + RANK);
+	}
+
+	void setRank(int x, int r) {
+		records.putInt(x * RECORD_BYTES + RANK, r);
+	}
+
+	int getSize(int x) {
+		return records.getInt(x * RECORD_BYTES + SIZE);
+	}
+
+	void setSize(int x, int s) {
+		records.putInt(x * RECORD_BYTES + SIZE, s);
+	}
+
+	int getKey(int x) {
+		return records.getInt(x * RECORD_BYTES + KEY);
+	}
+
+	void setKey(int x, int k) {
+		records.putInt(x * RECORD_BYTES + KEY, k);
+	}
+}
@@ -0,0 +1,229 @@
+import java.util.Arrays;
+
+/**
+ *
+ * WAVLSearchCache
+ *
+ * A bounded cache of search results in front of a WAVLTree, enabled by
+ * WAVLTree.enableSearchCache. A hit costs one hash and usually one probe instead of
+ * about log(n) pointer hops, which pays off when a few keys get most of the searches.
+ * Absent keys are cached as well (as null, like search returns them).
+ *
+ * The table is an open-addressing int-keyed table with linear probing, at most half
+ * full, and removal by backward shifting, so there are no tombstones. When it holds
+ * capacity keys the CLOCK algorithm evicts one: a hit sets the referenced bit of a key,
+ * and the hand sweeps the table, clearing the bits it passes until it reaches a key
+ * which was not referenced since the last sweep.
+ *
+ * The tree invalidates a key on every insertion and deletion of it, and clears the cache
+ * on the operations which restructure the whole tree (batches, join, split and the set
+ * operations). Like the tree itself it is not thread-safe (even a hit writes the
+ * referenced bit), so it must not be enabled on a tree wrapped by ConcurrentWAVLTree.
+ *
+ */
+
+public class WAVLSearchCache {
+
+	/**
+	 * Returned by get for a key which is not cached
+	 */
+	static final String MISS = new String("MISS");
+
+	private static final byte EMPTY = 0;
+	private static final byte CACHED = 1;
+	private static final byte REFERENCED = 2;
+
+	private final int capacity;
+	private final int mask;
+	private final int[] keys;
+	private final String[] infos;
+	private final byte[] states;
+	private int size = 0;
+	private int hand = 0;
+
+	private long hits = 0, misses = 0, evictions = 0, invalidations = 0;
+
+	/**
+	 * Constractor. Initializing an empty cache
+	 * @param capacity - the maximal number of cached keys
+	 */
+	WAVLSearchCache(int capacity) {
+		if (capacity < 1 || capacity > 1 << 29)
+			throw new IllegalArgumentException("capacity must be between 1 and 2^29");
+		this.capacity = capacity;
+		int length = Integer.highestOneBit(capacity * 2 - 1) << 1;
+		this.mask = length - 1;
+		this.keys = new int[length];
+		this.infos = new String[length];
+		this.states = new byte[length];
+	}
+
+	private int slot(int k) {
+		int h = k * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & this.mask;
+	}
+
+	/**
+	 * Looks up key k and counts a hit or a miss
+	 * @return the cached search result of k (null for an absent key), or MISS
+	 */
+	String get(int k) {
+		for (int i = slot(k); this.states[i] != EMPTY; i = (i + 1) & this.mask) {
+			if (this.keys[i] == k) {
+				this.states[i] = REFERENCED;
+				this.hits++;
+				return this.infos[i];
+			}
+		}
+		this.misses++;
+		return MISS;
+	}
+
+	/**
+	 * Caches the search result of k, evicting a key if the cache is full
+	 * @pre k is not cached
+	 */
+	void put(int k, String info) {
+		if (this.size == this.capacity)
+			evict();
+		int i = slot(k);
+		while (this.states[i] != EMPTY)
+			i = (i + 1) & this.mask;
+		this.keys[i] = k;
+		this.infos[i] = info;
+		this.states[i] = CACHED;
+		this.size++;
+	}
+
+	/**
+	 * Removes key k from the cache, if it is there
+	 */
+	void invalidate(int k) {
+		for (int i = slot(k); this.states[i] != EMPTY; i = (i + 1) & this.mask) {
+			if (this.keys[i] == k) {
+				removeAt(i);
+				this.invalidations++;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Evicts the first key the hand reaches which was not referenced since it last passed
+	 * @pre size > 0
+	 */
+	private void evict() {
+		while (true) {
+			byte state = this.states[this.hand];
+			if (state == REFERENCED) {
+				this.states[this.hand] = CACHED;
+			} else if (state == CACHED) {
+				// the hand stays, the slot might get a shifted key which it has not checked yet
+				removeAt(this.hand);
+				this.evictions++;
+				return;
+			}
+			this.hand = (this.hand + 1) & this.mask;
+		}
+	}
+
+	/**
+	 * Empties slot i, and shifts back the following keys of its probe run which would not
+	 * be found anymore
+	 */
+	private void removeAt(int i) {
+		int j = i;
+		while (true) {
+			j = (j + 1) & this.mask;
+			if (this.states[j] == EMPTY)
+				break;
+			int h = slot(this.keys[j]);
+			// the key at j stays if its home slot h is cyclically in (i, j]
+			if (i <= j ? (i < h && h <= j) : (i < h || h <= j))
+				continue;
+			this.keys[i] = this.keys[j];
+			this.infos[i] = this.infos[j];
+			this.states[i] = this.states[j];
+			i = j;
+		}
+		this.states[i] = EMPTY;
+		this.infos[i] = null;
+		this.size--;
+	}
+
+	/**
+	 * Removes all keys from the cache, the statistics are kept
+	 */
+	public void clear() {
+		Arrays.fill(this.states, EMPTY);
+		Arrays.fill(this.infos, null);
+		this.size = 0;
+		this.hand = 0;
+	}
+
+	/**
+	 * Returns the maximal number of cached keys
+	 */
+	public int getCapacity() {
+		return this.capacity;
+	}
+
+	/**
+	 * Returns the number of cached keys
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns the number of searches answered by the cache
+	 */
+	public long getHits() {
+		return this.hits;
+	}
+
+	/**
+	 * Returns the number of searches which went to the tree
+	 */
+	public long getMisses() {
+		return this.misses;
+	}
+
+	/**
+	 * Returns the fraction of the searches answered by the cache, or 0 before any search
+	 */
+	public double getHitRate() {
+		long total = this.hits + this.misses;
+		return total == 0 ? 0 : (double) this.hits / total;
+	}
+
+	/**
+	 * Returns the number of keys evicted to make room for others
+	 */
+	public long getEvictions() {
+		return this.evictions;
+	}
+
+	/**
+	 * Returns the number of cached keys removed by insertions and deletions
+	 */
+	public long getInvalidations() {
+		return this.invalidations;
+	}
+
+	/**
+	 * Resets the statistics, the cached keys are kept
+	 */
+	public void resetStatistics() {
+		this.hits = 0;
+		this.misses = 0;
+		this.evictions = 0;
+		this.invalidations = 0;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("WAVLSearchCache[size=%d/%d, hits=%d, misses=%d, hitRate=%.3f, evictions=%d, invalidations=%d]",
+				this.size, this.capacity, this.hits, this.misses, getHitRate(), this.evictions, this.invalidations);
+	}
+}
@@ -0,0 +1,311 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ *
+ * WAVLSnapshot
+ *
+ * A read-only, memory-mapped snapshot of a WAVLTree. The snapshot is queried straight
+ * from the mapped file, without deserializing it, and can be promoted to a mutable
+ * WAVLTree (in the background) when updates are needed.
+ *
+ * File format (big endian):
+ * header  - magic (int), version (int), number of items n (int), reserved (int)
+ * keys    - n ints, sorted
+ * offsets - n longs, the offset of each info record from the start of the infos section
+ * infos   - n records of length (int, -1 for a null info) followed by the UTF-8 bytes
+ *
+ * A snapshot file is mapped as a single buffer, so it is limited to 2GB.
+ *
+ */
+
+public class WAVLSnapshot {
+
+	private static final int MAGIC = 0x5741564C; // "WAVL"
+	private static final int VERSION = 1;
+	private static final int HEADER_BYTES = 16;
+
+	private final MappedByteBuffer buffer;
+	private final int size;
+	private final int offsetsStart;
+	private final int infosStart;
+
+	private WAVLSnapshot(MappedByteBuffer buffer) throws IOException {
+		this.buffer = buffer;
+		if (buffer.limit() < HEADER_BYTES || buffer.getInt(0) != MAGIC)
+			throw new IOException("Not a WAVL snapshot");
+		if (buffer.getInt(4) != VERSION)
+			throw new IOException("Unsupported WAVL snapshot version " + buffer.getInt(4));
+		int size = buffer.getInt(8);
+		// checked before it is multiplied, so the section bounds cannot overflow
+		if (size < 0 || size > (buffer.limit() - HEADER_BYTES) / 12)
+			throw new IOException("Truncated WAVL snapshot");
+		this.size = size;
+		this.offsetsStart = HEADER_BYTES + 4 * size;
+		this.infosStart = offsetsStart + 8 * size;
+	}
+
+	/**
+	 * Writes the items of a tree to a snapshot file, replacing the file if exists
+	 * @param tree - the tree to write
+	 * @param path - the snapshot file
+	 */
+	public static void write(WAVLTree tree, Path path) throws IOException {
+		write(tree.keysToArray(), tree.infoToArray(), path);
+	}
+
+	/**
+	 * Writes sorted items to a snapshot file, replacing the file if exists. The snapshot is
+	 * written to a temporary file in the same directory, forced, and moved over path, so
+	 * path always holds a complete snapshot (the former one if writing fails), and readers
+	 * which mapped the former file keep reading it.
+	 * @pre keys is sorted and has no duplicates, keys.length == infos.length
+	 * @param keys - the keys of the items
+	 * @param infos - the infos of the items
+	 * @param path - the snapshot file
+	 */
+	static void write(int[] keys, String[] infos, Path path) throws IOException {
+		Path directory = path.toAbsolutePath().getParent();
+		Path temporary = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+		try {
+			writeFile(keys, infos, temporary);
+			Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException | RuntimeException e) {
+			Files.deleteIfExists(temporary);
+			throw e;
+		}
+		forceDirectory(directory);
+	}
+
+	/**
+	 * Forces the entries of directory (such as a file moved into it) to the disk
+	 */
+	static void forceDirectory(Path directory) throws IOException {
+		FileChannel channel;
+		try {
+			channel = FileChannel.open(directory, StandardOpenOption.READ);
+		} catch (IOException e) {
+			// the platform cannot open a directory (Windows), and has nothing to force
+			return;
+		}
+		try {
+			channel.force(true);
+		} finally {
+			channel.close();
+		}
+	}
+
+	private static void writeFile(int[] keys, String[] infos, Path path) throws IOException {
+		int n = keys.length;
+		long infosStart = HEADER_BYTES + 12L * n;
+		if (infosStart > Integer.MAX_VALUE)
+			throw new IOException("WAVL snapshot is limited to 2GB");
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+			header.putInt(MAGIC).putInt(VERSION).putInt(n).putInt(0).flip();
+			writeFully(channel, header, 0);
+
+			ByteBuffer chunk = ByteBuffer.allocate(1 << 16);
+			long position = HEADER_BYTES;
+			for (int key : keys) {
+				if (chunk.remaining() < 4)
+					position = flush(channel, chunk, position);
+				chunk.putInt(key);
+			}
+			flush(channel, chunk, position);
+
+			// infos are written first, so their offsets are known when the offsets section is written
+			long[] offsets = new long[n];
+			long offset = 0;
+			position = infosStart;
+			for (int i = 0; i < n; i++) {
+				offsets[i] = offset;
+				byte[] bytes = infos[i] == null ? null : infos[i].getBytes(StandardCharsets.UTF_8);
+				int length = bytes == null ? 0 : bytes.length;
+				if (infosStart + offset + 4 + length > Integer.MAX_VALUE)
+					throw new IOException("WAVL snapshot is limited to 2GB");
+				if (chunk.remaining() < 4 + length) {
+					position = flush(channel, chunk, position);
+					if (chunk.remaining() < 4 + length)
+						chunk = ByteBuffer.allocate(4 + length);
+				}
+				chunk.putInt(bytes == null ? -1 : length);
+				if (bytes != null)
+					chunk.put(bytes);
+				offset += 4 + length;
+			}
+			flush(channel, chunk, position);
+
+			chunk = ByteBuffer.allocate(1 << 16);
+			position = HEADER_BYTES + 4L * n;
+			for (long o : offsets) {
+				if (chunk.remaining() < 8)
+					position = flush(channel, chunk, position);
+				chunk.putLong(o);
+			}
+			flush(channel, chunk, position);
+			channel.force(true);
+		}
+	}
+
+	/**
+	 * Writes the content of chunk at position and clears it
+	 * @return the position after the written bytes
+	 */
+	private static long flush(FileChannel channel, ByteBuffer chunk, long position) throws IOException {
+		chunk.flip();
+		long end = writeFully(channel, chunk, position);
+		chunk.clear();
+		return end;
+	}
+
+	private static long writeFully(FileChannel channel, ByteBuffer src, long position) throws IOException {
+		while (src.hasRemaining())
+			position += channel.write(src, position);
+		return position;
+	}
+
+	/**
+	 * Maps a snapshot file, the snapshot can be queried immediately
+	 * @param path - the snapshot file
+	 * @return the mapped snapshot
+	 */
+	public static WAVLSnapshot open(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE)
+				throw new IOException("WAVL snapshot is limited to 2GB");
+			return new WAVLSnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	/**
+	 * Checks whether the snapshot is empty or not
+	 * @return true if and only if the snapshot is empty
+	 */
+	public boolean empty() {
+		return size == 0;
+	}
+
+	/**
+	 * Returns the number of items in the snapshot
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the i'th smallest key
+	 * @pre 0 <= i < size()
+	 * @param i - 0 based index
+	 */
+	private int keyAt(int i) {
+		return buffer.getInt(HEADER_BYTES + 4 * i);
+	}
+
+	/**
+	 * Returns the info of the i'th smallest key
+	 * @pre 0 <= i < size()
+	 * @param i - 0 based index
+	 */
+	private String infoAt(int i) {
+		int record = infosStart + (int) buffer.getLong(offsetsStart + 8 * i);
+		int length = buffer.getInt(record);
+		if (length < 0)
+			return null;
+		byte[] bytes = new byte[length];
+		buffer.get(record + 4, bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Searches for an item with key k
+	 * @param k - key
+	 * @return the info of the item with key k if it exists in the snapshot, otherwise null
+	 */
+	public String search(int k) {
+		int lo = 0, hi = size - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			int midKey = keyAt(mid);
+			if (midKey < k)
+				lo = mid + 1;
+			else if (midKey > k)
+				hi = mid - 1;
+			else
+				return infoAt(mid);
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the value of the i'th smallest key (return null if i is out of range)
+	 * @param i - 1 based index
+	 */
+	public String select(int i) {
+		if (i < 1 || i > size)
+			return null;
+		return infoAt(i - 1);
+	}
+
+	/**
+	 * Returns the info of the item with the smallest key, or null if the snapshot is empty
+	 */
+	public String min() {
+		return empty() ? null : infoAt(0);
+	}
+
+	/**
+	 * Returns the info of the item with the largest key, or null if the snapshot is empty
+	 */
+	public String max() {
+		return empty() ? null : infoAt(size - 1);
+	}
+
+	/**
+	 * Returns a sorted array which contains all keys in the snapshot
+	 */
+	public int[] keysToArray() {
+		int[] arr = new int[size];
+		for (int i = 0; i < size; i++)
+			arr[i] = keyAt(i);
+		return arr;
+	}
+
+	/**
+	 * Returns an array which contains all infos in the snapshot, sorted by their respective keys
+	 */
+	public String[] infoToArray() {
+		String[] arr = new String[size];
+		for (int i = 0; i < size; i++)
+			arr[i] = infoAt(i);
+		return arr;
+	}
+
+	/**
+	 * Builds a mutable tree with the items of the snapshot
+	 * @return a new WAVLTree
+	 */
+	public WAVLTree toTree() {
+		return WAVLTree.fromSorted(keysToArray(), infoToArray());
+	}
+
+	/**
+	 * Builds a mutable tree with the items of the snapshot in the background, the
+	 * snapshot can still be queried meanwhile
+	 * @param executor - the executor to build the tree in
+	 * @return a future of the new WAVLTree
+	 */
+	public CompletableFuture<WAVLTree> promote(Executor executor) {
+		return CompletableFuture.supplyAsync(this::toTree, executor);
+	}
+}
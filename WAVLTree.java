@@ -1,7 +1,21 @@
+import java.util.AbstractMap;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashSet;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
 import java.util.Random;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.ToLongFunction;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  *
@@ -26,8 +40,16 @@ public class WAVLTree {
 	 * 
 	 * **/
 	private WAVLNode externalNode = new WAVLNode(-1,null);
+	private static final int MERGE_BATCH_RATIO = 8; // see insertAll
 	private WAVLNode root;
 	private WAVLNode min = null, max = null;
+	private WAVLNode finger = null; // the last accessed node, see getFinger
+	private boolean fingerSearch = false;
+	private boolean legacyEngine = false; // see setLegacyEngine
+	private WAVLTreeMetrics metrics = null; // null when disabled, see enableMetrics
+	private int reachedDepth = 0; // the depth of the node reached by the last search for a key, see findFrom
+	private Augmentation augmentation = null; // see setAugmentation
+	private WAVLSearchCache searchCache = null; // null when disabled, see enableSearchCache
 	
 	
 	/**
@@ -66,9 +88,104 @@ public class WAVLTree {
 	 */
 	public WAVLNode createWavlNode(int k,String i){
 		return new WAVLNode(k,i);
-		
+
 	}
-	
+
+	/**
+	 * Builds a tree with the given items in linear time, without any rebalancing.
+	 * The tree is built by splitting around the middle item, so the ranks of siblings
+	 * differ by at most 1 and every rank difference is 1 or 2.
+	 * @pre keys is sorted in ascending order and has no duplicates
+	 * @param keys - the keys of the items, sorted
+	 * @param infos - the infos of the items, by the order of keys
+	 * @return a new tree which contains the items
+	 */
+	public static WAVLTree fromSorted(int[] keys, String[] infos) {
+		if (keys.length != infos.length)
+			throw new IllegalArgumentException("keys and infos must have the same length");
+		return fromSorted(keys, infos, keys.length);
+	}
+
+	/**
+	 * Builds a tree with the first n items of keys and infos
+	 * @pre keys[0..n-1] is sorted in ascending order and has no duplicates
+	 */
+	private static WAVLTree fromSorted(int[] keys, String[] infos, int n) {
+		for (int j = 1; j < n; j++) {
+			if (keys[j - 1] >= keys[j])
+				throw new IllegalArgumentException("keys must be sorted in ascending order without duplicates");
+		}
+		WAVLTree tree = new WAVLTree();
+		if (n == 0)
+			return tree;
+		tree.root = tree.buildSubtree(keys, infos, 0, n - 1);
+		WAVLNode x = tree.root;
+		while (x.left.isInnerNode())
+			x = x.left;
+		tree.min = x;
+		x = tree.root;
+		while (x.right.isInnerNode())
+			x = x.right;
+		tree.max = x;
+		return tree;
+	}
+
+	/**
+	 * Builds a balanced subtree of the items in keys[lo..hi]
+	 * @return the root of the subtree, or the external node if lo > hi
+	 */
+	private WAVLNode buildSubtree(int[] keys, String[] infos, int lo, int hi) {
+		if (lo > hi)
+			return this.externalNode;
+		int mid = (lo + hi) >>> 1;
+		WAVLNode x = new WAVLNode(keys[mid], infos[mid]);
+		x.left = buildSubtree(keys, infos, lo, mid - 1);
+		x.right = buildSubtree(keys, infos, mid + 1, hi);
+		x.left.setParent(x);
+		x.right.setParent(x);
+		x.rank = Math.max(x.left.rank, x.right.rank) + 1;
+		x.updateSubtreeSize();
+		return x;
+	}
+
+	/**
+	 * Collects items arriving in ascending key order, from a source of unknown
+	 * length, and builds a tree of them in linear time
+	 */
+	public static class SortedBuilder {
+		private int[] keys = new int[16];
+		private String[] infos = new String[16];
+		private int count = 0;
+
+		/**
+		 * Adds an item to the tree being built
+		 * @pre key is larger than the keys of all former items
+		 * @param key - the key of the item
+		 * @param info - the info of the item
+		 * @return this builder
+		 */
+		public SortedBuilder add(int key, String info) {
+			if (count > 0 && keys[count - 1] >= key)
+				throw new IllegalArgumentException("keys must be added in ascending order without duplicates");
+			if (count == keys.length) {
+				keys = Arrays.copyOf(keys, count * 2);
+				infos = Arrays.copyOf(infos, count * 2);
+			}
+			keys[count] = key;
+			infos[count] = info;
+			count++;
+			return this;
+		}
+
+		/**
+		 * Builds a tree of all the items added so far
+		 * @return a new tree which contains the items
+		 */
+		public WAVLTree build() {
+			return fromSorted(keys, infos, count);
+		}
+	}
+
 
 
 	/**
@@ -88,9 +205,28 @@ public class WAVLTree {
 	 * returns null
 	 */
 	public String search(int k) {
+		if (this.searchCache != null) {
+			String info = this.searchCache.get(k);
+			if (info != WAVLSearchCache.MISS)
+				return info;
+			info = searchTree(k);
+			this.searchCache.put(k, info);
+			return info;
+		}
+		return searchTree(k);
+	}
+
+	/**
+	 * Searches for node with key k in the tree, without the search cache
+	 * @return the info of the item with key k if it exists in the tree, otherwise null
+	 */
+	private String searchTree(int k) {
 		if (min.key<=k && k<=max.key && !empty())
 		{
-			WAVLNode searchRes = search(k ,root);
+			WAVLNode searchRes = this.fingerSearch && this.finger != null ? findFrom(this.finger, k) : search(k ,root);
+			this.finger = searchRes;
+			if (this.metrics != null)
+				this.metrics.depth(this.reachedDepth);
 			if (searchRes.key == k)
 				return searchRes.info;
 		}
@@ -106,21 +242,94 @@ public class WAVLTree {
 	 * @return returns WAVLNode with key k if exists, otherwise, returns the node which k should be its child
 	 */
 	private WAVLNode search(int k, WAVLNode x) {
+		return search(k, x, 0);
+	}
+
+	/**
+	 * Searches for node with key k in subtree x, which is depth levels below the start
+	 * of the search, and sets reachedDepth to the level of the node it returns
+	 */
+	private WAVLNode search(int k, WAVLNode x, int depth) {
 		if (x.key == k) {
+			this.reachedDepth = depth;
 			return x;
 		}
 		else if (x.key<k) {
 			if (x.right.rank>-1)
-				return search(k, x.right);
-			else
-				return x;
+				return search(k, x.right, depth + 1);
 		}
 		else { // x.key>k
 			if (x.left.rank>-1)
-				return search(k, x.left);
-			else
-				return x;
+				return search(k, x.left, depth + 1);
 		}
+		this.reachedDepth = depth;
+		return x;
+	}
+
+	/**
+	 * Searches for key k starting from finger instead of from the root: climbs from finger
+	 * only until an ancestor whose subtree must contain k, and descends from there. This
+	 * takes O(log d) for a key d positions away from finger.
+	 * @param finger - a node of this tree (see getFinger), or null to search from the root
+	 * @param k - key
+	 * @return the info of the item with key k if it exists in the tree, otherwise null
+	 */
+	public String searchFrom(WAVLNode finger, int k) {
+		if (empty())
+			return null;
+		WAVLNode x = finger == null ? search(k, root) : findFrom(finger, k);
+		this.finger = x;
+		if (this.metrics != null)
+			this.metrics.depth(this.reachedDepth);
+		return x.key == k ? x.info : null;
+	}
+
+	/**
+	 * Returns the last node accessed by search, searchFrom, insert or insertNear, to be
+	 * used as a finger. Deletions and the operations which restructure the whole tree
+	 * (join, split, set operations and batches) reset it.
+	 * @return the last accessed node, or null
+	 */
+	public WAVLNode getFinger() {
+		return this.finger;
+	}
+
+	/**
+	 * Sets whether search and insert start from the last accessed node (see getFinger)
+	 * instead of from the root, which suits sequential access patterns
+	 * @param enabled - true to search from the last accessed node
+	 */
+	public void setFingerSearch(boolean enabled) {
+		this.fingerSearch = enabled;
+	}
+
+	/**
+	 * Finds the node with key k, or the node which k should be its child, starting at finger.
+	 * For k > finger.key: every key between finger.key and the key of the first ancestor
+	 * which has finger in its left subtree is in that subtree, so the climb stops there
+	 * (or at the root). Symmetric for k < finger.key.
+	 * @pre finger is an inner node of this tree
+	 * @post $ret == leaf or unary node, or the node with key k
+	 */
+	private WAVLNode findFrom(WAVLNode finger, int k) {
+		WAVLNode x = finger;
+		if (k == x.key) {
+			this.reachedDepth = this.metrics != null ? depth(x) : 0;
+			return x;
+		}
+		boolean right = k > x.key;
+		while (!x.isRoot()) {
+			WAVLNode p = x.parent;
+			boolean fromLeft = x == p.left;
+			x = p;
+			if (fromLeft == right && (right ? p.key >= k : p.key <= k))
+				break;
+		}
+		WAVLNode res = this.legacyEngine ? search(k, x) : descend(x, k);
+		// the descent counted the levels below x, the metrics also need the levels above it
+		if (this.metrics != null)
+			this.reachedDepth += depth(x);
+		return res;
 	}
 
 	/**
@@ -132,6 +341,33 @@ public class WAVLTree {
 	 * k already exists in the tree.
 	 */
 	public int insert(int k, String i) {
+		return insert(this.fingerSearch ? this.finger : null, k, i);
+	}
+
+	/**
+	 * Inserts an item with key k and info i, searching for its place from finger instead
+	 * of from the root (see searchFrom). Returns like insert.
+	 * @param finger - a node of this tree, or null to search from the root
+	 * @param k - the key of the item
+	 * @param i - the info of the item
+	 */
+	public int insertNear(WAVLNode finger, int k, String i) {
+		return insert(finger, k, i);
+	}
+
+	private int insert(WAVLNode finger, int k, String i) {
+		int res = this.legacyEngine ? insertRecursive(finger, k, i) : insertIterative(finger, k, i);
+		if (this.searchCache != null && res >= 0)
+			this.searchCache.invalidate(k);
+		if (this.metrics != null) {
+			this.metrics.insertion(res);
+			if (res >= 0)
+				this.metrics.depth(this.reachedDepth); // the depth the item was inserted at
+		}
+		return res;
+	}
+
+	private int insertRecursive(WAVLNode finger, int k, String i) {
 		//###insertion start
 		WAVLNode newNode = new WAVLNode(k,i);
 		newNode.left = this.externalNode;
@@ -139,10 +375,12 @@ public class WAVLTree {
 		newNode.rank = 0;
 		newNode.updateSubtreeSize(); // Dvir: ==1
 		
-		if(this.root == this.externalNode){//empty tree
+		if(this.empty()){//empty tree
 			this.root = newNode;
 			this.min = newNode;
             this.max = newNode;
+			this.finger = newNode;
+			this.reachedDepth = 0;
 			return 0;
 		}
 		
@@ -155,10 +393,13 @@ public class WAVLTree {
             this.max = newNode;
         }
 		
-		WAVLNode parent = SearchForInsert(this.root,k);//parent must be leaf or unary node
+		WAVLNode parent = finger == null ? SearchForInsert(this.root,k) : findFrom(finger,k);//parent must be leaf or unary node
 		if(parent.key== k){// the key already exist in the tree
+			this.finger = parent;
 			return -1;
 		}
+		this.finger = newNode;
+		this.reachedDepth++; // from the parent to the new node
 		if(parent.key> k){
 			parent.left = newNode;
 		}
@@ -171,6 +412,9 @@ public class WAVLTree {
 		//###initial insertion balance start
 		int BalancingCounter=0;
 		String initCase = initialInsertionCase(newNode);//== A or B (from slide 18)
+		if(this.metrics!=null){
+			this.metrics.initialInsertionCase(initCase=="A");
+		}
 		if(initCase=="B"){
 			//parent.updateSubtreeSize(); // Dvir: update subtreeSize
 			updateSubtreeSizeToRoot(newNode);
@@ -199,6 +443,9 @@ public class WAVLTree {
 			return 0;
 		}
 		int bCase = BalancingCase(pnode);//==0 or 1 or 2 or 3 (from slide 23)
+		if(this.metrics!=null){
+			this.metrics.insertionCase(bCase);
+		}
 		if(bCase==0){//case = 0 means the parent of pnode has transformed 2,1 --> 1,1 or 1,2-->1,1
 			return 0;
 		}
@@ -248,6 +495,7 @@ public class WAVLTree {
 		WAVLNode b = x.right;
 		if(z==this.root){
 			this.root = x;
+			x.parent = null;
 		}
 		else{//z is not the root
 			WAVLNode grandparent = z.parent;
@@ -288,28 +536,28 @@ public class WAVLTree {
 	 * the same as the regular upperRotation**/
 
 	
+	/**the parent of child is set with setParent, which never writes the shared
+	 * externalNode, so the sentinel stays immutable (see ConcurrentWAVLTree)**/
 	public void edgeUpdate(WAVLNode parent,WAVLNode child,String childType){
 		if(childType=="L"){
 			parent.left = child;
-			child.parent = parent;
+			child.setParent(parent);
 		}
 		if(childType=="R"){
 			parent.right = child;
-			child.parent = parent;
+			child.setParent(parent);
 		}
 	}
 	public void replaceChild(WAVLNode parent,WAVLNode oldChild,WAVLNode newChild){
 		boolean oldChildIsLeftChild = oldChild==parent.left;
 		if(oldChildIsLeftChild){
 			parent.left = newChild;
-			newChild.parent = parent;
-			oldChild.parent = null;
 		}
 		else{
 			parent.right = newChild;
-			newChild.parent = parent;
-			oldChild.parent = null;
 		}
+		newChild.setParent(parent);
+		oldChild.setParent(null);
 	}
 	/**the balancing case according to slide 23
 	 * case = 0 means the parent of pnode has transformed 2,1 --> 1,1 or 1,2-->1,1
@@ -416,6 +664,18 @@ public class WAVLTree {
 	 * item with key k was not found in the tree.
 	 */
     public int delete(int k) {
+        this.finger = null; // the finger might be removed or moved
+        int res = this.legacyEngine ? deleteRecursive(k) : deleteIterative(k);
+        if (this.searchCache != null && res >= 0) {
+            this.searchCache.invalidate(k);
+        }
+        if (this.metrics != null) {
+            this.metrics.deletion(res);
+        }
+        return res;
+    }
+
+    private int deleteRecursive(int k) {
         if (this.empty()) {
             return -1;
         }
@@ -431,9 +691,684 @@ public class WAVLTree {
             // delete max
         	this.max = this.max.predecessor();
         }
-        return this.root.delete(k);
+        return this.root.delete(this, k);
     }
 	
+	/**
+	 * Rebuilds the tree from its nodes in key order, reusing the node objects
+	 * @param nodes - the nodes of the tree, sorted by key
+	 * @param count - the number of nodes
+	 */
+	private void relink(WAVLNode[] nodes, int count) {
+		this.finger = null;
+		if (this.searchCache != null)
+			this.searchCache.clear();
+		if (count == 0) {
+			setContents(this.externalNode);
+			return;
+		}
+		WAVLNode newRoot = relinkSubtree(nodes, 0, count - 1);
+		newRoot.parent = null;
+		this.root = newRoot;
+		this.min = nodes[0];
+		this.max = nodes[count - 1];
+	}
+
+	/**
+	 * Links nodes[lo..hi] into a balanced subtree, like buildSubtree
+	 * @return the root of the subtree, or the external node if lo > hi
+	 */
+	private WAVLNode relinkSubtree(WAVLNode[] nodes, int lo, int hi) {
+		if (lo > hi)
+			return this.externalNode;
+		int mid = (lo + hi) >>> 1;
+		WAVLNode x = nodes[mid];
+		x.left = relinkSubtree(nodes, lo, mid - 1);
+		x.right = relinkSubtree(nodes, mid + 1, hi);
+		x.left.setParent(x);
+		x.right.setParent(x);
+		x.rank = Math.max(x.left.rank, x.right.rank) + 1;
+		x.updateSubtreeSize();
+		if (this.augmentation != null)
+			updateAggregate(x);
+		return x;
+	}
+
+	/**
+	 * Inserts a batch of items. The batch is sorted and built into a tree in linear time,
+	 * which is merged into this tree by a union (see union), so the search paths and the
+	 * rebalancing are shared by the whole batch: O(m log(n/m + 1)) for a batch of m items
+	 * instead of O(m log n). As with insert, an existing item is not replaced, and for a
+	 * key which appears more than once in the batch the first item is inserted. A batch
+	 * of at least 1/MERGE_BATCH_RATIO of the tree is merged with the items of the tree
+	 * instead, and all nodes are relinked in O(n + m).
+	 * @param keys - the keys of the items, in any order
+	 * @param infos - the infos of the items, by the order of keys
+	 * @return the number of items inserted
+	 */
+	public int insertAll(int[] keys, String[] infos) {
+		if (keys.length != infos.length)
+			throw new IllegalArgumentException("keys and infos must have the same length");
+		// sort (key, index) pairs packed in longs, so equal keys stay in batch order
+		long[] order = new long[keys.length];
+		for (int j = 0; j < keys.length; j++)
+			order[j] = ((long) keys[j] << 32) | j;
+		Arrays.sort(order);
+		int[] sortedKeys = new int[keys.length];
+		String[] sortedInfos = new String[keys.length];
+		int n = 0;
+		for (long pair : order) {
+			int key = (int) (pair >> 32);
+			if (n > 0 && sortedKeys[n - 1] == key)
+				continue;
+			sortedKeys[n] = key;
+			sortedInfos[n] = infos[(int) pair];
+			n++;
+		}
+		int before = size();
+		if (n >= before / MERGE_BATCH_RATIO) {
+			// large batch - merge with the items of the tree and relink all nodes in linear time
+			WAVLNode[] nodes = new WAVLNode[before + n];
+			int count = 0;
+			WAVLNode x = empty() ? null : this.min;
+			int j = 0;
+			while (x != null || j < n) {
+				if (j == n || (x != null && x.key <= sortedKeys[j])) {
+					if (j < n && x.key == sortedKeys[j])
+						j++;
+					nodes[count++] = x;
+					x = x.successor();
+				} else {
+					nodes[count++] = new WAVLNode(sortedKeys[j], sortedInfos[j]);
+					j++;
+				}
+			}
+			relink(nodes, count);
+			return count - before;
+		}
+		if (this.augmentation != null) {
+			// a union would compute all the aggregates again, inserting keeps them in O(log n) per item
+			for (int j = 0; j < n; j++)
+				insert(sortedKeys[j], sortedInfos[j]);
+			return size() - before;
+		}
+		WAVLTree batch = fromSorted(sortedKeys, sortedInfos, n);
+		setContents(ForkJoinPool.commonPool().invoke(new SetOperationTask(SetOperation.Union, this.root, batch.root)));
+		return size() - before;
+	}
+
+	/**
+	 * Deletes a batch of keys. The batch is sorted and built into a tree, which is
+	 * subtracted from this tree by a difference (see difference), in O(m log(n/m + 1))
+	 * for a batch of m keys. A batch of at least 1/MERGE_BATCH_RATIO of the tree is
+	 * handled by relinking the remaining nodes in O(n + m).
+	 * @param keys - the keys to delete, in any order, keys which are not in the tree are ignored
+	 * @return the number of items deleted
+	 */
+	public int deleteAll(int[] keys) {
+		int[] sortedKeys = keys.clone();
+		Arrays.sort(sortedKeys);
+		int n = 0;
+		for (int key : sortedKeys) {
+			if (n == 0 || sortedKeys[n - 1] != key)
+				sortedKeys[n++] = key;
+		}
+		int before = size();
+		if (n >= before / MERGE_BATCH_RATIO) {
+			// large batch - keep the nodes which are not in the batch and relink them in linear time
+			WAVLNode[] nodes = new WAVLNode[before];
+			int count = 0;
+			int j = 0;
+			for (WAVLNode x = empty() ? null : this.min; x != null; x = x.successor()) {
+				while (j < n && sortedKeys[j] < x.key)
+					j++;
+				if (j < n && sortedKeys[j] == x.key)
+					continue;
+				nodes[count++] = x;
+			}
+			relink(nodes, count);
+			return before - count;
+		}
+		if (this.augmentation != null) {
+			for (int j = 0; j < n; j++)
+				delete(sortedKeys[j]);
+			return before - size();
+		}
+		WAVLTree batch = fromSorted(sortedKeys, new String[n], n);
+		setContents(ForkJoinPool.commonPool().invoke(new SetOperationTask(SetOperation.Difference, this.root, batch.root)));
+		return before - size();
+	}
+
+	/**
+	 * Starts collecting metrics of the rebalancing and the shape of the tree, see
+	 * WAVLTreeMetrics. A tree without metrics only pays a null check per operation.
+	 * @return the metrics of the tree (the existing ones if already enabled)
+	 */
+	public WAVLTreeMetrics enableMetrics() {
+		if (this.metrics == null)
+			this.metrics = new WAVLTreeMetrics(this);
+		return this.metrics;
+	}
+
+	/**
+	 * Stops collecting metrics
+	 */
+	public void disableMetrics() {
+		this.metrics = null;
+	}
+
+	/**
+	 * Returns the metrics of the tree, or null if they are disabled
+	 */
+	public WAVLTreeMetrics getMetrics() {
+		return this.metrics;
+	}
+
+	/**
+	 * Puts a bounded cache of search results in front of search, see WAVLSearchCache.
+	 * A hit does not reach the tree, so it moves neither the finger nor the depth metrics.
+	 * @param capacity - the maximal number of cached keys
+	 * @return the cache of the tree (a new, empty one if the capacity changed)
+	 */
+	public WAVLSearchCache enableSearchCache(int capacity) {
+		if (this.searchCache == null || this.searchCache.getCapacity() != capacity)
+			this.searchCache = new WAVLSearchCache(capacity);
+		return this.searchCache;
+	}
+
+	/**
+	 * Removes the search cache
+	 */
+	public void disableSearchCache() {
+		this.searchCache = null;
+	}
+
+	/**
+	 * Returns the search cache of the tree, or null if it is disabled
+	 */
+	public WAVLSearchCache getSearchCache() {
+		return this.searchCache;
+	}
+
+	/**
+	 * Returns the depth of node x, the root is at depth 0
+	 * @pre x is an inner node of this tree
+	 */
+	int depth(WAVLNode x) {
+		int d = 0;
+		while (!x.isRoot()) {
+			x = x.parent;
+			d++;
+		}
+		return d;
+	}
+
+	/**
+	 * Sets whether insert and delete use the original recursive implementation instead
+	 * of the iterative one (the default). Both make the same changes to the tree and
+	 * return the same rebalancing counts, the switch is kept for comparing them.
+	 * @param legacy - true for the recursive implementation
+	 */
+	public void setLegacyEngine(boolean legacy) {
+		if (legacy && this.augmentation != null)
+			throw new IllegalStateException("the legacy engine does not maintain an augmentation");
+		this.legacyEngine = legacy;
+	}
+
+	/**
+	 * public interface Augmentation
+	 *
+	 * A monoid over the items of the tree: every node keeps the combination of the lifted
+	 * values of the items in its subtree, by key order, like the subtree size which select
+	 * uses. combine must be associative with identity as its neutral element, it does not
+	 * have to be commutative.
+	 */
+	public interface Augmentation {
+		/**
+		 * Returns the aggregate of no items
+		 */
+		long identity();
+
+		/**
+		 * Returns the value of a single item
+		 */
+		long lift(int key, String info);
+
+		/**
+		 * Returns the aggregate of the items of left followed by the items of right
+		 */
+		long combine(long left, long right);
+
+		/**
+		 * Returns the augmentation of the sum of value(info)
+		 */
+		static Augmentation sum(ToLongFunction<String> value) {
+			return new Augmentation() {
+				public long identity() {
+					return 0;
+				}
+
+				public long lift(int key, String info) {
+					return value.applyAsLong(info);
+				}
+
+				public long combine(long left, long right) {
+					return left + right;
+				}
+			};
+		}
+
+		/**
+		 * Returns the augmentation of the maximum of value(info), Long.MIN_VALUE for no items
+		 */
+		static Augmentation max(ToLongFunction<String> value) {
+			return new Augmentation() {
+				public long identity() {
+					return Long.MIN_VALUE;
+				}
+
+				public long lift(int key, String info) {
+					return value.applyAsLong(info);
+				}
+
+				public long combine(long left, long right) {
+					return Math.max(left, right);
+				}
+			};
+		}
+
+		/**
+		 * Returns the augmentation of the minimum of value(info), Long.MAX_VALUE for no items
+		 */
+		static Augmentation min(ToLongFunction<String> value) {
+			return new Augmentation() {
+				public long identity() {
+					return Long.MAX_VALUE;
+				}
+
+				public long lift(int key, String info) {
+					return value.applyAsLong(info);
+				}
+
+				public long combine(long left, long right) {
+					return Math.min(left, right);
+				}
+			};
+		}
+	}
+
+	/**
+	 * Sets the augmentation of the tree and computes the aggregates of all nodes, in O(n).
+	 * Afterwards insert and delete keep the aggregates in O(log n) (along the search path
+	 * and in O(1) per rotation). The operations which restructure the whole tree (split,
+	 * and the batches which relink it) compute them again in O(n), and the trees returned
+	 * by join, split and the set operations have no augmentation. Requires the default
+	 * (iterative) engine.
+	 * @param augmentation - the augmentation, or null to remove it
+	 */
+	public void setAugmentation(Augmentation augmentation) {
+		if (augmentation != null && this.legacyEngine)
+			throw new IllegalStateException("the legacy engine does not maintain an augmentation");
+		this.augmentation = augmentation;
+		if (augmentation != null && !empty())
+			computeAggregates(this.root);
+	}
+
+	/**
+	 * Returns the augmentation of the tree, or null if it has none
+	 */
+	public Augmentation getAugmentation() {
+		return this.augmentation;
+	}
+
+	/**
+	 * Returns the aggregate of the items with keys in [lo, hi], in O(log n): the items
+	 * between the boundary paths of lo and hi are covered by O(log n) whole subtrees.
+	 * @pre getAugmentation() != null
+	 * @param lo - the smallest key of the range
+	 * @param hi - the largest key of the range
+	 * @return the aggregate of the items in the range, by key order
+	 */
+	public long aggregate(int lo, int hi) {
+		Augmentation a = this.augmentation;
+		if (a == null)
+			throw new IllegalStateException("the tree has no augmentation");
+		// the highest node in the range, the range is split between its subtrees
+		WAVLNode x = this.root;
+		while (x.isInnerNode() && (x.key < lo || x.key > hi))
+			x = x.key < lo ? x.right : x.left;
+		if (x.isExternalNode() || lo > hi)
+			return a.identity();
+		long left = a.identity();
+		for (WAVLNode y = x.left; y.isInnerNode();) {
+			if (y.key >= lo) {
+				left = a.combine(a.combine(a.lift(y.key, y.info), aggregateOf(y.right)), left);
+				y = y.left;
+			} else {
+				y = y.right;
+			}
+		}
+		long right = a.identity();
+		for (WAVLNode y = x.right; y.isInnerNode();) {
+			if (y.key <= hi) {
+				right = a.combine(right, a.combine(aggregateOf(y.left), a.lift(y.key, y.info)));
+				y = y.right;
+			} else {
+				y = y.left;
+			}
+		}
+		return a.combine(a.combine(left, a.lift(x.key, x.info)), right);
+	}
+
+	/**
+	 * Returns the aggregate of all items of the tree
+	 * @pre getAugmentation() != null
+	 */
+	public long aggregate() {
+		if (this.augmentation == null)
+			throw new IllegalStateException("the tree has no augmentation");
+		return aggregateOf(this.root);
+	}
+
+	private long aggregateOf(WAVLNode x) {
+		return x.isInnerNode() ? x.aggregate : this.augmentation.identity();
+	}
+
+	/**
+	 * Computes the aggregate of x from its children
+	 * @pre the aggregates of the children of x are valid
+	 */
+	private void updateAggregate(WAVLNode x) {
+		Augmentation a = this.augmentation;
+		x.aggregate = a.combine(a.combine(aggregateOf(x.left), a.lift(x.key, x.info)), aggregateOf(x.right));
+	}
+
+	private void computeAggregates(WAVLNode x) {
+		if (x.isExternalNode())
+			return;
+		computeAggregates(x.left);
+		computeAggregates(x.right);
+		updateAggregate(x);
+	}
+
+	/*
+	 * The iterative engine. It runs the rebalancing cases of balanceTheTreeAfterInsert and
+	 * WAVLNode.deletionBalance as loops, fixes the subtree sizes in one walk to the root
+	 * and in O(1) per rotation, and allocates nothing but the inserted node.
+	 */
+
+	/**
+	 * Returns the node with key k in the subtree of x if exists, otherwise, returns the node
+	 * which k should be its child
+	 * @pre x is an inner node
+	 */
+	private WAVLNode descend(WAVLNode x, int k) {
+		int depth = 0;
+		while (x.key != k) {
+			WAVLNode next = x.key < k ? x.right : x.left;
+			if (next.isExternalNode())
+				break;
+			x = next;
+			depth++;
+		}
+		this.reachedDepth = depth;
+		return x;
+	}
+
+	private int insertIterative(WAVLNode finger, int k, String i) {
+		if (empty()) {
+			WAVLNode x = newLeaf(k, i);
+			this.root = x;
+			this.min = x;
+			this.max = x;
+			this.finger = x;
+			this.reachedDepth = 0;
+			return 0;
+		}
+		WAVLNode p = finger == null ? descend(this.root, k) : findFrom(finger, k);
+		if (p.key == k) {
+			this.finger = p;
+			return -1;
+		}
+		this.reachedDepth++; // from p to the new node
+		WAVLNode x = newLeaf(k, i);
+		setChild(p, k < p.key, x);
+		if (k < this.min.key)
+			this.min = x;
+		if (k > this.max.key)
+			this.max = x;
+		this.finger = x;
+		for (WAVLNode y = p; y != null; y = y.isRoot() ? null : y.parent) {
+			y.size++;
+			if (this.augmentation != null)
+				updateAggregate(y);
+		}
+
+		if (this.metrics != null)
+			this.metrics.initialInsertionCase(p.rank == 0);
+		if (p.rank != 0)
+			return 0; // p was unary and is now a 1,1 node (case B)
+		// p was a leaf and is now a 0,1 node (case A)
+		p.rank = 1;
+		return 1 + balanceAfterInsert(p);
+	}
+
+	private WAVLNode newLeaf(int k, String i) {
+		WAVLNode x = new WAVLNode(k, i);
+		x.left = this.externalNode;
+		x.right = this.externalNode;
+		x.rank = 0;
+		x.size = 1;
+		if (this.augmentation != null)
+			updateAggregate(x);
+		return x;
+	}
+
+	/**
+	 * Rebalances the tree after pnode was promoted, in the cases of balanceTheTreeAfterInsert
+	 * @param pnode - the node whose upper edge might have rank difference 0
+	 * @return the number of balancing operations
+	 */
+	private int balanceAfterInsert(WAVLNode pnode) {
+		int count = 0;
+		while (pnode != this.root) {
+			WAVLNode p = pnode.parent;
+			int leftDiff = p.rank - p.left.rank;
+			int rightDiff = p.rank - p.right.rank;
+			int delta = Math.abs(leftDiff - rightDiff);
+			if (delta == 1 && Math.max(leftDiff, rightDiff) == 1) {
+				// parent is 0,1 node - promote and continue up
+				p.rank++;
+				count++;
+				pnode = p;
+				if (this.metrics != null)
+					this.metrics.insertionCase(1);
+				continue;
+			}
+			if (this.metrics != null)
+				this.metrics.insertionCase(delta == 2 ? (pnode.rank - (pnode == p.left ? pnode.right : pnode.left).rank == 2 ? 2 : 3) : delta == 0 ? 0 : 4);
+			if (delta == 2) {
+				// parent is 0,2 node
+				boolean pnodeIsLeftChild = pnode == p.left;
+				WAVLNode inner = pnodeIsLeftChild ? pnode.right : pnode.left;
+				WAVLNode sibling = pnodeIsLeftChild ? p.right : p.left;
+				if (inner.rank == sibling.rank) {
+					// single rotation
+					rotateUpInTree(pnode);
+					p.rank--;
+					count += 2;
+				} else {
+					// double rotation
+					WAVLNode b = pnode.left.rank > pnode.right.rank ? pnode.left : pnode.right;
+					rotateUpInTree(b);
+					pnode.rank--;
+					b.rank++;
+					rotateUpInTree(b);
+					p.rank--;
+					count += 5;
+				}
+			}
+			return count;
+		}
+		return count;
+	}
+
+	private int deleteIterative(int k) {
+		if (empty() || k < this.min.key || k > this.max.key)
+			return -1;
+		WAVLNode z = descend(this.root, k);
+		if (z.key != k)
+			return -1;
+
+		if (z == this.min)
+			this.min = size() == 1 ? this.externalNode : z.successor();
+		if (z == this.max)
+			this.max = size() == 1 ? this.externalNode : z.predecessor();
+
+		WAVLNode start;
+		if (z.left.isInnerNode() && z.right.isInnerNode()) {
+			// Switch with successor and delete
+			WAVLNode s = z.right;
+			while (s.left.isInnerNode())
+				s = s.left;
+			WAVLNode sParent = s.parent;
+			if (sParent != z) {
+				setChild(sParent, true, s.right);
+				setChild(s, false, z.right);
+				start = sParent;
+			} else {
+				start = s;
+			}
+			setChild(s, true, z.left);
+			replace(z, s);
+			s.rank = z.rank;
+			s.size = z.size;
+		} else {
+			// Deleting a leaf or an unary node
+			WAVLNode child = z.left.isInnerNode() ? z.left : z.right;
+			boolean zIsRoot = z.isRoot();
+			WAVLNode p = z.parent;
+			replace(z, child);
+			if (zIsRoot)
+				return 0;
+			start = p;
+		}
+		for (WAVLNode y = start; y != null; y = y.isRoot() ? null : y.parent) {
+			y.size--;
+			if (this.augmentation != null)
+				updateAggregate(y);
+		}
+		return deletionBalance(start);
+	}
+
+	/**
+	 * Rebalances the tree bottom up after a deletion, in the cases of WAVLNode.deletionBalance
+	 * @param x - the parent of the removed node
+	 * @return the number of balancing operations
+	 */
+	private int deletionBalance(WAVLNode x) {
+		int count = 0;
+		while (true) {
+			int leftDiff = x.rank - x.left.rank;
+			int rightDiff = x.rank - x.right.rank;
+			boolean leaf = x.left.isExternalNode() && x.right.isExternalNode();
+			if ((leftDiff == 2 && rightDiff == 1) || (leftDiff == 2 && rightDiff == 2 && !leaf)
+					|| (leftDiff == 1 && rightDiff == 2) || (leftDiff == 1 && rightDiff == 1)) {
+				if (this.metrics != null)
+					this.metrics.deletionCase(WAVLTreeMetrics.DELETION_NO_VIOLATION);
+				return count;
+			}
+			if ((leftDiff == 2 && rightDiff == 2) || (leftDiff == 2 && rightDiff == 3) || (leftDiff == 3 && rightDiff == 2)) {
+				// leaf with 2,2 or 3,2 node - demote and continue up
+				if (this.metrics != null)
+					this.metrics.deletionCase(leaf ? WAVLTreeMetrics.DELETION_LEAF_DEMOTION : WAVLTreeMetrics.DELETION_DEMOTION);
+				x.rank--;
+				count++;
+				if (x.isRoot())
+					return count;
+				x = x.parent;
+				continue;
+			}
+			boolean childIsRight = rightDiff == 1;
+			WAVLNode y = childIsRight ? x.right : x.left;
+			int innerDiff = y.rank - (childIsRight ? y.left : y.right).rank;
+			int outerDiff = y.rank - (childIsRight ? y.right : y.left).rank;
+			if (this.metrics != null)
+				this.metrics.deletionCase(innerDiff == 2 && outerDiff == 2 ? WAVLTreeMetrics.DELETION_DOUBLE_DEMOTION
+						: outerDiff == 1 ? WAVLTreeMetrics.DELETION_SINGLE_ROTATION : WAVLTreeMetrics.DELETION_DOUBLE_ROTATION);
+			if (innerDiff == 2 && outerDiff == 2) {
+				// double demotion
+				x.rank--;
+				y.rank--;
+				count += 2;
+				if (x.isRoot())
+					return count;
+				x = x.parent;
+				continue;
+			}
+			if (outerDiff == 1) {
+				// single rotation
+				rotateUpInTree(y);
+				y.rank++;
+				x.rank--;
+				if (x.left.isExternalNode() && x.right.isExternalNode() && x.rank == 1)
+					x.rank = 0;
+				return count + 3;
+			}
+			// double rotation
+			WAVLNode v = childIsRight ? y.left : y.right;
+			x.rank -= 2;
+			y.rank--;
+			v.rank += 2;
+			rotateUpInTree(v);
+			rotateUpInTree(v);
+			return count + 5;
+		}
+	}
+
+	/**
+	 * Puts newChild in the place of node old under the parent of old (or as the root)
+	 */
+	private void replace(WAVLNode old, WAVLNode newChild) {
+		if (old.isRoot()) {
+			this.root = newChild;
+			newChild.setParent(null);
+			return;
+		}
+		WAVLNode p = old.parent;
+		if (p.left == old)
+			p.left = newChild;
+		else
+			p.right = newChild;
+		newChild.setParent(p);
+	}
+
+	/**
+	 * Sets the left/right child of node p, the external node is never written
+	 */
+	private static void setChild(WAVLNode p, boolean isLeft, WAVLNode child) {
+		if (isLeft)
+			p.left = child;
+		else
+			p.right = child;
+		child.setParent(p);
+	}
+
+	/**
+	 * Rotates x above its parent (see rotateUp), and makes x the root if its parent was
+	 */
+	private void rotateUpInTree(WAVLNode x) {
+		WAVLNode z = x.parent;
+		rotateUp(x);
+		if (x.isRoot())
+			this.root = x;
+		if (this.augmentation != null) {
+			// x takes the whole subtree of z
+			x.aggregate = z.aggregate;
+			updateAggregate(z);
+		}
+	}
+
 	/**
 	 * Dvir: Returns the info of the item with the smallest key in the tree, or null if
 	 * the tree is empty
@@ -468,62 +1403,329 @@ public class WAVLTree {
 	 * @return Returns a sorted array which contains all keys in the tree, or an empty array if the tree is empty.
 	 */
 	public int[] keysToArray() {
-		int[] arr = new int[size()]; // to be replaced by student code
-		// saving the counter in array (new int[]{0}) is used to pass the reference to memory location of counter,
-		// otherwise the counter losts the value during the recursion of getKeysWithOrder
-		if (arr.length > 0)
-			getKeysWithOrder(root, arr, new int[]{0});
-		return arr; // to be replaced by student code
+		int[] arr = new int[size()];
+		// walk with successor() instead of recursing, as the export of a large tree should not use the stack
+		WAVLNode x = this.min;
+		for (int i = 0; i < arr.length; i++) {
+			arr[i] = x.key;
+			x = x.successor();
+		}
+		return arr;
 	}
-	
+
+	/**
+	 * public String[] infoToArray()
+	 *
+	 * Returns an array which contains all info in the tree, sorted by their
+	 * respective keys, or an empty array if the tree is empty.
+	 */
+	public String[] infoToArray() {
+		String[] arr = new String[size()];
+		WAVLNode x = this.min;
+		for (int i = 0; i < arr.length; i++) {
+			arr[i] = x.info;
+			x = x.successor();
+		}
+		return arr;
+	}
+
+	/**
+	 * Returns a read-only copy of the tree in a pointer-free array layout, for trees
+	 * which are only read from now on, see FrozenWAVLTree. The tree itself is not
+	 * changed, FrozenWAVLTree.thaw returns a mutable tree again.
+	 */
+	public FrozenWAVLTree freeze() {
+		return new FrozenWAVLTree(keysToArray(), infoToArray());
+	}
+
+	/**
+	 * Returns a new cursor over the items of the tree, see Cursor
+	 * @return a cursor which is not positioned on any item
+	 */
+	public Cursor cursor() {
+		return new Cursor();
+	}
+
+	/**
+	 * Returns an iterator over the keys of the tree in ascending order. The iterator
+	 * does not allocate while iterating.
+	 * @return an iterator of the keys
+	 */
+	public PrimitiveIterator.OfInt keyIterator() {
+		return new PrimitiveIterator.OfInt() {
+			private WAVLNode next = empty() ? null : min;
+
+			public boolean hasNext() {
+				return next != null;
+			}
+
+			public int nextInt() {
+				if (next == null)
+					throw new NoSuchElementException();
+				int key = next.key;
+				next = next.successor();
+				return key;
+			}
+		};
+	}
+
+	/**
+	 * Returns a sequential stream of the items of the tree as entries, in key order. The
+	 * stream splits by the subtree sizes (see NodeSpliterator), so parallel() divides
+	 * the tree evenly among the threads without copying it to an array. The tree must not
+	 * change while the stream is used.
+	 */
+	public Stream<Map.Entry<Integer, String>> stream() {
+		return StreamSupport.stream(new EntrySpliterator(0, size()), false);
+	}
+
+	/**
+	 * Returns a sequential stream of the keys of the tree, in ascending order, see stream
+	 */
+	public IntStream keyStream() {
+		return StreamSupport.intStream(new KeySpliterator(0, size()), false);
+	}
+
+	/**
+	 * Returns a sequential stream of the items with keys in [lo,hi] as entries, in key
+	 * order, see stream
+	 * @param lo - the lower bound (inclusive)
+	 * @param hi - the upper bound (inclusive)
+	 */
+	public Stream<Map.Entry<Integer, String>> entryStream(int lo, int hi) {
+		int from = countSmaller(lo, false);
+		int to = lo > hi ? from : countSmaller(hi, true);
+		return StreamSupport.stream(new EntrySpliterator(from, to), false);
+	}
+
+	/**
+	 * Returns the node of the i'th smallest key, 0 based (also used by PartitionedWAVLTree
+	 * to find its splitter keys)
+	 * @pre 0 <= i < size()
+	 */
+	WAVLNode selectNode(int i) {
+		WAVLNode x = this.root;
+		while (true) {
+			int leftSize = x.left.size;
+			if (i == leftSize)
+				return x;
+			if (i < leftSize) {
+				x = x.left;
+			} else {
+				i -= leftSize + 1;
+				x = x.right;
+			}
+		}
+	}
+
 	/**
-	 * Returns a sorted array which contains all keys in the tree 
-	 * @pre empty() == False
-	 * @param x - the node where the key list starts from 
-	 * @param arr - the array that contains the keys
-	 * @param i - the array that contains the first empty cell in arr
-	 * @return Returns a sorted array which contains all keys in the tree
+	 * The items of the tree with 0 based indexes in [index, fence), in key order. trySplit
+	 * hands out the first half of the indexes, so both halves have exact sizes. The node
+	 * of index is found by the subtree sizes in O(log n) when the traversal starts, and
+	 * the traversal follows the successors, O(1) amortized per item.
 	 */
-	private void getKeysWithOrder(WAVLNode x, int[] arr, int[] i) {
-		if (x.left.rank > -1)
-			getKeysWithOrder(x.left, arr, i);
-		arr[i[0]] = x.key;
-		i[0]++;
-		if (x.right.rank > -1)
-			getKeysWithOrder(x.right, arr, i);
+	private abstract class NodeSpliterator {
+		int index;
+		final int fence;
+		WAVLNode next = null; // the node of index, null until it is found
+
+		NodeSpliterator(int index, int fence) {
+			this.index = index;
+			this.fence = fence;
+		}
+
+		/**
+		 * Returns the node of index and moves to the next index
+		 * @pre index < fence
+		 */
+		final WAVLNode advance() {
+			WAVLNode x = this.next == null ? selectNode(this.index) : this.next;
+			this.index++;
+			this.next = this.index < this.fence ? x.successor() : null;
+			return x;
+		}
+
+		/**
+		 * Returns the first half of the remaining indexes, or -1 if they are too few to split
+		 */
+		final int splitPoint() {
+			return this.fence - this.index < 2 ? -1 : (this.index + this.fence) >>> 1;
+		}
+
+		/**
+		 * Gives the indexes before mid to the split off half, this spliterator keeps the rest
+		 * @return the node of the first index, for the split off half
+		 */
+		final WAVLNode splitAt(int mid) {
+			WAVLNode first = this.next;
+			this.index = mid;
+			this.next = null;
+			return first;
+		}
+
+		public long estimateSize() {
+			return this.fence - this.index;
+		}
+
+		public int characteristics() {
+			return Spliterator.ORDERED | Spliterator.SORTED | Spliterator.DISTINCT | Spliterator.NONNULL
+					| Spliterator.SIZED | Spliterator.SUBSIZED;
+		}
+	}
+
+	private final class KeySpliterator extends NodeSpliterator implements Spliterator.OfInt {
+		KeySpliterator(int index, int fence) {
+			super(index, fence);
+		}
+
+		public KeySpliterator trySplit() {
+			int mid = splitPoint();
+			if (mid < 0)
+				return null;
+			KeySpliterator prefix = new KeySpliterator(this.index, mid);
+			prefix.next = splitAt(mid);
+			return prefix;
+		}
+
+		public boolean tryAdvance(IntConsumer action) {
+			if (this.index >= this.fence)
+				return false;
+			action.accept(advance().key);
+			return true;
+		}
+
+		public void forEachRemaining(IntConsumer action) {
+			while (this.index < this.fence)
+				action.accept(advance().key);
+		}
+
+		public Comparator<? super Integer> getComparator() {
+			return null; // natural order
+		}
 	}
 
-	/**
-	 * public String[] infoToArray()
-	 *
-	 * Returns an array which contains all info in the tree, sorted by their
-	 * respective keys, or an empty array if the tree is empty.
-	 */
-	public String[] infoToArray() {
-		String[] arr = new String[size()]; // to be replaced by student code
-		// saving the counter in array (new int[]{0}) is used to pass the reference to memory location of counter,
-		// otherwise the counter losts the value during the recursion of getInfoWithOrder
-		if (arr.length > 0)
-			getInfoWithOrder(root, arr, new int[]{0});
-		return arr; // to be replaced by student code
+	private final class EntrySpliterator extends NodeSpliterator implements Spliterator<Map.Entry<Integer, String>> {
+		EntrySpliterator(int index, int fence) {
+			super(index, fence);
+		}
+
+		public EntrySpliterator trySplit() {
+			int mid = splitPoint();
+			if (mid < 0)
+				return null;
+			EntrySpliterator prefix = new EntrySpliterator(this.index, mid);
+			prefix.next = splitAt(mid);
+			return prefix;
+		}
+
+		public boolean tryAdvance(Consumer<? super Map.Entry<Integer, String>> action) {
+			if (this.index >= this.fence)
+				return false;
+			WAVLNode x = advance();
+			action.accept(new AbstractMap.SimpleImmutableEntry<>(x.key, x.info));
+			return true;
+		}
+
+		public void forEachRemaining(Consumer<? super Map.Entry<Integer, String>> action) {
+			while (this.index < this.fence) {
+				WAVLNode x = advance();
+				action.accept(new AbstractMap.SimpleImmutableEntry<>(x.key, x.info));
+			}
+		}
+
+		public Comparator<? super Map.Entry<Integer, String>> getComparator() {
+			return Map.Entry.comparingByKey();
+		}
 	}
-	
+
 	/**
-	 * Returns a sorted array which contains all infos in the tree 
-	 * @pre empty() == False
-	 * @param x - the node where the info list starts from 
-	 * @param arr - the array that contains the infos
-	 * @param i - the array that contains the first empty cell in arr
-	 * @return Returns a sorted array which contains all infos in the tree
+	 * A reusable position over the items of the tree, in key order. A step (next/prev)
+	 * follows the successor/predecessor using the parent pointers, which takes O(1)
+	 * amortized and allocates nothing. After the tree changes, the cursor has to be
+	 * positioned again with first, last or seek.
 	 */
-	private void getInfoWithOrder(WAVLNode x, String[] arr, int[] i) {
-		// Inorder traversal gives the keys with sorted order 
-		if (x.left.rank > -1)
-			getInfoWithOrder(x.left, arr, i);
-		arr[i[0]] = x.info;
-		i[0]++;
-		if (x.right.rank > -1)
-			getInfoWithOrder(x.right, arr, i);
+	public class Cursor {
+		private WAVLNode current = null;
+
+		private Cursor() {
+		}
+
+		/**
+		 * Moves to the item with the smallest key
+		 * @return true if and only if the cursor is on an item (the tree is not empty)
+		 */
+		public boolean first() {
+			current = empty() ? null : min;
+			return current != null;
+		}
+
+		/**
+		 * Moves to the item with the largest key
+		 * @return true if and only if the cursor is on an item (the tree is not empty)
+		 */
+		public boolean last() {
+			current = empty() ? null : max;
+			return current != null;
+		}
+
+		/**
+		 * Moves to the item with the smallest key >= key
+		 * @param key - the key to seek
+		 * @return true if and only if there is such an item
+		 */
+		public boolean seek(int key) {
+			current = ceilingNode(key);
+			return current != null;
+		}
+
+		/**
+		 * Moves to the next item by key order
+		 * @pre valid()
+		 * @return true if and only if there is a next item
+		 */
+		public boolean next() {
+			current = position().successor();
+			return current != null;
+		}
+
+		/**
+		 * Moves to the previous item by key order
+		 * @pre valid()
+		 * @return true if and only if there is a previous item
+		 */
+		public boolean prev() {
+			current = position().predecessor();
+			return current != null;
+		}
+
+		/**
+		 * Checks whether the cursor is on an item
+		 */
+		public boolean valid() {
+			return current != null;
+		}
+
+		/**
+		 * Returns the key of the current item
+		 * @pre valid()
+		 */
+		public int key() {
+			return position().key;
+		}
+
+		/**
+		 * Returns the info of the current item
+		 * @pre valid()
+		 */
+		public String info() {
+			return position().info;
+		}
+
+		private WAVLNode position() {
+			if (current == null)
+				throw new NoSuchElementException("the cursor is not on an item");
+			return current;
+		}
 	}
 
 	/**
@@ -580,13 +1782,599 @@ public class WAVLTree {
 		else
 			return select(x.right, i-leftSize-1);
 	}
-	
+
+	/**
+	 * Returns the number of keys in the tree which are smaller than or equal to key.
+	 * For a key k of the tree, select(rank(k)) returns the info of k.
+	 * @param key - any key
+	 * @return the number of keys <= key
+	 */
+	public int rank(int key) {
+		return countSmaller(key, true);
+	}
+
+	/**
+	 * Returns the number of keys k of the tree with lo <= k <= hi, in O(log n)
+	 * @param lo - the lower bound (inclusive)
+	 * @param hi - the upper bound (inclusive)
+	 * @return the number of keys in [lo,hi], 0 if lo > hi
+	 */
+	public int countRange(int lo, int hi) {
+		if (lo > hi)
+			return 0;
+		return countSmaller(hi, true) - countSmaller(lo, false);
+	}
+
+	/**
+	 * Counts the keys smaller than key (or equal to it, if inclusive) using the subtree sizes
+	 */
+	private int countSmaller(int key, boolean inclusive) {
+		int count = 0;
+		WAVLNode x = this.root;
+		while (x.isInnerNode()) {
+			if (x.key < key || (inclusive && x.key == key)) {
+				count += x.left.size + 1;
+				x = x.right;
+			} else {
+				x = x.left;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the node with the smallest key >= key, or null if there is no such node
+	 */
+	private WAVLNode ceilingNode(int key) {
+		WAVLNode res = null;
+		WAVLNode x = this.root;
+		while (x.isInnerNode()) {
+			if (x.key == key)
+				return x;
+			if (x.key > key) {
+				res = x;
+				x = x.left;
+			} else {
+				x = x.right;
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * Returns the node with the largest key <= key, or null if there is no such node
+	 */
+	private WAVLNode floorNode(int key) {
+		WAVLNode res = null;
+		WAVLNode x = this.root;
+		while (x.isInnerNode()) {
+			if (x.key == key)
+				return x;
+			if (x.key < key) {
+				res = x;
+				x = x.right;
+			} else {
+				x = x.left;
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * Returns a view of the items of the tree with keys in [lo,hi]. The view is backed
+	 * by the tree, so it reflects later changes of the tree, and its methods only visit
+	 * the nodes in the range.
+	 * @param lo - the lower bound (inclusive)
+	 * @param hi - the upper bound (inclusive)
+	 * @return a view of the range
+	 */
+	public SubMap subMap(int lo, int hi) {
+		return new SubMap(lo, hi);
+	}
+
+	/**
+	 * A view of the items of the tree in a key range, see subMap
+	 */
+	public class SubMap {
+		private final int lo;
+		private final int hi;
+
+		private SubMap(int lo, int hi) {
+			this.lo = lo;
+			this.hi = hi;
+		}
+
+		/**
+		 * Returns the number of items in the range, in O(log n)
+		 */
+		public int size() {
+			return countRange(lo, hi);
+		}
+
+		/**
+		 * Checks whether the range is empty or not
+		 */
+		public boolean empty() {
+			return first() == null;
+		}
+
+		/**
+		 * Returns the info of the item with key k if it is in the range, otherwise null
+		 * @param k - key
+		 */
+		public String search(int k) {
+			if (k < lo || k > hi)
+				return null;
+			return WAVLTree.this.search(k);
+		}
+
+		/**
+		 * Returns the info of the item with the smallest key in the range, or null if the range is empty
+		 */
+		public String min() {
+			WAVLNode x = first();
+			return x == null ? null : x.info;
+		}
+
+		/**
+		 * Returns the info of the item with the largest key in the range, or null if the range is empty
+		 */
+		public String max() {
+			if (lo > hi)
+				return null;
+			WAVLNode x = floorNode(hi);
+			return x == null || x.key < lo ? null : x.info;
+		}
+
+		/**
+		 * Returns the value of the i'th smallest key in the range (return null if i is out of range)
+		 * @param i - 1 based index
+		 */
+		public String select(int i) {
+			if (i < 1 || i > size())
+				return null;
+			return WAVLTree.this.select(countSmaller(lo, false) + i);
+		}
+
+		/**
+		 * Returns a sorted array which contains all keys in the range
+		 */
+		public int[] keysToArray() {
+			int[] arr = new int[size()];
+			WAVLNode x = first();
+			for (int i = 0; i < arr.length; i++) {
+				arr[i] = x.key;
+				x = x.successor();
+			}
+			return arr;
+		}
+
+		/**
+		 * Returns an array which contains all infos in the range, sorted by their respective keys
+		 */
+		public String[] infoToArray() {
+			String[] arr = new String[size()];
+			WAVLNode x = first();
+			for (int i = 0; i < arr.length; i++) {
+				arr[i] = x.info;
+				x = x.successor();
+			}
+			return arr;
+		}
+
+		/**
+		 * Returns the node with the smallest key in the range, or null if the range is empty
+		 */
+		private WAVLNode first() {
+			if (lo > hi)
+				return null;
+			WAVLNode x = ceilingNode(lo);
+			return x == null || x.key > hi ? null : x;
+		}
+	}
+
+	/**
+	 * Joins two trees and a middle item into one tree, in O(log n). Both trees are
+	 * left empty.
+	 * @pre every key of left < key < every key of right
+	 * @param left - the tree with the smaller keys
+	 * @param key - the key of the middle item
+	 * @param info - the info of the middle item
+	 * @param right - the tree with the larger keys
+	 * @return a new tree which contains the items of left, the middle item and the items of right
+	 */
+	public static WAVLTree join(WAVLTree left, int key, String info, WAVLTree right) {
+		if ((!left.empty() && left.max.key >= key) || (!right.empty() && right.min.key <= key))
+			throw new IllegalArgumentException("the keys of left must be smaller than key, and the keys of right larger");
+		WAVLTree res = new WAVLTree();
+		res.setContents(joinNodes(left.root, new WAVLNode(key, info), right.root));
+		left.setContents(left.externalNode);
+		right.setContents(right.externalNode);
+		return res;
+	}
+
+	/**
+	 * Splits the tree around key, in O(log n). The items with keys smaller than key
+	 * stay in this tree, and the rest are moved to the returned tree.
+	 * @param key - the key to split by
+	 * @return a new tree which contains all the items with keys >= key
+	 */
+	public WAVLTree split(int key) {
+		WAVLNode[] parts = splitNodes(this.root, key);
+		WAVLNode right = parts[2];
+		if (parts[1] != null)
+			right = joinNodes(this.externalNode, parts[1], right);
+		WAVLTree res = new WAVLTree();
+		this.setContents(parts[0]);
+		res.setContents(right);
+		return res;
+	}
+
+	/**
+	 * Sets node as the root of the tree and finds the min and max of the tree
+	 * @param node - the new root, or an external node for an empty tree
+	 */
+	private void setContents(WAVLNode node) {
+		this.finger = null;
+		if (this.searchCache != null)
+			this.searchCache.clear();
+		if (node.isExternalNode()) {
+			this.root = this.externalNode;
+			this.min = this.externalNode;
+			this.max = this.externalNode;
+			return;
+		}
+		node.parent = null;
+		this.root = node;
+		if (this.augmentation != null)
+			computeAggregates(node);
+		WAVLNode x = node;
+		while (x.left.isInnerNode())
+			x = x.left;
+		this.min = x;
+		x = node;
+		while (x.right.isInnerNode())
+			x = x.right;
+		this.max = x;
+	}
+
+	/**
+	 * Joins two subtrees and a middle node into one subtree, in O(|left.rank - right.rank| + 1)
+	 * @pre the keys of left < k.key < the keys of right, left and right have no parents
+	 * @param left - the subtree with the smaller keys (might be an external node)
+	 * @param k - the middle node, which is not in any tree
+	 * @param right - the subtree with the larger keys (might be an external node)
+	 * @return the root of the joined subtree
+	 */
+	static WAVLNode joinNodes(WAVLNode left, WAVLNode k, WAVLNode right) {
+		if (left.rank > right.rank + 1)
+			return joinAlongSpine(left, k, right, NodeDirection.Right);
+		if (right.rank > left.rank + 1)
+			return joinAlongSpine(right, k, left, NodeDirection.Left);
+		k.left = left;
+		k.right = right;
+		left.setParent(k);
+		right.setParent(k);
+		k.parent = null;
+		k.rank = Math.max(left.rank, right.rank) + 1;
+		k.updateSubtreeSize();
+		return k;
+	}
+
+	/**
+	 * Joins a high subtree with a low subtree: k is hung on the spine of high, over the
+	 * first spine node c with rank <= low.rank+1, with c and low as its children. Then k
+	 * gets rank c.rank+1, so its only possible violation is a rank difference 0 from its
+	 * parent, which is fixed like after an insertion.
+	 * @param high - the subtree with the larger rank
+	 * @param k - the middle node
+	 * @param low - the subtree with the smaller rank
+	 * @param direction - the spine of high to walk down, Right if high has the smaller keys
+	 * @return the root of the joined subtree
+	 */
+	private static WAVLNode joinAlongSpine(WAVLNode high, WAVLNode k, WAVLNode low, NodeDirection direction) {
+		high.parent = null;
+		WAVLNode p = null;
+		WAVLNode c = high;
+		while (c.rank > low.rank + 1) {
+			p = c;
+			c = c.getChild(direction);
+		}
+		if (direction == NodeDirection.Right) {
+			k.left = c;
+			k.right = low;
+			p.right = k;
+		} else {
+			k.left = low;
+			k.right = c;
+			p.left = k;
+		}
+		c.setParent(k);
+		low.setParent(k);
+		k.parent = p;
+		k.rank = Math.max(c.rank, low.rank) + 1;
+		k.updateSubtreeSize();
+		for (WAVLNode x = p; x != null; x = x.parent)
+			x.setSubtreeSize(x.size + low.size + 1);
+
+		joinBalance(k);
+		WAVLNode top = k;
+		while (top.parent != null)
+			top = top.parent;
+		return top;
+	}
+
+	/**
+	 * Rebalances bottom up after x got a rank difference of 0 from its parent. These are
+	 * the insertion cases, plus the case of a 1,1 node x under a 0,2 parent (which only
+	 * a join can create): x is rotated up and promoted, and the check goes on above it.
+	 * @param x - the node whose upper edge might have rank difference 0
+	 */
+	private static void joinBalance(WAVLNode x) {
+		WAVLNode p = x.parent;
+		while (p != null && p.rank == x.rank) {
+			boolean xIsLeftChild = x == p.left;
+			WAVLNode sibling = xIsLeftChild ? p.right : p.left;
+			if (p.rank - sibling.rank == 1) {
+				// parent is 0,1 node - promote and continue up
+				p.promotion();
+				x = p;
+				p = x.parent;
+				continue;
+			}
+			// parent is 0,2 node
+			WAVLNode outer = xIsLeftChild ? x.left : x.right;
+			WAVLNode inner = xIsLeftChild ? x.right : x.left;
+			if (x.rank - outer.rank == 1 && x.rank - inner.rank == 1) {
+				rotateUp(x);
+				x.promotion();
+				p = x.parent;
+			} else if (x.rank - outer.rank == 1) {
+				rotateUp(x);
+				p.demotion();
+				return;
+			} else {
+				rotateUp(inner);
+				rotateUp(inner);
+				inner.promotion();
+				x.demotion();
+				p.demotion();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Rotates x above its parent, keeping the subtree sizes valid
+	 * @pre x.parent != null
+	 * @param x - the node to rotate up
+	 */
+	private static void rotateUp(WAVLNode x) {
+		WAVLNode z = x.parent;
+		WAVLNode grandparent = z.parent;
+		if (x == z.left) {
+			z.left = x.right;
+			z.left.setParent(z);
+			x.right = z;
+		} else {
+			z.right = x.left;
+			z.right.setParent(z);
+			x.left = z;
+		}
+		z.parent = x;
+		x.parent = grandparent;
+		if (grandparent != null && grandparent.isInnerNode()) {
+			if (grandparent.left == z)
+				grandparent.left = x;
+			else
+				grandparent.right = x;
+		}
+		x.setSubtreeSize(z.size);
+		z.updateSubtreeSize();
+	}
+
+	/**
+	 * Splits a subtree around key, in O(log n)
+	 * @param t - the root of the subtree (might be an external node)
+	 * @param key - the key to split by
+	 * @return {the subtree of keys < key, the node with key or null, the subtree of keys > key},
+	 * the subtrees and the node have no parents
+	 */
+	static WAVLNode[] splitNodes(WAVLNode t, int key) {
+		if (t.isExternalNode())
+			return new WAVLNode[] {t, null, t};
+		WAVLNode l = t.left;
+		WAVLNode r = t.right;
+		l.setParent(null);
+		r.setParent(null);
+		if (key == t.key) {
+			t.parent = null;
+			return new WAVLNode[] {l, t, r};
+		}
+		WAVLNode[] parts;
+		if (key < t.key) {
+			parts = splitNodes(l, key);
+			parts[2] = joinNodes(parts[2], t, r);
+		} else {
+			parts = splitNodes(r, key);
+			parts[0] = joinNodes(l, t, parts[0]);
+		}
+		return parts;
+	}
+
+	/**
+	 * Concatenates two subtrees, in O(log n)
+	 * @pre the keys of left < the keys of right, left and right have no parents
+	 * @return the root of the concatenated subtree
+	 */
+	static WAVLNode concatNodes(WAVLNode left, WAVLNode right) {
+		if (left.isExternalNode())
+			return right;
+		if (right.isExternalNode())
+			return left;
+		WAVLNode last = left;
+		while (last.right.isInnerNode())
+			last = last.right;
+		WAVLNode[] parts = splitNodes(left, last.key);
+		return joinNodes(parts[0], parts[1], right);
+	}
+
+	/**
+	 * Returns a tree with the items of both trees, on equal keys the item of a is kept.
+	 * Runs in parallel on the common ForkJoinPool, and both trees are left empty.
+	 * @param a - a tree
+	 * @param b - another tree
+	 * @return a new tree with the union of the items
+	 */
+	public static WAVLTree union(WAVLTree a, WAVLTree b) {
+		return union(a, b, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Returns a tree with the items of both trees, on equal keys the item of a is kept.
+	 * Runs in parallel on pool, and both trees are left empty.
+	 */
+	public static WAVLTree union(WAVLTree a, WAVLTree b, ForkJoinPool pool) {
+		return setOperation(SetOperation.Union, a, b, pool);
+	}
+
+	/**
+	 * Returns a tree with the items of a whose keys are also in b. Runs in parallel on
+	 * the common ForkJoinPool, and both trees are left empty.
+	 * @param a - a tree
+	 * @param b - another tree
+	 * @return a new tree with the intersection of the items
+	 */
+	public static WAVLTree intersection(WAVLTree a, WAVLTree b) {
+		return intersection(a, b, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Returns a tree with the items of a whose keys are also in b. Runs in parallel on
+	 * pool, and both trees are left empty.
+	 */
+	public static WAVLTree intersection(WAVLTree a, WAVLTree b, ForkJoinPool pool) {
+		return setOperation(SetOperation.Intersection, a, b, pool);
+	}
+
+	/**
+	 * Returns a tree with the items of a whose keys are not in b. Runs in parallel on
+	 * the common ForkJoinPool, and both trees are left empty.
+	 * @param a - a tree
+	 * @param b - another tree
+	 * @return a new tree with the difference of the items
+	 */
+	public static WAVLTree difference(WAVLTree a, WAVLTree b) {
+		return difference(a, b, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Returns a tree with the items of a whose keys are not in b. Runs in parallel on
+	 * pool, and both trees are left empty.
+	 */
+	public static WAVLTree difference(WAVLTree a, WAVLTree b, ForkJoinPool pool) {
+		return setOperation(SetOperation.Difference, a, b, pool);
+	}
+
+	private enum SetOperation {
+		Union, Intersection, Difference
+	}
+
+	private static WAVLTree setOperation(SetOperation operation, WAVLTree a, WAVLTree b, ForkJoinPool pool) {
+		if (a == b)
+			throw new IllegalArgumentException("a set operation needs two different trees");
+		WAVLNode root = pool.invoke(new SetOperationTask(operation, a.root, b.root));
+		WAVLTree res = new WAVLTree();
+		res.setContents(root);
+		a.setContents(a.externalNode);
+		b.setContents(b.externalNode);
+		return res;
+	}
+
+	/**
+	 * Applies a set operation on two subtrees, divide and conquer by split and join:
+	 * one subtree is split by the root key of the other, the operation is applied on the
+	 * left parts and on the right parts (in parallel for large subtrees), and the results
+	 * are joined back by the root. The work is O(m log(n/m + 1)) for subtrees of sizes
+	 * m <= n, and the span is O(log^2 n).
+	 */
+	private static final class SetOperationTask extends RecursiveTask<WAVLNode> {
+		private static final long serialVersionUID = 1L;
+		private static final int SEQUENTIAL_THRESHOLD = 4096;
+
+		private final SetOperation operation;
+		private final WAVLNode t1;
+		private final WAVLNode t2;
+
+		private SetOperationTask(SetOperation operation, WAVLNode t1, WAVLNode t2) {
+			this.operation = operation;
+			this.t1 = t1;
+			this.t2 = t2;
+		}
+
+		protected WAVLNode compute() {
+			return apply(operation, t1, t2);
+		}
+
+		/**
+		 * @pre t1 and t2 are disjoint subtrees, the nodes of both are reused for the result
+		 * @return the root of the result subtree (might be an external node)
+		 */
+		private static WAVLNode apply(SetOperation operation, WAVLNode t1, WAVLNode t2) {
+			if (t1.isExternalNode())
+				return operation == SetOperation.Union ? t2 : t1;
+			if (t2.isExternalNode())
+				return operation == SetOperation.Intersection ? t2 : t1;
+
+			boolean parallel = t1.size + t2.size > SEQUENTIAL_THRESHOLD; // before the split reuses the nodes
+			WAVLNode pivot, l1, r1, l2, r2;
+			boolean keepPivot;
+			if (operation == SetOperation.Difference) {
+				// split t1 by the root of t2, the root of t2 is dropped
+				WAVLNode[] parts = splitNodes(t1, t2.key);
+				l1 = parts[0];
+				r1 = parts[2];
+				l2 = t2.left;
+				r2 = t2.right;
+				pivot = null;
+				keepPivot = false;
+			} else {
+				// split t2 by the root of t1, an equal item of t2 is dropped
+				WAVLNode[] parts = splitNodes(t2, t1.key);
+				l2 = parts[0];
+				r2 = parts[2];
+				l1 = t1.left;
+				r1 = t1.right;
+				pivot = t1;
+				keepPivot = operation == SetOperation.Union || parts[1] != null;
+			}
+			l1.setParent(null);
+			r1.setParent(null);
+			l2.setParent(null);
+			r2.setParent(null);
+
+			WAVLNode left, right;
+			if (parallel) {
+				SetOperationTask leftTask = new SetOperationTask(operation, l1, l2);
+				leftTask.fork();
+				right = apply(operation, r1, r2);
+				left = leftTask.join();
+			} else {
+				left = apply(operation, l1, l2);
+				right = apply(operation, r1, r2);
+			}
+			if (keepPivot)
+				return joinNodes(left, pivot, right);
+			return concatNodes(left, right);
+		}
+	}
+
 	/**
 	 * Checks whether the node is a leaf or not
 	 * @return True if the node is a leaf, otherwise, Returns False
 	 */
 	public boolean isLeaf(WAVLNode node) {
-		return node.left == this.externalNode && node.right == this.externalNode;
+		return node.left.isExternalNode() && node.right.isExternalNode();
 	}
 	
 	/**
@@ -599,8 +2387,12 @@ public class WAVLTree {
 
 	/**
 	 * public class WAVLNode
+	 * 
+	 * A node does not refer to the tree which contains it, so nodes can be moved
+	 * between trees (see join and split). The methods which change the root of the
+	 * tree get the tree as a parameter.
 	 */
-	public class WAVLNode {
+	public static class WAVLNode {
 		
 
 		private WAVLNode left;
@@ -610,6 +2402,7 @@ public class WAVLTree {
 		private int key;
 		private String info;
 		private int size;
+		private long aggregate; // of the subtree, see WAVLTree.Augmentation
 		
 		/**
 		 * Constractor. Create a node with key and info
@@ -701,7 +2494,7 @@ public class WAVLTree {
          * @return True if the node is the root, otherwise, Returns False
          */
         private boolean isRoot() {
-            return this == getRoot();
+            return this.parent == null || this.parent.isExternalNode();
         }
         
         /**
@@ -753,22 +2546,6 @@ public class WAVLTree {
             this.setSubtreeSize(this.size - 1);
         }
         
-        /**
-         * Returns the minimum node
-         * @return the minimum node
-         */
-        private WAVLNode getMinNode() {
-            return min;
-        }
-        
-        /**
-         * Returns the maximum node
-         * @return the maximum node
-         */
-        private WAVLNode getMaxNode() {
-            return max;
-        }
-        
         /**
          * Returns the parent node
          * @return the parent node
@@ -840,9 +2617,6 @@ public class WAVLTree {
          */
         private WAVLNode goToNode(NodeDirection direction) {
             NodeDirection oppositeDirection = getOppositeDirection(direction);
-            if ((this == getMinNode() && direction == NodeDirection.Left) || (this == getMaxNode() && direction == NodeDirection.Right)) {
-                return null;
-            }
             
             if ( this.getChild(direction).isInnerNode() ) {
                 
@@ -859,22 +2633,23 @@ public class WAVLTree {
             else
             {
             	
-                // find the first node that is a left/right child
+                // find the first node that is a left/right child, null if "this" is the min/max
                 WAVLNode parentNode = this;
                 
-                while (direction == parentNode.getParentDirection()) {
+                while (!parentNode.isRoot() && direction == parentNode.getParentDirection()) {
                     parentNode = parentNode.parent;
                 }
                 
-                return parentNode.parent;
+                return parentNode.isRoot() ? null : parentNode.parent;
             }
         }
         
         /**
          * Switches "this" node with other node 
+         * @param tree - the tree which contains the nodes
          * @param other - the node to switch with
          */
-        private void switchNode(WAVLNode other) {
+        private void switchNode(WAVLTree tree, WAVLNode other) {
         	WAVLNode x = other;
         	WAVLNode xParent = other.getParent();
         	
@@ -882,20 +2657,21 @@ public class WAVLTree {
             WAVLNode zParent = z.getParent();
             
             x.rank = z.getRank();
-            NodeDirection zParentDirection = z.isRoot() ? null : z.getParentDirection();
+            boolean zIsRoot = z.isRoot();
+            NodeDirection zParentDirection = zIsRoot ? null : z.getParentDirection();
             
             if (z != xParent) {
             	WAVLNode rightChildx = x.getRight();
                 x.setChild(NodeDirection.Right, z.getRight());
                 x.setChild(NodeDirection.Left, z.getLeft());
                 z.setChild(NodeDirection.Right, rightChildx);
-                z.setChild(NodeDirection.Left, externalNode);
+                z.setChild(NodeDirection.Left, tree.externalNode);
                 xParent.setChild(NodeDirection.Left, z);
             }
             else
             {
             	WAVLNode xRight = x.getRight();
-                z.setChild(NodeDirection.Right, externalNode);
+                z.setChild(NodeDirection.Right, tree.externalNode);
                 x.setChild(NodeDirection.Right, z);
                 x.setChild(NodeDirection.Left, z.getLeft());
                 z.setChild(NodeDirection.Right, xRight);
@@ -903,14 +2679,14 @@ public class WAVLTree {
             
 
             
-            if (!this.isRoot())
+            if (!zIsRoot)
             {
             	zParent.setChild(zParentDirection, x);
             }
             else
             {
             	x.setParent(null);
-                setRoot(x);
+                tree.setRoot(x);
             }
             
             while (x != z.parent) {
@@ -921,10 +2697,11 @@ public class WAVLTree {
         
         /**
          * Deletes node with key "key"
+         * @param tree - the tree which contains the node
          * @param key - the key to delete
          * @return number of rebalances
          */
-        private int delete(int key) {
+        private int delete(WAVLTree tree, int key) {
             NodeDirection direction;
             if (this.key == key)
             {
@@ -933,12 +2710,12 @@ public class WAVLTree {
                 if (this.isLeaf()) {
                 	// Deleting a leaf
                     if (this.isRoot()) {
-                        setRoot(externalNode);
+                        tree.setRoot(tree.externalNode);
                         return 0;
                     } else {
                         WAVLNode parentNode = this.getParent();
-                        parentNode.setChild(this.getParentDirection(), externalNode);
-                        return parentNode.deletionBalance();
+                        parentNode.setChild(this.getParentDirection(), tree.externalNode);
+                        return parentNode.deletionBalance(tree);
                     }
                 }
                 else if (this.getLeft().isExternalNode() || this.getRight().isExternalNode())
@@ -946,12 +2723,12 @@ public class WAVLTree {
                 	// Deleting an unary node
                     WAVLNode child = this.getRight().isExternalNode() ? this.getLeft() : this.getRight();
                     if (this.isRoot()) {
-                        setRoot(child);
-                        child.parent = externalNode;
+                        tree.setRoot(child);
+                        child.setParent(null);
                         return 0;
                     } else {
                         this.getParent().setChild(this.getParentDirection(), child);
-                        return child.getParent().deletionBalance();
+                        return child.getParent().deletionBalance(tree);
                     }
                 }
                 else
@@ -959,15 +2736,15 @@ public class WAVLTree {
                 	// Switch with successor and delete
                     WAVLNode successor = this.successor();
                     WAVLNode successorParent = successor.getParent();
-                    this.switchNode(successor);
+                    this.switchNode(tree, successor);
                     if (this != successorParent) {
                         successorParent.setChild(NodeDirection.Left, this.getRight());
                         successor.updateSubtreeSize();
-                        return successorParent.deletionBalance();
+                        return successorParent.deletionBalance(tree);
                     } else {
                         successor.setChild(NodeDirection.Right, this.getRight());
                         successor.updateSubtreeSize();
-                        return successor.deletionBalance();
+                        return successor.deletionBalance(tree);
                     }
                 }
             }
@@ -993,12 +2770,17 @@ public class WAVLTree {
             {
                 // find k in tree recursively
                 this.decreaseSubtreeSize();
-                return this.getChild(direction).delete(key);
+                return this.getChild(direction).delete(tree, key);
             }
             
         }
         
-        private int deletionBalance() {
+        /**
+         * Rebalances the tree bottom up after a deletion below "this"
+         * @param tree - the tree which contains the node
+         * @return number of rebalances
+         */
+        private int deletionBalance(WAVLTree tree) {
             int rightDifference = this.getRankDifference(NodeDirection.Right);
             int leftDifference = this.getRankDifference(NodeDirection.Left);
             
@@ -1007,14 +2789,20 @@ public class WAVLTree {
                 || (leftDifference == 1 && rightDifference == 2) //
                 || (leftDifference == 1 && rightDifference == 1)) {
                 // stop recursion if the rank differences are good
+                if (tree.metrics != null) {
+                    tree.metrics.deletionCase(WAVLTreeMetrics.DELETION_NO_VIOLATION);
+                }
                 return 0;
             }
             else if (leftDifference == 2 && rightDifference == 2)
             {
             	// slide 52 middle case
             	// leaf with 2,2
+                if (tree.metrics != null) {
+                    tree.metrics.deletionCase(WAVLTreeMetrics.DELETION_LEAF_DEMOTION);
+                }
                 this.demotion();
-                return 1 + (this.isRoot() ? 0 : this.getParent().deletionBalance());
+                return 1 + (this.isRoot() ? 0 : this.getParent().deletionBalance(tree));
             }
             else
             {
@@ -1022,12 +2810,15 @@ public class WAVLTree {
             	
                 if ((leftDifference == 2 && rightDifference == 3) || (leftDifference == 3 && rightDifference == 2)) {
                     // Case 1 slide 55
+                    if (tree.metrics != null) {
+                        tree.metrics.deletionCase(WAVLTreeMetrics.DELETION_DEMOTION);
+                    }
                     this.demotion();
                     
                     if (this.isRoot()) {
                         return 1;
                     } else {
-                        return 1 + this.getParent().deletionBalance();
+                        return 1 + this.getParent().deletionBalance(tree);
                     }
                 } else {
                     
@@ -1039,18 +2830,24 @@ public class WAVLTree {
                     
                     if (leftChildDifference == 2 && rightChildDifference == 2) {
                     	// Case 2 Slide 56
+                        if (tree.metrics != null) {
+                            tree.metrics.deletionCase(WAVLTreeMetrics.DELETION_DOUBLE_DEMOTION);
+                        }
                         this.demotion();
                         childNode.demotion();
                         
                         if (this.isRoot()) {
                             return 2;
                         } else {
-                            return 2 + this.parent.deletionBalance();
+                            return 2 + this.parent.deletionBalance(tree);
                         }
                         
                     } else if ((leftChildDifference == 1 || leftChildDifference == 2) && rightChildDifference == 1) {
                     	// Case 3 Slide 57
-                        this.rotate(oppositeDirection);
+                        if (tree.metrics != null) {
+                            tree.metrics.deletionCase(WAVLTreeMetrics.DELETION_SINGLE_ROTATION);
+                        }
+                        this.rotate(tree, oppositeDirection);
                         
                         childNode.promotion();
                         this.demotion();
@@ -1062,6 +2859,9 @@ public class WAVLTree {
                         return 3;
                     } else {
                     	// Case 4 slide 58
+                        if (tree.metrics != null) {
+                            tree.metrics.deletionCase(WAVLTreeMetrics.DELETION_DOUBLE_ROTATION);
+                        }
                         this.demotion();
                         this.demotion();
                         childNode.demotion();
@@ -1069,9 +2869,9 @@ public class WAVLTree {
                         childNode.getChild(oppositeDirection).promotion();
                         childNode.getChild(oppositeDirection).promotion();
                         
-                        childNode.rotate(direction);
+                        childNode.rotate(tree, direction);
                         
-                        this.rotate(oppositeDirection);
+                        this.rotate(tree, oppositeDirection);
                         
                         return 5;
                     }
@@ -1111,9 +2911,10 @@ public class WAVLTree {
         
         /**
          * Rotates the node in direction "direction"
+         * @param tree - the tree which contains the node
          * @param direction
          */
-        private void rotate(NodeDirection direction) {
+        private void rotate(WAVLTree tree, NodeDirection direction) {
             NodeDirection oppositeDirection = getOppositeDirection(direction);
             
             WAVLNode z = this;
@@ -1124,7 +2925,7 @@ public class WAVLTree {
             if (!z.isRoot()) {
             	z.getParent().setChild(this.getParentDirection(), x);
             } else {
-            	setRoot(x);
+            	tree.setRoot(x);
                 x.setParent(null);
             }
             
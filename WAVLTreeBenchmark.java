@@ -0,0 +1,534 @@
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ *
+ * WAVLTreeBenchmark
+ *
+ * A quick, self contained smoke run for WAVLTree, measuring throughput (ops/sec) and
+ * allocation rate (bytes/op) of insert, delete, search, select and mixed read/write
+ * workloads, next to java.util.TreeMap as a baseline. It runs all the implementations in
+ * one JVM and times every iteration with a single pass, so it only shows gross changes:
+ * perf changes are gated by the JMH benchmarks of the jmh subproject (see README.md),
+ * which fork a JVM per implementation.
+ *
+ * Usage:
+ * java WAVLTreeBenchmark [-sizes 1000,10000,...] [-workloads sequential,random,zipf]
+ *                        [-ops insert,delete,search,select,mixed50,mixed90,mixed99]
+ *                        [-impls wavl,wavllegacy,array,offheap,treemap] [-warmup 3] [-iterations 5] [-seed 42]
+ *
+ * wavllegacy is WAVLTree with the original recursive insert/delete (see
+ * WAVLTree.setLegacyEngine), for comparing it with the default iterative engine.
+ *
+ * Every measured iteration runs on a freshly prepared structure, so the numbers
+ * of different iterations are comparable. Each result line reports the mean and
+ * the best iteration, so a perf change should be compared on both.
+ *
+ */
+
+public class WAVLTreeBenchmark {
+
+	public enum Workload {
+		Sequential, Random, Zipf
+	}
+
+	public enum Implementation {
+		Wavl, WavlLegacy, Array, OffHeap, TreeMap
+	}
+
+	private static final double ZIPF_SKEW = 0.99;
+
+	/**
+	 * Blackhole for results, so the JIT can not drop the measured calls
+	 */
+	private static volatile long sink;
+
+	private long[] sizes = {1000, 10000, 100000, 1000000};
+	private Workload[] workloads = Workload.values();
+	private String[] operations = {"insert", "delete", "search", "select", "mixed50", "mixed90", "mixed99"};
+	private Implementation[] implementations = Implementation.values();
+	private int warmupIterations = 3;
+	private int measuredIterations = 5;
+	private long seed = 42;
+
+	public static void main(String[] args) {
+		WAVLTreeBenchmark benchmark = new WAVLTreeBenchmark();
+		benchmark.parseArguments(args);
+		benchmark.run();
+	}
+
+	/**
+	 * Parses the command line options, see the class comment for the list of options
+	 * @param args - the command line arguments
+	 */
+	private void parseArguments(String[] args) {
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			String value = args[i + 1];
+			switch (args[i]) {
+			case "-sizes":
+				String[] parts = value.split(",");
+				sizes = new long[parts.length];
+				for (int j = 0; j < parts.length; j++)
+					sizes[j] = (long) Double.parseDouble(parts[j]); // allows 1e7
+				break;
+			case "-workloads":
+				String[] names = value.split(",");
+				workloads = new Workload[names.length];
+				for (int j = 0; j < names.length; j++)
+					workloads[j] = Workload.valueOf(capitalize(names[j]));
+				break;
+			case "-ops":
+				operations = value.split(",");
+				break;
+			case "-impls":
+				String[] impls = value.split(",");
+				implementations = new Implementation[impls.length];
+				for (int j = 0; j < impls.length; j++)
+					implementations[j] = parseImplementation(impls[j]);
+				break;
+			case "-warmup":
+				warmupIterations = Integer.parseInt(value);
+				break;
+			case "-iterations":
+				measuredIterations = Integer.parseInt(value);
+				break;
+			case "-seed":
+				seed = Long.parseLong(value);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+		}
+	}
+
+	private static Implementation parseImplementation(String name) {
+		for (Implementation implementation : Implementation.values())
+			if (implementation.name().equalsIgnoreCase(name))
+				return implementation;
+		throw new IllegalArgumentException("Unknown implementation " + name);
+	}
+
+	private static String capitalize(String s) {
+		return Character.toUpperCase(s.charAt(0)) + s.substring(1).toLowerCase();
+	}
+
+	/**
+	 * Runs every combination of size, workload, operation and implementation
+	 */
+	private void run() {
+		System.out.printf("%-10s %-10s %-10s %-10s %14s %14s %12s%n",
+				"impl", "workload", "op", "size", "mean ops/s", "best ops/s", "bytes/op");
+		for (long size : sizes) {
+			for (Workload workload : workloads) {
+				KeySet keySet = new KeySet((int) size, workload, seed);
+				for (String operation : operations) {
+					for (Implementation implementation : implementations) {
+						if (implementation == Implementation.TreeMap && operation.equals("select"))
+							continue; // TreeMap has no order statistics
+						measure(implementation, workload, operation, keySet);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Runs the warmup and measured iterations of one benchmark and prints a result line
+	 */
+	private void measure(Implementation implementation, Workload workload, String operation, KeySet keySet) {
+		for (int i = 0; i < warmupIterations; i++)
+			runIteration(implementation, operation, keySet);
+
+		double totalOpsPerSec = 0, bestOpsPerSec = 0;
+		long totalBytes = 0, totalOps = 0;
+		for (int i = 0; i < measuredIterations; i++) {
+			IterationResult res = runIteration(implementation, operation, keySet);
+			double opsPerSec = res.operations / (res.nanos / 1e9);
+			totalOpsPerSec += opsPerSec;
+			bestOpsPerSec = Math.max(bestOpsPerSec, opsPerSec);
+			totalBytes += res.allocatedBytes;
+			totalOps += res.operations;
+		}
+		System.out.printf("%-10s %-10s %-10s %-10d %14.0f %14.0f %12.1f%n",
+				implementation, workload, operation, keySet.size(),
+				totalOpsPerSec / measuredIterations, bestOpsPerSec,
+				totalOps == 0 ? 0.0 : (double) totalBytes / totalOps);
+	}
+
+	/**
+	 * Prepares a structure for the operation and measures one pass of it
+	 * @return the duration, number of operations and allocated bytes of the pass
+	 */
+	private IterationResult runIteration(Implementation implementation, String operation, KeySet keySet) {
+		Target target = newTarget(implementation);
+		int readPercent = -1;
+		if (operation.startsWith("mixed"))
+			readPercent = Integer.parseInt(operation.substring("mixed".length()));
+		else if (!operation.equals("insert"))
+			target.load(keySet.buildOrder, keySet.infos);
+		if (readPercent >= 0) {
+			// mixed workloads run on a half full tree, so inserts and deletes both hit
+			target.load(keySet.evenKeys, keySet.infos);
+		}
+
+		System.gc();
+		long startBytes = allocatedBytes();
+		long start = System.nanoTime();
+		long acc = 0;
+		int n = keySet.size();
+		switch (operation) {
+		case "insert":
+			acc = target.insertAll(keySet.buildOrder, keySet.infos);
+			break;
+		case "delete":
+			acc = target.deleteAll(keySet.deleteOrder);
+			break;
+		case "search":
+			acc = target.searchAll(keySet.accessOrder);
+			break;
+		case "select":
+			acc = target.selectAll(keySet.accessRanks);
+			break;
+		default:
+			acc = target.mixed(keySet.accessOrder, keySet.infos, readPercent);
+			break;
+		}
+		long nanos = System.nanoTime() - start;
+		long bytes = allocatedBytes() - startBytes;
+		sink += acc;
+		return new IterationResult(nanos, n, bytes);
+	}
+
+	private static Target newTarget(Implementation implementation) {
+		switch (implementation) {
+		case Array:
+			return new IndexedTarget(new WAVLArrayTree());
+		case OffHeap:
+			return new IndexedTarget(new WAVLOffHeapTree());
+		case TreeMap:
+			return new TreeMapTarget();
+		case WavlLegacy:
+			return new WavlTarget(true);
+		default:
+			return new WavlTarget(false);
+		}
+	}
+
+	/**
+	 * Returns the number of bytes allocated so far by the current thread, or 0 if the
+	 * JVM does not support allocation accounting
+	 */
+	private static long allocatedBytes() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return 0;
+	}
+
+	private static final class IterationResult {
+		private final long nanos;
+		private final long operations;
+		private final long allocatedBytes;
+
+		private IterationResult(long nanos, long operations, long allocatedBytes) {
+			this.nanos = nanos;
+			this.operations = operations;
+			this.allocatedBytes = allocatedBytes;
+		}
+	}
+
+	/**
+	 * The keys and access sequences of one (size, workload) pair. The key universe is
+	 * always n distinct keys, only the order in which they are touched depends on the workload.
+	 */
+	private static final class KeySet {
+		private final int[] buildOrder; // the keys in insertion order
+		private final int[] evenKeys; // every second key of the universe, for mixed workloads
+		private final int[] accessOrder; // keys touched by search/mixed
+		private final int[] deleteOrder; // the keys in the order delete touches them, each once
+		private final int[] accessRanks; // 1-based ranks touched by select
+		private final String[] infos; // infos by position in buildOrder
+
+		private KeySet(int n, Workload workload, long seed) {
+			Random rnd = new Random(seed);
+			int[] universe = new int[n];
+			for (int i = 0; i < n; i++)
+				universe[i] = workload == Workload.Sequential ? i : (int) (i * 0x9E3779B1L); // odd multiplier --> distinct keys
+
+			buildOrder = universe.clone();
+			if (workload != Workload.Sequential)
+				shuffle(buildOrder, rnd);
+
+			evenKeys = new int[(n + 1) / 2];
+			for (int i = 0; i < evenKeys.length; i++)
+				evenKeys[i] = buildOrder[2 * i];
+
+			accessOrder = new int[n];
+			accessRanks = new int[n];
+			ZipfGenerator zipf = workload == Workload.Zipf ? new ZipfGenerator(n, ZIPF_SKEW, rnd) : null;
+			int[] sorted = universe.clone();
+			java.util.Arrays.sort(sorted);
+			for (int i = 0; i < n; i++) {
+				int index;
+				if (workload == Workload.Sequential)
+					index = i;
+				else if (workload == Workload.Random)
+					index = rnd.nextInt(n);
+				else
+					index = zipf.next();
+				accessOrder[i] = workload == Workload.Sequential ? sorted[index] : universe[index];
+				accessRanks[i] = index + 1;
+			}
+			// deleting picks with repetition would mostly miss, so delete every key once: the
+			// hot keys first for Zipf, in the order of their first access
+			deleteOrder = new int[n];
+			if (workload == Workload.Sequential) {
+				System.arraycopy(sorted, 0, deleteOrder, 0, n);
+			} else {
+				java.util.HashSet<Integer> seen = new java.util.HashSet<>();
+				int m = 0;
+				if (workload == Workload.Zipf) {
+					for (int k : accessOrder)
+						if (seen.add(k))
+							deleteOrder[m++] = k;
+				}
+				int[] rest = universe.clone();
+				shuffle(rest, rnd);
+				for (int k : rest)
+					if (!seen.contains(k))
+						deleteOrder[m++] = k;
+			}
+
+			infos = new String[n];
+			for (int i = 0; i < n; i++)
+				infos[i] = Integer.toString(buildOrder[i]);
+		}
+
+		private int size() {
+			return buildOrder.length;
+		}
+
+		private static void shuffle(int[] arr, Random rnd) {
+			for (int i = arr.length - 1; i > 0; i--) {
+				int j = rnd.nextInt(i + 1);
+				int tmp = arr[i];
+				arr[i] = arr[j];
+				arr[j] = tmp;
+			}
+		}
+	}
+
+	/**
+	 * Zipfian index generator over [0,n) (Gray et al. '94, as used by YCSB).
+	 * Index 0 is the hottest item.
+	 */
+	private static final class ZipfGenerator {
+		private final int n;
+		private final double theta, alpha, zetan, eta;
+		private final Random rnd;
+
+		private ZipfGenerator(int n, double theta, Random rnd) {
+			this.n = n;
+			this.theta = theta;
+			this.rnd = rnd;
+			double zeta2 = 1 + Math.pow(0.5, theta);
+			double z = 0;
+			for (int i = 1; i <= n; i++)
+				z += 1 / Math.pow(i, theta);
+			this.zetan = z;
+			this.alpha = 1 / (1 - theta);
+			this.eta = (1 - Math.pow(2.0 / n, 1 - theta)) / (1 - zeta2 / zetan);
+		}
+
+		private int next() {
+			double u = rnd.nextDouble();
+			double uz = u * zetan;
+			if (uz < 1)
+				return 0;
+			if (uz < 1 + Math.pow(0.5, theta))
+				return Math.min(1, n - 1);
+			return Math.min(n - 1, (int) (n * Math.pow(eta * u - eta + 1, alpha)));
+		}
+	}
+
+	/**
+	 * A structure under test. Every method returns an accumulated value of its
+	 * results which is fed to the blackhole.
+	 */
+	private interface Target {
+		void load(int[] keys, String[] infos);
+
+		long insertAll(int[] keys, String[] infos);
+
+		long deleteAll(int[] keys);
+
+		long searchAll(int[] keys);
+
+		long selectAll(int[] ranks);
+
+		long mixed(int[] keys, String[] infos, int readPercent);
+	}
+
+	private static final class WavlTarget implements Target {
+		private final WAVLTree tree = new WAVLTree();
+
+		WavlTarget(boolean legacy) {
+			tree.setLegacyEngine(legacy);
+		}
+
+		public void load(int[] keys, String[] infos) {
+			for (int i = 0; i < keys.length; i++)
+				tree.insert(keys[i], infos[i]);
+		}
+
+		public long insertAll(int[] keys, String[] infos) {
+			long acc = 0;
+			for (int i = 0; i < keys.length; i++)
+				acc += tree.insert(keys[i], infos[i]);
+			return acc;
+		}
+
+		public long deleteAll(int[] keys) {
+			long acc = 0;
+			for (int k : keys)
+				acc += tree.delete(k);
+			return acc;
+		}
+
+		public long searchAll(int[] keys) {
+			long acc = 0;
+			for (int k : keys)
+				acc += tree.search(k) != null ? 1 : 0;
+			return acc;
+		}
+
+		public long selectAll(int[] ranks) {
+			long acc = 0;
+			for (int r : ranks)
+				acc += tree.select(r) != null ? 1 : 0;
+			return acc;
+		}
+
+		public long mixed(int[] keys, String[] infos, int readPercent) {
+			long acc = 0;
+			for (int i = 0; i < keys.length; i++) {
+				int k = keys[i];
+				if ((i * 37) % 100 < readPercent)
+					acc += tree.search(k) != null ? 1 : 0;
+				else if ((i & 1) == 0)
+					acc += tree.insert(k, infos[i]);
+				else
+					acc += tree.delete(k);
+			}
+			return acc;
+		}
+	}
+
+	/**
+	 * A WAVLIndexedTree under test, WAVLArrayTree or WAVLOffHeapTree
+	 */
+	private static final class IndexedTarget implements Target {
+		private final WAVLIndexedTree tree;
+
+		IndexedTarget(WAVLIndexedTree tree) {
+			this.tree = tree;
+		}
+
+		public void load(int[] keys, String[] infos) {
+			for (int i = 0; i < keys.length; i++)
+				tree.insert(keys[i], infos[i]);
+		}
+
+		public long insertAll(int[] keys, String[] infos) {
+			long acc = 0;
+			for (int i = 0; i < keys.length; i++)
+				acc += tree.insert(keys[i], infos[i]);
+			return acc;
+		}
+
+		public long deleteAll(int[] keys) {
+			long acc = 0;
+			for (int k : keys)
+				acc += tree.delete(k);
+			return acc;
+		}
+
+		public long searchAll(int[] keys) {
+			long acc = 0;
+			for (int k : keys)
+				acc += tree.search(k) != null ? 1 : 0;
+			return acc;
+		}
+
+		public long selectAll(int[] ranks) {
+			long acc = 0;
+			for (int r : ranks)
+				acc += tree.select(r) != null ? 1 : 0;
+			return acc;
+		}
+
+		public long mixed(int[] keys, String[] infos, int readPercent) {
+			long acc = 0;
+			for (int i = 0; i < keys.length; i++) {
+				int k = keys[i];
+				if ((i * 37) % 100 < readPercent)
+					acc += tree.search(k) != null ? 1 : 0;
+				else if ((i & 1) == 0)
+					acc += tree.insert(k, infos[i]);
+				else
+					acc += tree.delete(k);
+			}
+			return acc;
+		}
+	}
+
+	private static final class TreeMapTarget implements Target {
+		private final TreeMap<Integer, String> map = new TreeMap<>();
+
+		public void load(int[] keys, String[] infos) {
+			for (int i = 0; i < keys.length; i++)
+				map.putIfAbsent(keys[i], infos[i]);
+		}
+
+		public long insertAll(int[] keys, String[] infos) {
+			long acc = 0;
+			for (int i = 0; i < keys.length; i++)
+				acc += map.putIfAbsent(keys[i], infos[i]) == null ? 1 : 0;
+			return acc;
+		}
+
+		public long deleteAll(int[] keys) {
+			long acc = 0;
+			for (int k : keys)
+				acc += map.remove(k) != null ? 1 : 0;
+			return acc;
+		}
+
+		public long searchAll(int[] keys) {
+			long acc = 0;
+			for (int k : keys)
+				acc += map.get(k) != null ? 1 : 0;
+			return acc;
+		}
+
+		public long selectAll(int[] ranks) {
+			throw new UnsupportedOperationException("TreeMap has no select");
+		}
+
+		public long mixed(int[] keys, String[] infos, int readPercent) {
+			long acc = 0;
+			for (int i = 0; i < keys.length; i++) {
+				int k = keys[i];
+				if ((i * 37) % 100 < readPercent)
+					acc += map.get(k) != null ? 1 : 0;
+				else if ((i & 1) == 0)
+					acc += map.putIfAbsent(k, infos[i]) == null ? 1 : 0;
+				else
+					acc += map.remove(k) != null ? 1 : 0;
+			}
+			return acc;
+		}
+	}
+}
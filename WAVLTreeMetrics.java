@@ -0,0 +1,221 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ *
+ * WAVLTreeMetrics
+ *
+ * Counters of the rebalancing and the shape of a WAVLTree, enabled by
+ * WAVLTree.enableMetrics. A tree without metrics only pays a null check per operation.
+ * The counters are LongAdders, so they can be read (or exported through JMX, see
+ * register) while the tree is in use.
+ *
+ * insertionCases[c] counts the balancing cases of WAVLTree.BalancingCase (slide 23),
+ * after the initial insertion case A (slide 18) promoted the parent:
+ * 0 - the parent became 1,1, 1 - promotion, 2 - single rotation, 3 - double rotation,
+ * 4 - the parent became 2,1.
+ *
+ * deletionCases[c] counts the steps of the deletion rebalancing (slides 52-58):
+ * 0 - no violation, 1 - demotion of a 2,2 leaf, 2 - demotion of a 3,2 node (case 1),
+ * 3 - double demotion (case 2), 4 - single rotation (case 3), 5 - double rotation (case 4).
+ *
+ * depthHistogram[d] counts the searches which ended at depth d and the insertions which
+ * placed their item at depth d (the root is at depth 0). The depth is counted during the
+ * descent from the root. A finger search (see WAVLTree.setFingerSearch) also climbs from
+ * the ancestor it descended from to the root, which it does only when metrics are
+ * enabled.
+ *
+ */
+
+public class WAVLTreeMetrics implements WAVLTreeMetricsMBean {
+
+	static final int INSERTION_CASES = 5;
+	static final int DELETION_CASES = 6;
+	static final int MAX_DEPTH = 64; // a WAVL tree of n nodes has depth <= 2log(n)
+
+	static final int DELETION_NO_VIOLATION = 0;
+	static final int DELETION_LEAF_DEMOTION = 1;
+	static final int DELETION_DEMOTION = 2;
+	static final int DELETION_DOUBLE_DEMOTION = 3;
+	static final int DELETION_SINGLE_ROTATION = 4;
+	static final int DELETION_DOUBLE_ROTATION = 5;
+
+	private final WAVLTree tree;
+	private final LongAdder insertions = new LongAdder();
+	private final LongAdder deletions = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder rebalancingOperations = new LongAdder();
+	private final LongAdder initialCaseA = new LongAdder();
+	private final LongAdder initialCaseB = new LongAdder();
+	private final LongAdder[] insertionCases = newAdders(INSERTION_CASES);
+	private final LongAdder[] deletionCases = newAdders(DELETION_CASES);
+	private final LongAdder[] depthHistogram = newAdders(MAX_DEPTH);
+
+	/**
+	 * Constractor. Initializing the metrics of tree
+	 * @param tree - the tree whose shape is reported (size and root rank)
+	 */
+	WAVLTreeMetrics(WAVLTree tree) {
+		this.tree = tree;
+	}
+
+	private static LongAdder[] newAdders(int n) {
+		LongAdder[] adders = new LongAdder[n];
+		for (int i = 0; i < n; i++)
+			adders[i] = new LongAdder();
+		return adders;
+	}
+
+	private static long[] sums(LongAdder[] adders) {
+		long[] res = new long[adders.length];
+		for (int i = 0; i < adders.length; i++)
+			res[i] = adders[i].sum();
+		return res;
+	}
+
+	/**
+	 * Records the result of an insert
+	 * @param result - the return value of insert, -1 for an existing key
+	 */
+	void insertion(int result) {
+		if (result < 0) {
+			misses.increment();
+			return;
+		}
+		insertions.increment();
+		rebalancingOperations.add(result);
+	}
+
+	/**
+	 * Records the result of a delete
+	 * @param result - the return value of delete, -1 for a missing key
+	 */
+	void deletion(int result) {
+		if (result < 0) {
+			misses.increment();
+			return;
+		}
+		deletions.increment();
+		rebalancingOperations.add(result);
+	}
+
+	/**
+	 * Records the initial insertion case
+	 * @param caseA - true for case A (the parent was a leaf), false for case B
+	 */
+	void initialInsertionCase(boolean caseA) {
+		(caseA ? initialCaseA : initialCaseB).increment();
+	}
+
+	void insertionCase(int c) {
+		insertionCases[c].increment();
+	}
+
+	void deletionCase(int c) {
+		deletionCases[c].increment();
+	}
+
+	/**
+	 * Records the depth of a node reached by a search or an insertion
+	 * @param depth - the depth of the node, the root is at depth 0
+	 */
+	void depth(int depth) {
+		depthHistogram[Math.min(depth, MAX_DEPTH - 1)].increment();
+	}
+
+	/**
+	 * Registers the metrics in the platform MBean server
+	 * @param name - the JMX object name, for example "wavl:type=WAVLTree,name=index"
+	 * @return the registered name
+	 */
+	public ObjectName register(String name) throws JMException {
+		ObjectName objectName = new ObjectName(name);
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+		return objectName;
+	}
+
+	/**
+	 * Returns the number of successful insertions
+	 */
+	public long getInsertions() {
+		return insertions.sum();
+	}
+
+	/**
+	 * Returns the number of successful deletions
+	 */
+	public long getDeletions() {
+		return deletions.sum();
+	}
+
+	/**
+	 * Returns the number of insertions of existing keys and deletions of missing keys
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * Returns the sum of the rebalancing counts returned by insert and delete
+	 */
+	public long getRebalancingOperations() {
+		return rebalancingOperations.sum();
+	}
+
+	public long getInitialInsertionCaseA() {
+		return initialCaseA.sum();
+	}
+
+	public long getInitialInsertionCaseB() {
+		return initialCaseB.sum();
+	}
+
+	public long[] getInsertionCases() {
+		return sums(insertionCases);
+	}
+
+	public long[] getDeletionCases() {
+		return sums(deletionCases);
+	}
+
+	public long[] getDepthHistogram() {
+		return sums(depthHistogram);
+	}
+
+	/**
+	 * Returns the current number of items in the tree
+	 */
+	public int getSize() {
+		return tree.size();
+	}
+
+	/**
+	 * Returns the current rank of the root, which approximates the height of the tree
+	 * from above: height <= rank <= 2 * height (and rank <= 2log(n)). The exact height
+	 * would take a walk over the whole tree.
+	 */
+	public int getRootRank() {
+		return tree.getRoot().getRank();
+	}
+
+	/**
+	 * Resets all counters
+	 */
+	public void reset() {
+		insertions.reset();
+		deletions.reset();
+		misses.reset();
+		rebalancingOperations.reset();
+		initialCaseA.reset();
+		initialCaseB.reset();
+		for (LongAdder adder : insertionCases)
+			adder.reset();
+		for (LongAdder adder : deletionCases)
+			adder.reset();
+		for (LongAdder adder : depthHistogram)
+			adder.reset();
+	}
+}
@@ -0,0 +1,38 @@
+/**
+ *
+ * WAVLTreeMetricsMBean
+ *
+ * The JMX view of WAVLTreeMetrics, see there for the meaning of the attributes.
+ *
+ */
+
+public interface WAVLTreeMetricsMBean {
+
+	long getInsertions();
+
+	long getDeletions();
+
+	long getMisses();
+
+	long getRebalancingOperations();
+
+	long getInitialInsertionCaseA();
+
+	long getInitialInsertionCaseB();
+
+	long[] getInsertionCases();
+
+	long[] getDeletionCases();
+
+	long[] getDepthHistogram();
+
+	int getSize();
+
+	/**
+	 * The rank of the root, the approximation of the current height of the tree: the
+	 * height is between rank / 2 and rank
+	 */
+	int getRootRank();
+
+	void reset();
+}
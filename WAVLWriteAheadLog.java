@@ -0,0 +1,353 @@
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ *
+ * WAVLWriteAheadLog
+ *
+ * A durable WAVLTree: a directory with a snapshot of the tree (see WAVLSnapshot) and an
+ * append-only log of the insertions and deletions made since the snapshot. open recovers
+ * the tree by loading the snapshot and replaying the log onto it.
+ *
+ * The record of a mutation is buffered before the tree is changed, so a failure to write
+ * the log leaves the tree unchanged. The buffer is written to the log when it fills up,
+ * and the log is forced to the disk (group commit) every groupCommitSize mutations, or
+ * by commit. So a crash loses at most the mutations since
+ * the last commit, and a single fsync is paid for a whole group. compact writes a new
+ * snapshot and empties the log, and commit compacts by itself once the log is larger
+ * than compactionBytes.
+ *
+ * Log format (big endian): magic (int), version (int), and records of payload length
+ * (int), CRC32 of the payload (int) and the payload: the operation (byte, 1 - insert,
+ * 2 - delete), the key (int) and for an insert the info length (int, -1 for a null info)
+ * followed by the UTF-8 bytes. Recovery stops at the first torn or corrupt record and
+ * cuts the log there.
+ *
+ * Replaying the log onto the snapshot it was compacted into gives the same tree (a key
+ * ends with the item of its last deletion's following insertion, or the item it had), so
+ * a crash between writing a snapshot and emptying the log is harmless.
+ *
+ */
+
+public class WAVLWriteAheadLog implements Closeable {
+
+	private static final int MAGIC = 0x57414C4C; // "WALL"
+	private static final int VERSION = 1;
+	private static final int HEADER_BYTES = 8;
+	private static final int RECORD_HEADER_BYTES = 8;
+	private static final byte INSERT = 1;
+	private static final byte DELETE = 2;
+
+	public static final int DEFAULT_GROUP_COMMIT_SIZE = 1024;
+	public static final long DEFAULT_COMPACTION_BYTES = 64L << 20;
+
+	private static final String SNAPSHOT_FILE = "snapshot";
+	private static final String LOG_FILE = "wal";
+
+	private final Path directory;
+	private final WAVLTree tree;
+	private final FileChannel log;
+	private final int groupCommitSize;
+	private final long compactionBytes;
+
+	private final ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+	private ByteBuffer oversized = null; // a record larger than buffer, written before the buffer
+	private final CRC32 crc = new CRC32();
+	private long logPosition; // the end of the written records
+	private int uncommitted = 0; // mutations since the last force
+
+	private WAVLWriteAheadLog(Path directory, WAVLTree tree, FileChannel log, long logPosition, int groupCommitSize,
+			long compactionBytes) {
+		this.directory = directory;
+		this.tree = tree;
+		this.log = log;
+		this.logPosition = logPosition;
+		this.groupCommitSize = groupCommitSize;
+		this.compactionBytes = compactionBytes;
+	}
+
+	/**
+	 * Opens a durable tree in directory with the default group commit and compaction sizes,
+	 * see open(Path, int, long)
+	 */
+	public static WAVLWriteAheadLog open(Path directory) throws IOException {
+		return open(directory, DEFAULT_GROUP_COMMIT_SIZE, DEFAULT_COMPACTION_BYTES);
+	}
+
+	/**
+	 * Opens a durable tree in directory, creating it if needed, and recovers the tree from
+	 * the snapshot and the log
+	 * @param directory - the directory of the snapshot and the log
+	 * @param groupCommitSize - the number of mutations between two forces of the log
+	 * @param compactionBytes - the log size from which commit compacts
+	 * @return the durable tree
+	 */
+	public static WAVLWriteAheadLog open(Path directory, int groupCommitSize, long compactionBytes) throws IOException {
+		if (groupCommitSize < 1)
+			throw new IllegalArgumentException("groupCommitSize must be positive");
+		Files.createDirectories(directory);
+		Path snapshot = directory.resolve(SNAPSHOT_FILE);
+		WAVLTree tree = Files.exists(snapshot) ? WAVLSnapshot.open(snapshot).toTree() : new WAVLTree();
+
+		FileChannel log = FileChannel.open(directory.resolve(LOG_FILE), StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			long end;
+			if (log.size() < HEADER_BYTES) {
+				end = writeHeader(log);
+			} else {
+				end = replay(log, tree);
+				if (end < log.size()) {
+					// cut the torn tail, so new records follow the last valid one
+					log.truncate(end);
+					log.force(true);
+				}
+			}
+			return new WAVLWriteAheadLog(directory, tree, log, end, groupCommitSize, compactionBytes);
+		} catch (IOException | RuntimeException e) {
+			log.close();
+			throw e;
+		}
+	}
+
+	private static long writeHeader(FileChannel log) throws IOException {
+		log.truncate(0);
+		ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+		header.putInt(MAGIC).putInt(VERSION).flip();
+		long position = 0;
+		while (header.hasRemaining())
+			position += log.write(header, position);
+		log.force(true);
+		return position;
+	}
+
+	/**
+	 * Applies the valid records of the log to tree
+	 * @return the position after the last valid record
+	 */
+	private static long replay(FileChannel log, WAVLTree tree) throws IOException {
+		log.position(0);
+		DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(log), 1 << 16));
+		if (in.readInt() != MAGIC)
+			throw new IOException("Not a WAVL write-ahead log");
+		int version = in.readInt();
+		if (version != VERSION)
+			throw new IOException("Unsupported WAVL write-ahead log version " + version);
+		long position = HEADER_BYTES;
+		long size = log.size();
+		CRC32 crc = new CRC32();
+		byte[] payload = new byte[64];
+		while (position + RECORD_HEADER_BYTES <= size) {
+			int length, checksum;
+			try {
+				length = in.readInt();
+				checksum = in.readInt();
+				if (length < 5 || position + RECORD_HEADER_BYTES + length > size)
+					break;
+				if (payload.length < length)
+					payload = new byte[Math.max(length, payload.length * 2)];
+				in.readFully(payload, 0, length);
+			} catch (EOFException e) {
+				break;
+			}
+			crc.reset();
+			crc.update(payload, 0, length);
+			if ((int) crc.getValue() != checksum || !apply(tree, ByteBuffer.wrap(payload, 0, length)))
+				break;
+			position += RECORD_HEADER_BYTES + length;
+		}
+		return position;
+	}
+
+	/**
+	 * Applies the payload of a record to tree
+	 * @return false if the payload is malformed
+	 */
+	private static boolean apply(WAVLTree tree, ByteBuffer payload) {
+		byte operation = payload.get();
+		int key = payload.getInt();
+		if (operation == DELETE) {
+			if (payload.hasRemaining())
+				return false;
+			tree.delete(key);
+			return true;
+		}
+		if (operation != INSERT || payload.remaining() < 4)
+			return false;
+		int length = payload.getInt();
+		if (length != payload.remaining() && !(length == -1 && !payload.hasRemaining()))
+			return false;
+		String info = null;
+		if (length >= 0)
+			info = new String(payload.array(), payload.arrayOffset() + payload.position(), length, StandardCharsets.UTF_8);
+		tree.insert(key, info);
+		return true;
+	}
+
+	/**
+	 * Returns the recovered tree. It has to be changed only through insert and delete of
+	 * the log, but can be read directly.
+	 */
+	public WAVLTree tree() {
+		return tree;
+	}
+
+	/**
+	 * Inserts an item to the tree and logs it, see WAVLTree.insert. If the log cannot make
+	 * room for the record, the tree is not changed. If committing the group fails, the
+	 * item stays inserted and its record buffered, for the next commit.
+	 * @return the number of rebalancing operations, or -1 if an item with key k already exists
+	 */
+	public int insert(int k, String i) throws IOException {
+		byte[] bytes = i == null ? null : i.getBytes(StandardCharsets.UTF_8);
+		int length = bytes == null ? 0 : bytes.length;
+		ByteBuffer record = reserve(9 + length);
+		int start = record.position();
+		int res;
+		try {
+			res = tree.insert(k, i);
+		} finally {
+			record.position(start - RECORD_HEADER_BYTES);
+		}
+		if (res >= 0) {
+			record.position(start);
+			record.put(INSERT).putInt(k).putInt(bytes == null ? -1 : length);
+			if (bytes != null)
+				record.put(bytes);
+			seal(record, start);
+		}
+		return res;
+	}
+
+	/**
+	 * Deletes an item from the tree and logs it, see WAVLTree.delete. If the log cannot
+	 * make room for the record, the tree is not changed. If committing the group fails,
+	 * the item stays deleted and its record buffered, for the next commit.
+	 * @return the number of rebalancing operations, or -1 if there is no item with key k
+	 */
+	public int delete(int k) throws IOException {
+		ByteBuffer record = reserve(5);
+		int start = record.position();
+		int res;
+		try {
+			res = tree.delete(k);
+		} finally {
+			record.position(start - RECORD_HEADER_BYTES);
+		}
+		if (res >= 0) {
+			record.position(start);
+			record.put(DELETE).putInt(k);
+			seal(record, start);
+		}
+		return res;
+	}
+
+	/**
+	 * Makes room in the buffer for a record with a payload of length bytes, and skips
+	 * the record header. A record which does not fit in the buffer at all gets a buffer of
+	 * its own, after the buffered records are written. Nothing is buffered if it throws.
+	 * @return the buffer of the record, positioned at the payload
+	 */
+	private ByteBuffer reserve(int length) throws IOException {
+		int needed = RECORD_HEADER_BYTES + length;
+		ByteBuffer record = buffer;
+		if (buffer.remaining() < needed) {
+			flush();
+			if (buffer.capacity() < needed)
+				record = oversized = ByteBuffer.allocate(needed);
+		}
+		record.position(record.position() + RECORD_HEADER_BYTES);
+		return record;
+	}
+
+	/**
+	 * Writes the header of the record whose payload starts at start, and commits the group
+	 * if it is full
+	 */
+	private void seal(ByteBuffer record, int start) throws IOException {
+		int length = record.position() - start;
+		crc.reset();
+		crc.update(record.array(), record.arrayOffset() + start, length);
+		record.putInt(start - RECORD_HEADER_BYTES, length);
+		record.putInt(start - 4, (int) crc.getValue());
+		if (++uncommitted >= groupCommitSize)
+			commit();
+	}
+
+	/**
+	 * Writes the buffered records to the log, without forcing it. If it throws, the records
+	 * which were not written stay buffered.
+	 */
+	private void flush() throws IOException {
+		if (oversized != null) {
+			write(oversized);
+			oversized = null;
+		}
+		write(buffer);
+	}
+
+	private void write(ByteBuffer records) throws IOException {
+		records.flip();
+		try {
+			while (records.hasRemaining())
+				logPosition += log.write(records, logPosition);
+		} finally {
+			records.compact();
+		}
+	}
+
+	/**
+	 * Writes the buffered records and forces the log to the disk, all mutations made so
+	 * far survive a crash afterwards. Compacts if the log is larger than compactionBytes.
+	 */
+	public void commit() throws IOException {
+		flush();
+		log.force(false);
+		uncommitted = 0;
+		if (logPosition > compactionBytes)
+			compact();
+	}
+
+	/**
+	 * Writes a snapshot of the tree and empties the log. WAVLSnapshot.write moves the
+	 * snapshot over the former one, so there is always a complete snapshot, and forces the
+	 * directory before the log is emptied, so the move survives a crash whenever the
+	 * emptying does.
+	 */
+	public void compact() throws IOException {
+		flush();
+		log.force(false);
+		WAVLSnapshot.write(tree, directory.resolve(SNAPSHOT_FILE));
+		logPosition = writeHeader(log);
+		uncommitted = 0;
+	}
+
+	/**
+	 * Returns the size of the log in bytes, including the buffered records
+	 */
+	public long logSize() {
+		return logPosition + buffer.position() + (oversized == null ? 0 : oversized.position());
+	}
+
+	/**
+	 * Commits and closes the log
+	 */
+	public void close() throws IOException {
+		try {
+			commit();
+		} finally {
+			log.close();
+		}
+	}
+}
@@ -0,0 +1,104 @@
+import java.util.TreeMap;
+import java.util.function.Function;
+
+import wavl.jmh.BenchmarkTarget;
+
+/**
+ *
+ * BenchmarkTargets
+ *
+ * The structures under benchmark, see wavl.jmh.BenchmarkTarget. This class is in the
+ * unnamed package like the trees, and BenchmarkTarget.create loads it by name.
+ *
+ */
+
+public class BenchmarkTargets implements Function<String, BenchmarkTarget> {
+
+	public BenchmarkTarget apply(String implementation) {
+		switch (implementation) {
+		case "wavl":
+			return new Wavl(false);
+		case "wavllegacy":
+			return new Wavl(true);
+		case "array":
+			return new Indexed(new WAVLArrayTree());
+		case "offheap":
+			return new Indexed(new WAVLOffHeapTree());
+		case "treemap":
+			return new Map();
+		default:
+			throw new IllegalArgumentException("Unknown implementation " + implementation);
+		}
+	}
+
+	static final class Wavl implements BenchmarkTarget {
+		private final WAVLTree tree = new WAVLTree();
+
+		Wavl(boolean legacy) {
+			tree.setLegacyEngine(legacy);
+		}
+
+		public boolean insert(int k, String i) {
+			return tree.insert(k, i) >= 0;
+		}
+
+		public boolean delete(int k) {
+			return tree.delete(k) >= 0;
+		}
+
+		public String search(int k) {
+			return tree.search(k);
+		}
+
+		public String select(int i) {
+			return tree.select(i);
+		}
+	}
+
+	/**
+	 * WAVLArrayTree or WAVLOffHeapTree, through their WAVLIndexedTree base
+	 */
+	static final class Indexed implements BenchmarkTarget {
+		private final WAVLIndexedTree tree;
+
+		Indexed(WAVLIndexedTree tree) {
+			this.tree = tree;
+		}
+
+		public boolean insert(int k, String i) {
+			return tree.insert(k, i) >= 0;
+		}
+
+		public boolean delete(int k) {
+			return tree.delete(k) >= 0;
+		}
+
+		public String search(int k) {
+			return tree.search(k);
+		}
+
+		public String select(int i) {
+			return tree.select(i);
+		}
+	}
+
+	static final class Map implements BenchmarkTarget {
+		private final TreeMap<Integer, String> map = new TreeMap<>();
+
+		public boolean insert(int k, String i) {
+			return map.putIfAbsent(k, i) == null;
+		}
+
+		public boolean delete(int k) {
+			return map.remove(k) != null;
+		}
+
+		public String search(int k) {
+			return map.get(k);
+		}
+
+		public String select(int i) {
+			throw new UnsupportedOperationException("TreeMap has no select");
+		}
+	}
+}
@@ -0,0 +1,185 @@
+package wavl.jmh;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ *
+ * BenchmarkKeys
+ *
+ * The keys of one (size, workload) pair of the JMH benchmarks. The universe has 2n
+ * distinct keys: the n present keys are loaded into the structure, and the n absent
+ * keys are the ones the write benchmarks insert (and delete back). The workload decides
+ * the order of the keys, and which of them the benchmarks touch:
+ *
+ * sequential - the present keys are 0..n-1, loaded in ascending order, the absent keys
+ *              are n..2n-1 (insertions append at the right end), accesses sweep upwards
+ * random     - scattered keys, loaded in random order, accesses are uniform
+ * zipf       - like random, but accesses follow a Zipf distribution (skew 0.99, as in
+ *              YCSB) over the keys, whose hot keys are scattered over the key range
+ *
+ * Write batches are distinct keys, so every insertion and deletion of a batch hits.
+ *
+ */
+
+final class BenchmarkKeys {
+
+	static final int ACCESSES = 1 << 20; // the length of the access sequences, a power of 2
+	static final double ZIPF_SKEW = 0.99;
+	private static final int BATCHES = 64; // the number of different write batches
+	private static final String[] INFOS = new String[1024];
+
+	static {
+		for (int i = 0; i < INFOS.length; i++)
+			INFOS[i] = "info" + i;
+	}
+
+	final int[] loadOrder; // the present keys, in loading order
+	final int[] searchKeys; // ACCESSES present keys, in access order
+	final int[] selectRanks; // ACCESSES 1 based ranks, in access order
+	private final int[][] insertBatches; // distinct absent keys
+	private final int[][] deleteBatches; // distinct present keys
+	private int nextInsertBatch = 0, nextDeleteBatch = 0;
+
+	/**
+	 * Constractor. Generating the keys of a workload
+	 * @param n - the number of present keys
+	 * @param workload - sequential, random or zipf
+	 * @param batchSize - the number of keys of a write batch, at most n
+	 * @param seed - the seed of the random choices
+	 */
+	BenchmarkKeys(int n, String workload, int batchSize, long seed) {
+		Random rnd = new Random(seed);
+		boolean sequential = workload.equals("sequential");
+		if (!sequential && !workload.equals("random") && !workload.equals("zipf"))
+			throw new IllegalArgumentException("Unknown workload " + workload);
+		if (batchSize > n)
+			throw new IllegalArgumentException("The batch size is larger than the size");
+
+		int[] present = new int[n], absent = new int[n];
+		for (int i = 0; i < n; i++) {
+			present[i] = sequential ? i : scatter(2 * i);
+			absent[i] = sequential ? n + i : scatter(2 * i + 1);
+		}
+		loadOrder = present.clone();
+		if (!sequential)
+			shuffle(loadOrder, rnd);
+
+		int[] sortedPresent = present.clone();
+		Arrays.sort(sortedPresent);
+		Indices indices = workload.equals("zipf") ? new Zipf(n, ZIPF_SKEW, rnd) : sequential ? null : rnd::nextInt;
+		searchKeys = new int[ACCESSES];
+		selectRanks = new int[ACCESSES];
+		for (int i = 0; i < ACCESSES; i++) {
+			int index = indices == null ? i % n : indices.next(n);
+			searchKeys[i] = sequential ? sortedPresent[index] : present[index];
+			selectRanks[i] = index + 1;
+		}
+
+		insertBatches = new int[BATCHES][];
+		deleteBatches = new int[BATCHES][];
+		for (int b = 0; b < BATCHES; b++) {
+			if (sequential) {
+				// append at the right end, delete from the left end
+				insertBatches[b] = Arrays.copyOf(absent, batchSize);
+				deleteBatches[b] = Arrays.copyOf(present, batchSize);
+			} else {
+				insertBatches[b] = distinct(absent, batchSize, indices, rnd);
+				deleteBatches[b] = distinct(present, batchSize, indices, rnd);
+			}
+		}
+	}
+
+	/**
+	 * An odd multiplier maps distinct ints to distinct ints
+	 */
+	private static int scatter(int i) {
+		return (int) (i * 0x9E3779B1L);
+	}
+
+	/**
+	 * Returns count distinct keys of keys, drawn by indices
+	 */
+	private static int[] distinct(int[] keys, int count, Indices indices, Random rnd) {
+		boolean[] taken = new boolean[keys.length];
+		int[] res = new int[count];
+		for (int i = 0; i < count;) {
+			int index = indices.next(keys.length);
+			if (!taken[index]) {
+				taken[index] = true;
+				res[i++] = keys[index];
+			}
+		}
+		return res;
+	}
+
+	private static void shuffle(int[] arr, Random rnd) {
+		for (int i = arr.length - 1; i > 0; i--) {
+			int j = rnd.nextInt(i + 1);
+			int tmp = arr[i];
+			arr[i] = arr[j];
+			arr[j] = tmp;
+		}
+	}
+
+	/**
+	 * Returns the info of key k
+	 */
+	static String info(int k) {
+		return INFOS[k & (INFOS.length - 1)];
+	}
+
+	/**
+	 * Returns the next batch of absent keys to insert, they have to be deleted afterwards
+	 */
+	int[] nextInsertBatch() {
+		return insertBatches[nextInsertBatch++ & (BATCHES - 1)];
+	}
+
+	/**
+	 * Returns the next batch of present keys to delete, they have to be inserted afterwards
+	 */
+	int[] nextDeleteBatch() {
+		return deleteBatches[nextDeleteBatch++ & (BATCHES - 1)];
+	}
+
+	/**
+	 * A source of indices in [0,n)
+	 */
+	private interface Indices {
+		int next(int n);
+	}
+
+	/**
+	 * Zipfian index generator over [0,n) (Gray et al. '94, as used by YCSB).
+	 * Index 0 is the hottest item.
+	 */
+	private static final class Zipf implements Indices {
+		private final int n;
+		private final double theta, alpha, zetan, eta;
+		private final Random rnd;
+
+		private Zipf(int n, double theta, Random rnd) {
+			this.n = n;
+			this.theta = theta;
+			this.rnd = rnd;
+			double zeta2 = 1 + Math.pow(0.5, theta);
+			double z = 0;
+			for (int i = 1; i <= n; i++)
+				z += 1 / Math.pow(i, theta);
+			this.zetan = z;
+			this.alpha = 1 / (1 - theta);
+			this.eta = (1 - Math.pow(2.0 / n, 1 - theta)) / (1 - zeta2 / zetan);
+		}
+
+		public int next(int bound) {
+			double u = rnd.nextDouble();
+			double uz = u * zetan;
+			if (uz < 1)
+				return 0;
+			if (uz < 1 + Math.pow(0.5, theta))
+				return Math.min(1, n - 1);
+			return Math.min(n - 1, (int) (n * Math.pow(eta * u - eta + 1, alpha)));
+		}
+	}
+}
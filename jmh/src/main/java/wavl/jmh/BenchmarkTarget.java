@@ -0,0 +1,65 @@
+package wavl.jmh;
+
+import java.util.function.Function;
+
+/**
+ *
+ * BenchmarkTarget
+ *
+ * A structure under benchmark. Every JMH fork runs a single implementation, so the
+ * calls through this interface stay monomorphic and the JIT profiles of one
+ * implementation do not leak into another.
+ *
+ * wavl       - WAVLTree
+ * wavllegacy - WAVLTree with the recursive insert/delete (see WAVLTree.setLegacyEngine)
+ * array      - WAVLArrayTree
+ * offheap    - WAVLOffHeapTree
+ * treemap    - java.util.TreeMap, the baseline (it has no select)
+ *
+ * JMH requires the benchmarks to be in a named package, and the trees are in the
+ * unnamed package, which a named package cannot refer to. So the implementations are
+ * in the unnamed package (see BenchmarkTargets there), and create loads them by name.
+ *
+ */
+
+public interface BenchmarkTarget {
+
+	/**
+	 * @return true if k was inserted
+	 */
+	boolean insert(int k, String i);
+
+	/**
+	 * @return true if k was deleted
+	 */
+	boolean delete(int k);
+
+	String search(int k);
+
+	/**
+	 * @param i - 1 based rank
+	 */
+	String select(int i);
+
+	/**
+	 * Returns a new, empty structure of the implementation
+	 * @param implementation - see the interface comment
+	 */
+	@SuppressWarnings("unchecked")
+	static BenchmarkTarget create(String implementation) {
+		try {
+			Object factory = Class.forName("BenchmarkTargets").getDeclaredConstructor().newInstance();
+			return ((Function<String, BenchmarkTarget>) factory).apply(implementation);
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("The benchmark targets are not on the class path", e);
+		}
+	}
+
+	/**
+	 * Inserts the keys of keys with their infos
+	 */
+	default void load(int[] keys) {
+		for (int k : keys)
+			insert(k, BenchmarkKeys.info(k));
+	}
+}
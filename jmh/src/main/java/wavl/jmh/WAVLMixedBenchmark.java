@@ -0,0 +1,96 @@
+package wavl.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ *
+ * WAVLMixedBenchmark
+ *
+ * Throughput of a mix of searches and writes on a structure of size present keys,
+ * against java.util.TreeMap. An invocation runs BATCH operations, of which readPercent
+ * percent are searches (of present keys, in the order of the workload, see
+ * BenchmarkKeys) and the others alternately insert an absent key and delete it again,
+ * so the structure keeps its size.
+ *
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms3g", "-Xmx3g"})
+public class WAVLMixedBenchmark {
+
+	static final int BATCH = 200; // a multiple of 100, so every invocation has exactly readPercent reads
+
+	@Param({"wavl", "wavllegacy", "array", "offheap", "treemap"})
+	String implementation;
+
+	@Param({"1000", "10000", "100000", "1000000", "10000000"})
+	int size;
+
+	@Param({"sequential", "random", "zipf"})
+	String workload;
+
+	@Param({"50", "90", "99"})
+	int readPercent;
+
+	private BenchmarkKeys keys;
+	private BenchmarkTarget target;
+	private int[] searchKeys;
+	private int nextSearch = 0;
+	private int pending; // an absent key which the last invocation left inserted, or none
+	private boolean hasPending = false;
+
+	@Setup(Level.Trial)
+	public void load() {
+		keys = new BenchmarkKeys(size, workload, BATCH, 42);
+		target = BenchmarkTarget.create(implementation);
+		target.load(keys.loadOrder);
+		searchKeys = keys.searchKeys;
+	}
+
+	@Setup(Level.Invocation)
+	public void restore() {
+		if (hasPending) {
+			target.delete(pending);
+			hasPending = false;
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public void mixed(Blackhole blackhole) {
+		int[] batch = keys.nextInsertBatch();
+		int writes = 0;
+		for (int i = 0; i < BATCH; i++) {
+			if ((i * 37) % 100 < readPercent) {
+				blackhole.consume(target.search(searchKeys[nextSearch++ & (BenchmarkKeys.ACCESSES - 1)]));
+			} else {
+				int k = batch[writes >> 1];
+				blackhole.consume((writes & 1) == 0 ? target.insert(k, BenchmarkKeys.info(k)) : target.delete(k));
+				writes++;
+			}
+		}
+		if ((writes & 1) != 0) {
+			pending = batch[writes >> 1];
+			hasPending = true;
+		}
+	}
+}
@@ -0,0 +1,61 @@
+package wavl.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ *
+ * WAVLReadBenchmark
+ *
+ * Throughput of search on a structure of size present keys, against java.util.TreeMap.
+ * The searched keys follow the workload, see BenchmarkKeys. select has its own
+ * benchmark (WAVLSelectBenchmark), since TreeMap has no select.
+ *
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms3g", "-Xmx3g"})
+public class WAVLReadBenchmark {
+
+	@Param({"wavl", "wavllegacy", "array", "offheap", "treemap"})
+	String implementation;
+
+	@Param({"1000", "10000", "100000", "1000000", "10000000"})
+	int size;
+
+	@Param({"sequential", "random", "zipf"})
+	String workload;
+
+	private BenchmarkTarget target;
+	private int[] keys;
+	private int next = 0;
+
+	@Setup(Level.Trial)
+	public void load() {
+		BenchmarkKeys benchmarkKeys = new BenchmarkKeys(size, workload, 1, 42);
+		target = BenchmarkTarget.create(implementation);
+		target.load(benchmarkKeys.loadOrder);
+		keys = benchmarkKeys.searchKeys;
+	}
+
+	@Benchmark
+	public String search() {
+		return target.search(keys[next++ & (BenchmarkKeys.ACCESSES - 1)]);
+	}
+}
@@ -0,0 +1,94 @@
+package wavl.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ *
+ * WAVLWriteBenchmark
+ *
+ * Throughput of insert and delete on a structure of size present keys, against
+ * java.util.TreeMap. An invocation inserts a batch of BATCH absent keys (or deletes a
+ * batch of present keys) chosen by the workload, see BenchmarkKeys, and the untimed
+ * setup of the next invocation undoes it, so every operation hits and the structure
+ * keeps its size. The allocation rate is reported by the gc profiler (-prof gc).
+ *
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms3g", "-Xmx3g"})
+public class WAVLWriteBenchmark {
+
+	static final int BATCH = 200;
+
+	@Param({"wavl", "wavllegacy", "array", "offheap", "treemap"})
+	String implementation;
+
+	@Param({"1000", "10000", "100000", "1000000", "10000000"})
+	int size;
+
+	@Param({"sequential", "random", "zipf"})
+	String workload;
+
+	private BenchmarkKeys keys;
+	private BenchmarkTarget target;
+	private int[] inserted = null; // the batch which the last invocation inserted
+	private int[] deleted = null; // the batch which the last invocation deleted
+
+	@Setup(Level.Trial)
+	public void load() {
+		keys = new BenchmarkKeys(size, workload, BATCH, 42);
+		target = BenchmarkTarget.create(implementation);
+		target.load(keys.loadOrder);
+	}
+
+	@Setup(Level.Invocation)
+	public void restore() {
+		if (inserted != null) {
+			for (int k : inserted)
+				target.delete(k);
+			inserted = null;
+		}
+		if (deleted != null) {
+			for (int k : deleted)
+				target.insert(k, BenchmarkKeys.info(k));
+			deleted = null;
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public void insert(Blackhole blackhole) {
+		int[] batch = keys.nextInsertBatch();
+		for (int k : batch)
+			blackhole.consume(target.insert(k, BenchmarkKeys.info(k)));
+		inserted = batch;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public void delete(Blackhole blackhole) {
+		int[] batch = keys.nextDeleteBatch();
+		for (int k : batch)
+			blackhole.consume(target.delete(k));
+		deleted = batch;
+	}
+}
@@ -0,0 +1,93 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * ConcurrentWAVLTreeTest
+ *
+ * ConcurrentWAVLTree under concurrent writers and readers. The even keys are never
+ * written, so readers can check them at any time, and each writer owns its own odd keys,
+ * so the final contents are known.
+ *
+ */
+
+class ConcurrentWAVLTreeTest {
+
+	private static final int WRITERS = 2;
+
+	@Test
+	void readersSeeStableKeysWhileWritersRun() throws InterruptedException {
+		ConcurrentWAVLTree tree = new ConcurrentWAVLTree();
+		TreeMap<Integer, String> expected = new TreeMap<>();
+		for (int k = 0; k < 20000; k += 2) {
+			tree.insert(k, "v" + k);
+			expected.put(k, "v" + k);
+		}
+		List<TreeMap<Integer, String>> written = new ArrayList<>();
+		List<Throwable> errors = new CopyOnWriteArrayList<>();
+		AtomicInteger running = new AtomicInteger(WRITERS);
+		List<Thread> threads = new ArrayList<>();
+		for (int w = 0; w < WRITERS; w++) {
+			int writer = w;
+			TreeMap<Integer, String> own = new TreeMap<>();
+			written.add(own);
+			threads.add(new Thread(() -> {
+				Random rnd = new Random(writer);
+				try {
+					for (int i = 0; i < 200000; i++) {
+						int k = 2 * WRITERS * rnd.nextInt(5000) + 2 * writer + 1;
+						if (rnd.nextBoolean()) {
+							if (tree.insert(k, "o" + k) >= 0)
+								own.put(k, "o" + k);
+						} else {
+							if (tree.delete(k) >= 0)
+								own.remove(k);
+						}
+					}
+				} catch (Throwable e) {
+					errors.add(e);
+				} finally {
+					running.decrementAndGet();
+				}
+			}));
+		}
+		for (int r = 0; r < 3; r++) {
+			int reader = r;
+			threads.add(new Thread(() -> {
+				Random rnd = new Random(100 + reader);
+				try {
+					while (running.get() > 0) {
+						int k = 2 * rnd.nextInt(10000);
+						assertEquals("v" + k, tree.search(k));
+						assertEquals("v0", tree.select(1));
+						assertEquals("v0", tree.min());
+						int size = tree.size();
+						assertTrue(size >= 10000 && size <= 20000, "size " + size);
+					}
+				} catch (Throwable e) {
+					errors.add(e);
+				}
+			}));
+		}
+		for (Thread thread : threads)
+			thread.start();
+		for (Thread thread : threads)
+			thread.join();
+		assertEquals(List.of(), errors);
+
+		for (TreeMap<Integer, String> own : written)
+			expected.putAll(own);
+		assertArrayEquals(expected.keySet().stream().mapToInt(Integer::intValue).toArray(), tree.keysToArray());
+		assertArrayEquals(expected.values().toArray(new String[0]), tree.infoToArray());
+	}
+}
@@ -0,0 +1,130 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Field;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * PartitionedWAVLTreeTest
+ *
+ * PartitionedWAVLTree under concurrent writers. Each writer sweeps its own band of keys
+ * upward, so neighbouring shards keep moving their splitters while the others write.
+ *
+ */
+
+class PartitionedWAVLTreeTest {
+
+	private static final int WRITERS = 4;
+
+	/**
+	 * Runs the writers to completion, recording the keys they leave in the tree
+	 * 
+	 * @param offset - added to every key written
+	 */
+	private static void write(PartitionedWAVLTree tree, Map<Integer, Boolean> present, long seed, int offset)
+			throws InterruptedException {
+		List<Throwable> errors = new CopyOnWriteArrayList<>();
+		Thread[] writers = new Thread[WRITERS];
+		for (int w = 0; w < WRITERS; w++) {
+			int writer = w;
+			writers[w] = new Thread(() -> {
+				Random rnd = new Random(seed + writer);
+				try {
+					for (int i = 0; i < 150000; i++) {
+						int base = writer * (1 << 26) + (i / 2000) * 20000;
+						int k = offset + (base + rnd.nextInt(40000)) * WRITERS + writer;
+						if (rnd.nextInt(4) > 0) {
+							if (tree.insert(k, "v" + k) >= 0)
+								present.put(k, true);
+						} else {
+							if (tree.delete(k) >= 0)
+								present.remove(k);
+						}
+					}
+				} catch (Throwable e) {
+					errors.add(e);
+				}
+			});
+			writers[w].start();
+		}
+		for (Thread writer : writers)
+			writer.join();
+		assertEquals(List.of(), errors);
+	}
+
+	@Test
+	void shardsKeepTheirRangesUnderConcurrentWriters() throws Exception {
+		Field field = PartitionedWAVLTree.class.getDeclaredField("trees");
+		field.setAccessible(true);
+		for (int round = 0; round < 4; round++) {
+			PartitionedWAVLTree tree = new PartitionedWAVLTree(8);
+			Map<Integer, Boolean> present = new ConcurrentHashMap<>();
+			write(tree, present, round * 31, 0);
+
+			WAVLTree[] shards = (WAVLTree[]) field.get(tree);
+			int[] splitters = tree.splitters();
+			for (int j = 0; j < shards.length; j++) {
+				long lo = j == 0 ? Long.MIN_VALUE : splitters[j - 1];
+				long hi = j < splitters.length ? splitters[j] : Long.MAX_VALUE;
+				for (int k : shards[j].keysToArray())
+					assertTrue(k >= lo && k < hi, "key " + k + " of shard " + j + " outside [" + lo + ", " + hi + ")");
+			}
+			int[] keys = tree.keysToArray();
+			assertArrayEquals(present.keySet().stream().mapToInt(Integer::intValue).sorted().toArray(), keys);
+			assertEquals(keys.length, tree.size());
+			for (int k : keys)
+				assertEquals("v" + k, tree.search(k));
+			int i = 0;
+			for (var iterator = tree.keyIterator(); iterator.hasNext(); i++)
+				assertEquals(keys[i], iterator.nextInt());
+			assertEquals(keys.length, i);
+		}
+	}
+
+	@Test
+	void readsSeeSentinelsWhileWritersRun() throws InterruptedException {
+		PartitionedWAVLTree tree = new PartitionedWAVLTree(8);
+		tree.insert(0, "min");
+		tree.insert(Integer.MAX_VALUE, "max");
+		AtomicBoolean done = new AtomicBoolean();
+		List<Throwable> errors = new CopyOnWriteArrayList<>();
+		// the writers only use keys in [1000, MAX), so the sentinels stay first and last
+		Thread reader = new Thread(() -> {
+			try {
+				while (!done.get()) {
+					assertEquals("min", tree.min());
+					assertEquals("max", tree.max());
+					assertEquals("min", tree.select(1));
+					assertEquals(1, tree.rank(0));
+					assertEquals(1, tree.rank(999));
+				}
+			} catch (Throwable e) {
+				errors.add(e);
+			}
+		});
+		reader.start();
+		try {
+			write(tree, new ConcurrentHashMap<>(), 0, 1000);
+		} finally {
+			done.set(true);
+			reader.join();
+		}
+		assertEquals(List.of(), errors);
+
+		int[] keys = tree.keysToArray();
+		for (int i = 1; i <= keys.length; i += keys.length / 2000 + 1) {
+			assertNotNull(tree.select(i));
+			assertEquals(i, tree.rank(keys[i - 1]));
+		}
+	}
+}
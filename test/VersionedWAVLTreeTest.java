@@ -0,0 +1,146 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * VersionedWAVLTreeTest
+ *
+ * VersionedWAVLTree against a TreeMap, and snapshots that stay consistent while a writer
+ * keeps publishing new versions.
+ *
+ */
+
+class VersionedWAVLTreeTest {
+
+	private static int[] keys(TreeMap<Integer, String> map) {
+		return map.keySet().stream().mapToInt(Integer::intValue).toArray();
+	}
+
+	@Test
+	void matchesTreeMap() {
+		Random rnd = new Random(8);
+		VersionedWAVLTree tree = new VersionedWAVLTree();
+		TreeMap<Integer, String> expected = new TreeMap<>();
+		for (int i = 0; i < 200000; i++) {
+			int k = rnd.nextInt(5000);
+			if (rnd.nextBoolean()) {
+				assertEquals(!expected.containsKey(k), tree.insert(k, "v" + k));
+				expected.putIfAbsent(k, "v" + k);
+			} else {
+				assertEquals(expected.containsKey(k), tree.delete(k));
+				expected.remove(k);
+			}
+			if (i % 1000 == 0) {
+				try (VersionedWAVLTree.Snapshot snapshot = tree.snapshot()) {
+					assertArrayEquals(keys(expected), snapshot.keysToArray());
+					int q = rnd.nextInt(6000);
+					assertEquals(expected.headMap(q, true).size(), snapshot.rank(q));
+					int j = rnd.nextInt(expected.size() + 2);
+					assertEquals(j >= 1 && j <= expected.size() ? "v" + snapshot.keysToArray()[j - 1] : null,
+							snapshot.select(j));
+				}
+			}
+		}
+		assertEquals(expected.size(), tree.size());
+	}
+
+	@Test
+	void pinnedSnapshotIsStable() {
+		Random rnd = new Random(3);
+		VersionedWAVLTree tree = new VersionedWAVLTree();
+		for (int i = 0; i < 10000; i++)
+			tree.insert(rnd.nextInt(5000), "v");
+		try (VersionedWAVLTree.Snapshot pinned = tree.snapshot()) {
+			int[] keys = pinned.keysToArray();
+			for (int i = 0; i < 100000; i++) {
+				int k = rnd.nextInt(5000);
+				if (rnd.nextBoolean())
+					tree.insert(k, "w");
+				else
+					tree.delete(k);
+			}
+			assertArrayEquals(keys, pinned.keysToArray());
+			assertEquals(keys.length, pinned.size());
+		}
+	}
+
+	@Test
+	void snapshotsAreConsistentWhileWriterRuns() throws InterruptedException {
+		VersionedWAVLTree tree = new VersionedWAVLTree();
+		// the key sum of every published version
+		Map<Long, Long> sums = new ConcurrentHashMap<>();
+		sums.put(tree.version(), 0L);
+		AtomicBoolean stop = new AtomicBoolean();
+		List<Throwable> errors = new CopyOnWriteArrayList<>();
+
+		Thread writer = new Thread(() -> {
+			Random rnd = new Random(1);
+			long sum = 0;
+			try {
+				for (int i = 0; i < 400000 && !stop.get(); i++) {
+					int k = rnd.nextInt(20000);
+					if (rnd.nextBoolean()) {
+						if (tree.insert(k, "v" + k))
+							sums.put(tree.version(), sum += k);
+					} else {
+						if (tree.delete(k))
+							sums.put(tree.version(), sum -= k);
+					}
+				}
+			} catch (Throwable e) {
+				errors.add(e);
+			} finally {
+				stop.set(true);
+			}
+		});
+		List<Thread> readers = new ArrayList<>();
+		for (int r = 0; r < 3; r++) {
+			readers.add(new Thread(() -> {
+				try {
+					while (!stop.get()) {
+						try (VersionedWAVLTree.Snapshot snapshot = tree.snapshot()) {
+							long[] sum = {0};
+							int[] count = {0};
+							long[] last = {Long.MIN_VALUE};
+							snapshot.forEachInRange(Integer.MIN_VALUE, Integer.MAX_VALUE, (info, key) -> {
+								assertTrue(key > last[0]);
+								assertEquals("v" + key, info);
+								last[0] = key;
+								sum[0] += key;
+								count[0]++;
+							});
+							assertEquals(snapshot.size(), count[0]);
+							Long expected;
+							// the writer records the sum right after publishing the version
+							while ((expected = sums.get(snapshot.version())) == null)
+								Thread.onSpinWait();
+							assertEquals(expected.longValue(), sum[0]);
+						}
+					}
+				} catch (Throwable e) {
+					errors.add(e);
+					stop.set(true);
+				}
+			}));
+		}
+		writer.start();
+		for (Thread reader : readers)
+			reader.start();
+		writer.join();
+		for (Thread reader : readers)
+			reader.join();
+		assertEquals(List.of(), errors);
+	}
+}
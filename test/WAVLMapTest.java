@@ -0,0 +1,172 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * WAVLMapTest
+ *
+ * WAVLMap against TreeMap under the same random operations, through the map itself and
+ * through nested views and their iterators.
+ *
+ */
+
+class WAVLMapTest {
+
+	private final Random rnd = new Random(9);
+
+	/**
+	 * Compares actual with expected, and recursively a random view of each, after the
+	 * same mutations through the views
+	 * 
+	 * @param range - the keys are drawn from [-2, range + 2)
+	 * @param depth - the nesting depth of the views
+	 */
+	private void compare(NavigableMap<Integer, String> actual, NavigableMap<Integer, String> expected, int range,
+			int depth) {
+		assertEquals(expected.size(), actual.size());
+		assertEquals(new ArrayList<>(expected.entrySet()), new ArrayList<>(actual.entrySet()));
+		assertEquals(new ArrayList<>(expected.descendingMap().keySet()),
+				new ArrayList<>(actual.descendingMap().keySet()));
+		assertEquals(new ArrayList<>(expected.navigableKeySet().descendingSet()),
+				new ArrayList<>(actual.navigableKeySet().descendingSet()));
+		assertEquals(expected, actual);
+		assertEquals(expected.hashCode(), actual.hashCode());
+		for (int q = 0; q < 20; q++) {
+			int k = rnd.nextInt(range + 4) - 2;
+			assertEquals(expected.get(k), actual.get(k));
+			assertEquals(expected.containsKey(k), actual.containsKey(k));
+			assertEquals(expected.ceilingEntry(k), actual.ceilingEntry(k));
+			assertEquals(expected.floorKey(k), actual.floorKey(k));
+			assertEquals(expected.higherEntry(k), actual.higherEntry(k));
+			assertEquals(expected.lowerKey(k), actual.lowerKey(k));
+			assertEquals(expected.navigableKeySet().ceiling(k), actual.navigableKeySet().ceiling(k));
+		}
+		assertEquals(expected.firstEntry(), actual.firstEntry());
+		assertEquals(expected.lastEntry(), actual.lastEntry());
+		if (!expected.isEmpty()) {
+			assertEquals(expected.firstKey(), actual.firstKey());
+			assertEquals(expected.lastKey(), actual.lastKey());
+		}
+		if (depth == 3)
+			return;
+
+		for (int v = 0; v < 3; v++) {
+			int a = rnd.nextInt(range + 4) - 2, b = rnd.nextInt(range + 4) - 2;
+			Comparator<? super Integer> comparator = expected.comparator();
+			if (comparator == null ? a > b : comparator.compare(a, b) > 0) {
+				int c = a;
+				a = b;
+				b = c;
+			}
+			boolean aInclusive = rnd.nextBoolean(), bInclusive = rnd.nextBoolean();
+			int kind = rnd.nextInt(4);
+			NavigableMap<Integer, String> expectedView;
+			try {
+				expectedView = view(expected, kind, a, aInclusive, b, bInclusive);
+			} catch (IllegalArgumentException e) {
+				// the range is outside the enclosing view
+				int from = a, to = b;
+				assertThrows(IllegalArgumentException.class,
+						() -> view(actual, kind, from, aInclusive, to, bInclusive));
+				continue;
+			}
+			NavigableMap<Integer, String> actualView = view(actual, kind, a, aInclusive, b, bInclusive);
+			compare(actualView, expectedView, range, depth + 1);
+
+			int k = rnd.nextInt(range + 4) - 2;
+			boolean inRange = true;
+			try {
+				expectedView.put(k, "p" + k);
+			} catch (IllegalArgumentException e) {
+				inRange = false;
+			}
+			if (inRange)
+				actualView.put(k, "p" + k);
+			else
+				assertThrows(IllegalArgumentException.class, () -> actualView.put(k, "p" + k));
+			assertEquals(expectedView.remove(k + 1), actualView.remove(k + 1));
+			assertEquals(expectedView.pollFirstEntry(), actualView.pollFirstEntry());
+
+			// remove every third key through the iterators
+			Iterator<Integer> actualKeys = actualView.keySet().iterator();
+			Iterator<Integer> expectedKeys = expectedView.keySet().iterator();
+			for (int c = 0; expectedKeys.hasNext(); c++) {
+				assertTrue(actualKeys.hasNext());
+				assertEquals(expectedKeys.next(), actualKeys.next());
+				if (c % 3 == 0) {
+					expectedKeys.remove();
+					actualKeys.remove();
+				}
+			}
+			assertFalse(actualKeys.hasNext());
+			compare(actual, expected, range, 3);
+		}
+	}
+
+	private static NavigableMap<Integer, String> view(NavigableMap<Integer, String> map, int kind, int from,
+			boolean fromInclusive, int to, boolean toInclusive) {
+		switch (kind) {
+		case 0:
+			return map.subMap(from, fromInclusive, to, toInclusive);
+		case 1:
+			return map.headMap(to, toInclusive);
+		case 2:
+			return map.tailMap(from, fromInclusive);
+		default:
+			return map.descendingMap();
+		}
+	}
+
+	@Test
+	void matchesTreeMap() {
+		for (int round = 0; round < 400; round++) {
+			int range = 1 + rnd.nextInt(300);
+			Comparator<Integer> comparator = round % 2 == 0 ? null : Comparator.reverseOrder();
+			WAVLMap<Integer, String> actual = new WAVLMap<>(comparator);
+			TreeMap<Integer, String> expected = new TreeMap<>(comparator);
+			for (int op = 0; op < range * 3; op++) {
+				int k = rnd.nextInt(range);
+				if (rnd.nextInt(3) > 0)
+					assertEquals(expected.put(k, "v" + op), actual.put(k, "v" + op));
+				else
+					assertEquals(expected.remove(k), actual.remove(k));
+			}
+			compare(actual, expected, range, 0);
+			for (int i = 1; i <= actual.size(); i++)
+				assertEquals(i, actual.rank(actual.select(i).getKey()));
+		}
+	}
+
+	@Test
+	void iteratorFailsAfterModification() {
+		WAVLMap<Integer, String> map = new WAVLMap<>();
+		for (int k = 0; k < 10; k++)
+			map.put(k, "v" + k);
+		Iterator<Map.Entry<Integer, String>> iterator = map.entrySet().iterator();
+		iterator.next();
+		map.put(-1, "x");
+		assertThrows(ConcurrentModificationException.class, iterator::next);
+	}
+
+	@Test
+	void rejectsNullKeys() {
+		WAVLMap<String, Integer> map = new WAVLMap<>();
+		map.put("b", 1);
+		map.put("a", 2);
+		assertEquals("{a=2, b=1}", map.toString());
+		assertThrows(NullPointerException.class, () -> map.put(null, 1));
+	}
+}
@@ -0,0 +1,123 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ *
+ * WAVLSnapshotTest
+ *
+ * WAVLSnapshot against the tree it was written from, and the rejection of corrupt and
+ * truncated files.
+ *
+ */
+
+class WAVLSnapshotTest {
+
+	private static final int MAGIC = 0x5741564C;
+
+	@TempDir
+	Path directory;
+
+	private static WAVLTree randomTree(long seed, int count) {
+		Random rnd = new Random(seed);
+		WAVLTree tree = new WAVLTree();
+		for (int i = 0; i < count; i++) {
+			int k = rnd.nextInt(1000000) - 500000;
+			tree.insert(k, i % 7 == 0 ? null : "ü" + k + "x".repeat(rnd.nextInt(40)));
+		}
+		return tree;
+	}
+
+	private Path header(int magic, int version, int size, int extraBytes) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(16 + extraBytes);
+		buffer.putInt(magic).putInt(version).putInt(size).putInt(0);
+		Path path = directory.resolve("corrupt");
+		Files.write(path, buffer.array());
+		return path;
+	}
+
+	@Test
+	void matchesTree() throws Exception {
+		WAVLTree tree = randomTree(1, 50000);
+		Path path = directory.resolve("snapshot");
+		WAVLSnapshot.write(tree, path);
+		WAVLSnapshot snapshot = WAVLSnapshot.open(path);
+		assertEquals(tree.size(), snapshot.size());
+		assertArrayEquals(tree.keysToArray(), snapshot.keysToArray());
+		assertArrayEquals(tree.infoToArray(), snapshot.infoToArray());
+		for (int k = -500000; k < 500000; k += 7)
+			assertEquals(tree.search(k), snapshot.search(k));
+		for (int i = 0; i <= tree.size() + 1; i += 3)
+			assertEquals(tree.select(i), snapshot.select(i));
+		assertEquals(tree.min(), snapshot.min());
+		assertEquals(tree.max(), snapshot.max());
+		assertArrayEquals(tree.keysToArray(), snapshot.promote(ForkJoinPool.commonPool()).get().keysToArray());
+	}
+
+	@Test
+	void emptySnapshot() throws IOException {
+		Path path = directory.resolve("snapshot");
+		WAVLSnapshot.write(new WAVLTree(), path);
+		WAVLSnapshot snapshot = WAVLSnapshot.open(path);
+		assertTrue(snapshot.empty());
+		assertNull(snapshot.min());
+		assertNull(snapshot.search(1));
+	}
+
+	@Test
+	void rejectsCorruptHeaders() throws IOException {
+		assertThrows(IOException.class, () -> WAVLSnapshot.open(header(0x12345678, 1, 0, 0)));
+		assertThrows(IOException.class, () -> WAVLSnapshot.open(header(MAGIC, 2, 0, 0)));
+		assertThrows(IOException.class, () -> WAVLSnapshot.open(header(MAGIC, 1, -1, 0)));
+		// 4 * size and 12 * size overflow an int
+		assertThrows(IOException.class, () -> WAVLSnapshot.open(header(MAGIC, 1, 0x20000000, 0)));
+		assertThrows(IOException.class, () -> WAVLSnapshot.open(header(MAGIC, 1, Integer.MAX_VALUE, 0)));
+		// room for the keys and offsets of 2 items, but not of 3
+		assertThrows(IOException.class, () -> WAVLSnapshot.open(header(MAGIC, 1, 3, 24)));
+		assertEquals(2, WAVLSnapshot.open(header(MAGIC, 1, 2, 24)).size());
+	}
+
+	@Test
+	void rejectsTruncatedFile() throws IOException {
+		Path path = directory.resolve("snapshot");
+		WAVLSnapshot.write(randomTree(2, 1000), path);
+		byte[] bytes = Files.readAllBytes(path);
+		Files.write(path, Arrays.copyOf(bytes, 16 + 12 * 500));
+		assertThrows(IOException.class, () -> WAVLSnapshot.open(path));
+		Files.write(path, Arrays.copyOf(bytes, 10));
+		assertThrows(IOException.class, () -> WAVLSnapshot.open(path));
+	}
+
+	@Test
+	void rewriteKeepsMappedSnapshot() throws IOException {
+		WAVLTree tree = randomTree(3, 1000);
+		Path path = directory.resolve("snapshot");
+		WAVLSnapshot.write(tree, path);
+		WAVLSnapshot mapped = WAVLSnapshot.open(path);
+		int[] keys = tree.keysToArray();
+		String[] infos = tree.infoToArray();
+
+		tree.insert(2000000, "new");
+		WAVLSnapshot.write(tree, path);
+		assertArrayEquals(keys, mapped.keysToArray());
+		assertArrayEquals(infos, mapped.infoToArray());
+		assertEquals("new", WAVLSnapshot.open(path).search(2000000));
+		try (Stream<Path> files = Files.list(directory)) {
+			assertEquals(1, files.count()); // no temporary file is left
+		}
+	}
+}
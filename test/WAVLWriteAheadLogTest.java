@@ -0,0 +1,188 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ *
+ * WAVLWriteAheadLogTest
+ *
+ * Recovery of WAVLWriteAheadLog against a TreeMap of the committed mutations: replay,
+ * torn and malformed tails, compaction and a crash in the middle of it, and logging
+ * failures.
+ *
+ */
+
+class WAVLWriteAheadLogTest {
+
+	@TempDir
+	Path directory;
+
+	/**
+	 * Applies random mutations to log and to expected, and commits them
+	 */
+	private static void mutate(WAVLWriteAheadLog log, TreeMap<Integer, String> expected, Random rnd, int count)
+			throws IOException {
+		for (int i = 0; i < count; i++) {
+			int k = rnd.nextInt(3000);
+			if (rnd.nextBoolean()) {
+				String info = rnd.nextInt(5) == 0 ? null : "v" + k + "é";
+				if (log.insert(k, info) >= 0)
+					expected.put(k, info);
+			} else {
+				if (log.delete(k) >= 0)
+					expected.remove(k);
+			}
+		}
+		log.commit();
+	}
+
+	private static void assertTree(TreeMap<Integer, String> expected, WAVLTree tree) {
+		int[] keys = new int[expected.size()];
+		String[] infos = new String[expected.size()];
+		int i = 0;
+		for (Map.Entry<Integer, String> entry : expected.entrySet()) {
+			keys[i] = entry.getKey();
+			infos[i++] = entry.getValue();
+		}
+		assertArrayEquals(keys, tree.keysToArray());
+		assertArrayEquals(infos, tree.infoToArray());
+	}
+
+	private Path logFile() {
+		return directory.resolve("wal");
+	}
+
+	/**
+	 * Appends a record with payload to the log file, with a valid header and checksum
+	 */
+	private void appendRecord(byte[] payload) throws IOException {
+		CRC32 crc = new CRC32();
+		crc.update(payload);
+		ByteBuffer record = ByteBuffer.allocate(8 + payload.length);
+		record.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+		try (FileChannel channel = FileChannel.open(logFile(), StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+			channel.write(record);
+		}
+	}
+
+	@Test
+	void recoversCommittedMutations() throws IOException {
+		TreeMap<Integer, String> expected = new TreeMap<>();
+		try (WAVLWriteAheadLog log = WAVLWriteAheadLog.open(directory, 100, Long.MAX_VALUE)) {
+			mutate(log, expected, new Random(1), 20000);
+		}
+		try (WAVLWriteAheadLog log = WAVLWriteAheadLog.open(directory)) {
+			assertTree(expected, log.tree());
+		}
+	}
+
+	@Test
+	void cutsTornTail() throws IOException {
+		TreeMap<Integer, String> expected = new TreeMap<>();
+		try (WAVLWriteAheadLog log = WAVLWriteAheadLog.open(directory)) {
+			mutate(log, expected, new Random(2), 5000);
+		}
+		long size = Files.size(logFile());
+		try (FileChannel channel = FileChannel.open(logFile(), StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+			channel.write(ByteBuffer.wrap(new byte[] {0, 0, 0, 20, 1, 2, 3}));
+		}
+		try (WAVLWriteAheadLog log = WAVLWriteAheadLog.open(directory)) {
+			assertTree(expected, log.tree());
+			assertEquals(size, Files.size(logFile()));
+			log.insert(-5, "after");
+			expected.put(-5, "after");
+		}
+		try (WAVLWriteAheadLog log = WAVLWriteAheadLog.open(directory)) {
+			assertTree(expected, log.tree());
+		}
+	}
+
+	@Test
+	void stopsAtMalformedDeleteRecord() throws IOException {
+		try (WAVLWriteAheadLog log = WAVLWriteAheadLog.open(directory)) {
+			log.insert(7, "seven");
+		}
+		long size = Files.size(logFile());
+		// a delete of key 7 with a trailing byte, and a valid checksum
+		appendRecord(new byte[] {2, 0, 0, 0, 7, 0});
+		try (WAVLWriteAheadLog log = WAVLWriteAheadLog.open(directory)) {
+			assertEquals("seven", log.tree().search(7));
+			assertEquals(size, Files.size(logFile()));
+		}
+	}
+
+	@Test
+	void compactsIntoSnapshot() throws IOException {
+		TreeMap<Integer, String> expected = new TreeMap<>();
+		try (WAVLWriteAheadLog log = WAVLWriteAheadLog.open(directory, 50, 20000)) {
+			// commit compacts once the log passes 20000 bytes
+			mutate(log, expected, new Random(3), 20000);
+			log.compact();
+			assertEquals(8, log.logSize());
+			mutate(log, expected, new Random(4), 100);
+		}
+		try (WAVLWriteAheadLog log = WAVLWriteAheadLog.open(directory)) {
+			assertTree(expected, log.tree());
+		}
+	}
+
+	@Test
+	void recoversCrashBetweenSnapshotAndLogTruncation() throws IOException {
+		TreeMap<Integer, String> expected = new TreeMap<>();
+		byte[] logBeforeCompaction;
+		try (WAVLWriteAheadLog log = WAVLWriteAheadLog.open(directory)) {
+			mutate(log, expected, new Random(5), 5000);
+			log.compact();
+			mutate(log, expected, new Random(6), 5000);
+			logBeforeCompaction = Files.readAllBytes(logFile());
+			log.compact();
+		}
+		// the new snapshot is in place, but the log was not emptied
+		Files.write(logFile(), logBeforeCompaction);
+		try (WAVLWriteAheadLog log = WAVLWriteAheadLog.open(directory)) {
+			assertTree(expected, log.tree());
+		}
+	}
+
+	@Test
+	void recoversRecordsLargerThanTheBuffer() throws IOException {
+		String large = "x".repeat(200000);
+		try (WAVLWriteAheadLog log = WAVLWriteAheadLog.open(directory, 3, Long.MAX_VALUE)) {
+			for (int k = 0; k < 10; k++)
+				log.insert(k, k % 3 == 0 ? large + k : "v" + k);
+		}
+		try (WAVLWriteAheadLog log = WAVLWriteAheadLog.open(directory)) {
+			for (int k = 0; k < 10; k++)
+				assertEquals(k % 3 == 0 ? large + k : "v" + k, log.tree().search(k));
+		}
+	}
+
+	@Test
+	void failedLoggingLeavesTreeUnchanged() throws Exception {
+		WAVLWriteAheadLog log = WAVLWriteAheadLog.open(directory, Integer.MAX_VALUE, Long.MAX_VALUE);
+		for (int k = 0; k < 100; k++)
+			log.insert(k, "v" + k);
+		java.lang.reflect.Field field = WAVLWriteAheadLog.class.getDeclaredField("log");
+		field.setAccessible(true);
+		((FileChannel) field.get(log)).close();
+		// a record larger than the buffer makes the log write the buffered records first
+		assertThrows(IOException.class, () -> log.insert(1000, "x".repeat(100000)));
+		assertNull(log.tree().search(1000));
+		assertEquals(100, log.tree().size());
+	}
+}